@@ -0,0 +1,307 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Partitioner;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+/// BatchSearch evaluates a whole file of queries in one pass over the TFIDF output, instead
+/// of one Search job per query.
+///
+/// $ hadoop jar <filename>.jar org.myorg.BatchSearch INPUT_PATH OUTPUT_PATH QUERY_FILE
+/// INPUT_PATH is the TFIDF output (add -D tfidf.format=binary for the binary format). Each line
+/// of QUERY_FILE is a query, either 'queryId<TAB>words' or just the words, in which case the
+/// line number is the query id. The output at OUTPUT_PATH/search has one
+/// 'queryId	filename	tfidf_sum' line per query and matching file. With -D search.k=K only the
+/// K best files of each query are written, best first, for K up to -D search.k.max (default 10000).
+///
+/// The query file is shipped to the tasks through the distributed cache, and every map task
+/// turns it once into a map from word to the queries containing it. A TFIDF record is then
+/// joined against all queries with a single lookup of its word. Words are matched exactly,
+/// like the binary and index modes of Search.
+public class BatchSearch extends Configured implements Tool {
+
+   private static final Logger LOG = Logger .getLogger( BatchSearch.class);
+
+   /// Name of the query file in the working directory of the tasks
+   private static final String QUERY_FILE = "batch-queries";
+
+   /// main() method is the starting point of the program
+   public static void main( String[] args) throws  Exception {
+      int res  = ToolRunner .run( new BatchSearch(), args);
+      System .exit(res);
+   }
+
+   public int run( String[] args) throws  Exception {
+      Job job  = Job .getInstance(getConf(), " batchsearch ");
+      job.setJarByClass( this .getClass());
+      Configuration conf = job.getConfiguration();
+
+      Path queries = new Path(args[2]);
+      URI uri = queries.getFileSystem(conf).makeQualified(queries).toUri();
+      job.addCacheFile(new URI(uri.toString() + "#" + QUERY_FILE));
+
+      FileInputFormat.addInputPaths(job,  args[0]);
+      FileOutputFormat.setOutputPath(job,  new Path(args[ 1] + "/search"));
+      if (TermDocWeight.isBinary(conf)) {
+         Path documents = DocumentInputFormat.documentsPath(conf, new Path(args[0]));
+         conf.set(DocumentInputFormat.DOCUMENTS_PATH, documents.toString());
+         job.setInputFormatClass( SequenceFileInputFormat .class);
+         job.setMapperClass( BinaryMap .class);
+      } else {
+         job.setMapperClass( Map .class);
+      }
+      /// Checks search.k before the tasks, which size their heaps by it
+      TopK.k(conf);
+      job.setCombinerClass( Combine .class);
+      job.setPartitionerClass( QueryPartitioner .class);
+      job.setReducerClass( Reduce .class);
+      job.setOutputKeyClass( Text .class);
+      job.setOutputValueClass( DoubleWritable .class);
+
+      return Metrics.waitForCompletion(job, "batchsearch") ? 0 : 1;
+   }
+
+   /// The parsed query file: the query ids, and for every word the queries it appears in
+   /// (a query appears twice for a word it contains twice, as Search adds it twice)
+   static class Queries {
+      final List<String> ids = new ArrayList<String>();
+      final HashMap<Text, int[]> byWord = new HashMap<Text, int[]>();
+
+      /// Adds the query of a line of the query file, numbered from 1 for the id of a line
+      /// without one
+      void add( String line, int lineNumber) {
+         String id;
+         String words;
+         int tab = line.indexOf('\t');
+         if (tab >= 0) {
+            id = line.substring(0, tab);
+            words = line.substring(tab + 1);
+         } else {
+            id = String.valueOf(lineNumber);
+            words = line;
+         }
+         int query = ids.size();
+         ids.add(id);
+         for (String word : words.trim().split("\\s+")) {
+            if (word.isEmpty()) {
+               continue;
+            }
+            Text term = new Text(word.toLowerCase());
+            int[] list = byWord.get(term);
+            if (list == null) {
+               byWord.put(term, new int[] { query });
+            } else {
+               list = Arrays.copyOf(list, list.length + 1);
+               list[list.length - 1] = query;
+               byWord.put(term, list);
+            }
+         }
+      }
+
+      /// Reads the query file from the task's working directory, where the distributed cache
+      /// links it, or from the file system when there is no link (as with some local runners)
+      static Queries load( Mapper<?, ?, ?, ?>.Context context) throws IOException {
+         InputStream in;
+         File local = new File(QUERY_FILE);
+         if (local.exists()) {
+            in = new FileInputStream(local);
+         } else {
+            Path path = new Path(context.getCacheFiles()[0].getPath());
+            in = path.getFileSystem(context.getConfiguration()).open(path);
+         }
+         Queries queries = new Queries();
+         try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+               lineNumber++;
+               if (!line.trim().isEmpty()) {
+                  queries.add(line, lineNumber);
+               }
+            }
+         }
+         return queries;
+      }
+   }
+
+   /// This is the Mapper class for text TFIDF output. A line 'word#####filename	tfidf' is
+   /// split on the last delimiters, and for every query containing the word it writes
+   /// <'queryId	filename', tfidf>. A line without both delimiters or with no number as its
+   /// tfidf value is counted and skipped.
+   public static class Map extends Mapper<LongWritable ,  Text ,  Text ,  DoubleWritable > {
+      private Queries queries;
+      private Text word = new Text();
+      private Text key = new Text();
+      private DoubleWritable tfidf = new DoubleWritable();
+
+      @Override
+      protected void setup( Context context) throws IOException, InterruptedException {
+         queries = Queries.load(context);
+      }
+
+      public void map( LongWritable offset,  Text lineText,  Context context)
+        throws  IOException,  InterruptedException {
+         String line = lineText.toString();
+         int tab = line.lastIndexOf('\t');
+         int delimiter = tab < 0 ? -1 : line.lastIndexOf("#####", tab);
+         if (delimiter < 0) {
+            context.getCounter(Metrics.Counters.PARSE_FAILURES).increment(1);
+            return;
+         }
+         word.set(line.substring(0, delimiter));
+         int[] matches = queries.byWord.get(word);
+         if (matches == null) {
+            return;
+         }
+         String filename = line.substring(delimiter + 5, tab);
+         try {
+            tfidf.set(Double.parseDouble(line.substring(tab + 1)));
+         } catch (NumberFormatException e) {
+            context.getCounter(Metrics.Counters.PARSE_FAILURES).increment(1);
+            return;
+         }
+         for (int query : matches) {
+            key.set(queries.ids.get(query) + "\t" + filename);
+            context.write(key, tfidf);
+         }
+      }
+   }
+
+   /// This is the Mapper class for binary TFIDF output. The term bytes are looked up directly,
+   /// and the filename is only resolved when some query contains the word.
+   public static class BinaryMap extends Mapper<TermDocWeight ,  NullWritable ,  Text ,  DoubleWritable > {
+      private Queries queries;
+      private List<String> documents;
+      private Text key = new Text();
+      private DoubleWritable tfidf = new DoubleWritable();
+
+      @Override
+      protected void setup( Context context) throws IOException, InterruptedException {
+         queries = Queries.load(context);
+         documents = DocumentInputFormat.readDocuments(context.getConfiguration(),
+               new Path(context.getConfiguration().get(DocumentInputFormat.DOCUMENTS_PATH)));
+      }
+
+      public void map( TermDocWeight record,  NullWritable nothing,  Context context)
+        throws  IOException,  InterruptedException {
+         int[] matches = queries.byWord.get(record.getTerm());
+         if (matches == null) {
+            return;
+         }
+         String filename = documents.get(record.getDocId());
+         tfidf.set(record.getWeight());
+         for (int query : matches) {
+            key.set(queries.ids.get(query) + "\t" + filename);
+            context.write(key, tfidf);
+         }
+      }
+   }
+
+   /// Sends all the files of a query to the same reducer, so its top k can be found there
+   public static class QueryPartitioner extends Partitioner<Text, DoubleWritable> {
+      @Override
+      public int getPartition( Text key, DoubleWritable value, int numPartitions) {
+         String queryAndFile = key.toString();
+         String query = queryAndFile.substring(0, queryAndFile.indexOf('\t'));
+         return (query.hashCode() & Integer.MAX_VALUE) % numPartitions;
+      }
+   }
+
+   /// This is the Combiner class, which adds up the tfidf values of a query and file
+   public static class Combine extends Reducer<Text ,  DoubleWritable ,  Text ,  DoubleWritable > {
+      private DoubleWritable total = new DoubleWritable();
+
+      @Override
+      public void reduce( Text key,  Iterable<DoubleWritable > values,  Context context)
+         throws IOException,  InterruptedException {
+         double sum = 0.0;
+         for (DoubleWritable value : values) {
+            sum += value.get();
+         }
+         total.set(sum);
+         context.write(key, total);
+      }
+   }
+
+   /// This is the Reducer class. It writes 'queryId	filename	tfidf_sum', or with search.k
+   /// keeps the best files of the current query in a heap. The keys of one query are
+   /// consecutive, so the heap is written out whenever the query id changes.
+   public static class Reduce extends Reducer<Text ,  DoubleWritable ,  Text ,  DoubleWritable > {
+      private TopK.Heap heap;
+      private String currentQuery;
+      private int order = 0;
+      private DoubleWritable total = new DoubleWritable();
+
+      @Override
+      protected void setup( Context context) throws IOException, InterruptedException {
+         int k = TopK.k(context.getConfiguration());
+         if (k > 0) {
+            heap = new TopK.Heap(k);
+         }
+      }
+
+      @Override
+      public void reduce( Text key,  Iterable<DoubleWritable > values,  Context context)
+         throws IOException,  InterruptedException {
+         double sum = 0.0;
+         for (DoubleWritable value : values) {
+            sum += value.get();
+         }
+         if (heap == null) {
+            total.set(sum);
+            context.write(key, total);
+            return;
+         }
+
+         String queryAndFile = key.toString();
+         String query = queryAndFile.substring(0, queryAndFile.indexOf('\t'));
+         if (!query.equals(currentQuery)) {
+            flush(context);
+            currentQuery = query;
+         }
+         heap.add(sum, order++, queryAndFile);
+      }
+
+      @Override
+      protected void cleanup( Context context) throws IOException, InterruptedException {
+         if (heap != null) {
+            flush(context);
+         }
+      }
+
+      private void flush( Context context) throws IOException {
+         Search.writeTopK(heap, context);
+         order = 0;
+      }
+   }
+}
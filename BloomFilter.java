@@ -0,0 +1,326 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/// BloomFilter is a set of hashes with false positives but no false negatives. With -D
+/// tfidf.bloom=true, TFIDF and FusedTFIDF write one next to every output file, named
+/// '_part-r-NNNNN.bloom' so that input formats skip it, and the Search mappers read the one of
+/// their split first: when no query word can be in the file, the split is not read at all.
+///
+/// The binary output gets a filter of its terms, as the binary Search matches whole terms. The
+/// text Search finds a query word anywhere in the line, so the text output gets a filter of
+/// the 3 byte substrings (trigrams) of its lines instead: a line containing the word contains
+/// all of its trigrams. Words shorter than 3 bytes never skip a file. Each distinct entry gets
+/// -D tfidf.bloom.bits=B bits (default 10, which gives about 1% false positives).
+///
+/// The Bloom counters (SCANNED_SPLITS, SKIPPED_SPLITS, SKIPPED_BYTES) of the search stage show
+/// what was saved.
+public class BloomFilter {
+
+   public static final String ENABLED = "tfidf.bloom";
+   public static final String BITS = "tfidf.bloom.bits";
+
+   public static enum Counters { SCANNED_SPLITS, SKIPPED_SPLITS, SKIPPED_BYTES }
+
+   /// Kinds of filters, of whole terms or of the trigrams of lines
+   static final byte TERMS = 0;
+   static final byte TRIGRAMS = 1;
+
+   private final byte kind;
+   private final int hashes;
+   private final long[] bits;
+
+   private BloomFilter( byte kind, int hashes, long[] bits) {
+      this.kind = kind;
+      this.hashes = hashes;
+      this.bits = bits;
+   }
+
+   public static boolean isEnabled( Configuration conf) {
+      return conf.getBoolean(ENABLED, false);
+   }
+
+   /// Sets the output format of a TFIDF job to the one writing the filters, for either format
+   public static void setOutput( Job job) {
+      if (TermDocWeight.isBinary(job.getConfiguration())) {
+         job.setOutputFormatClass( SequenceOutput .class);
+      } else {
+         job.setOutputFormatClass( TextOutput .class);
+      }
+   }
+
+   /// The filter of an output file
+   public static Path sideFile( Path file) {
+      return new Path(file.getParent(), "_" + file.getName() + ".bloom");
+   }
+
+   /// Hash of 3 bytes
+   static long trigram( int a, int b, int c) {
+      long h = ((a & 0xffL) << 16 | (b & 0xffL) << 8 | (c & 0xffL)) * 0x9e3779b97f4a7c15L;
+      h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+      h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+      return h ^ (h >>> 31);
+   }
+
+   /// Bit i of a hash is h1 + i * h2 modulo the number of bits, from the two halves of the hash
+   private void set( long hash) {
+      long m = 64L * bits.length;
+      int h1 = (int) hash;
+      int h2 = (int) (hash >>> 32);
+      for (int i = 0; i < hashes; i++) {
+         long bit = Math.floorMod(h1 + (long) i * h2, m);
+         bits[(int) (bit >>> 6)] |= 1L << bit;
+      }
+   }
+
+   private boolean contains( long hash) {
+      long m = 64L * bits.length;
+      int h1 = (int) hash;
+      int h2 = (int) (hash >>> 32);
+      for (int i = 0; i < hashes; i++) {
+         long bit = Math.floorMod(h1 + (long) i * h2, m);
+         if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /// False if the word is certainly not in the file: as a term for a filter of terms, or
+   /// anywhere in a line for a filter of trigrams
+   public boolean mightContain( String word) {
+      byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+      if (kind == TERMS) {
+         return contains(CountMinSketch.hash(bytes, 0, bytes.length));
+      }
+      for (int i = 0; i + 2 < bytes.length; i++) {
+         if (!contains(trigram(bytes[i], bytes[i + 1], bytes[i + 2]))) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /// Reads the filter of the split of a map task, and counts the split as skipped if none of
+   /// the words might be in its file. Returns false (read the split) when there is no filter.
+   public static boolean skip( TaskAttemptContext context, InputSplit split, Iterable<String> words)
+         throws IOException {
+      if (!(split instanceof FileSplit)) {
+         return false;
+      }
+      FileSplit file = (FileSplit) split;
+      Path side = sideFile(file.getPath());
+      FileSystem fs = side.getFileSystem(context.getConfiguration());
+      if (!fs.exists(side)) {
+         return false;
+      }
+      BloomFilter filter;
+      try (DataInputStream in = fs.open(side)) {
+         byte kind = in.readByte();
+         int hashes = in.readInt();
+         long[] bits = new long[in.readInt()];
+         for (int i = 0; i < bits.length; i++) {
+            bits[i] = in.readLong();
+         }
+         filter = new BloomFilter(kind, hashes, bits);
+      }
+      for (String word : words) {
+         if (filter.mightContain(word)) {
+            context.getCounter(Counters.SCANNED_SPLITS).increment(1);
+            return false;
+         }
+      }
+      context.getCounter(Counters.SKIPPED_SPLITS).increment(1);
+      context.getCounter(Counters.SKIPPED_BYTES).increment(file.getLength());
+      return true;
+   }
+
+   /// Collects the distinct hashes of a file in an open addressing table, so that the filter
+   /// can be sized for them when the file is complete
+   static class Builder {
+      private final byte kind;
+      /// 0 is a free slot, a hash of 0 is only flagged
+      private long[] slots = new long[1 << 10];
+      private int size = 0;
+      private boolean zero = false;
+
+      Builder( byte kind) {
+         this.kind = kind;
+      }
+
+      void add( long hash) {
+         if (hash == 0) {
+            size += zero ? 0 : 1;
+            zero = true;
+            return;
+         }
+         int mask = slots.length - 1;
+         for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+            if (slots[slot] == hash) {
+               return;
+            }
+            if (slots[slot] == 0) {
+               slots[slot] = hash;
+               if (2 * ++size > slots.length) {
+                  rehash();
+               }
+               return;
+            }
+         }
+      }
+
+      private void rehash() {
+         long[] old = slots;
+         slots = new long[2 * old.length];
+         int mask = slots.length - 1;
+         for (long hash : old) {
+            if (hash != 0) {
+               int slot = (int) hash & mask;
+               while (slots[slot] != 0) {
+                  slot = (slot + 1) & mask;
+               }
+               slots[slot] = hash;
+            }
+         }
+      }
+
+      /// Writes the filter with bitsPerEntry bits for every distinct hash and the number of
+      /// hash functions which gives the fewest false positives for it
+      void write( FileSystem fs, Path path, int bitsPerEntry) throws IOException {
+         long[] bits = new long[Math.max(1, (int) (((long) size * bitsPerEntry + 63) / 64))];
+         BloomFilter filter = new BloomFilter(kind, Math.max(1, (int) Math.round(bitsPerEntry * Math.log(2))), bits);
+         for (long hash : slots) {
+            if (hash != 0) {
+               filter.set(hash);
+            }
+         }
+         if (zero) {
+            filter.set(0);
+         }
+         try (DataOutputStream out = fs.create(path, true)) {
+            out.writeByte(kind);
+            out.writeInt(filter.hashes);
+            out.writeInt(bits.length);
+            for (long word : bits) {
+               out.writeLong(word);
+            }
+         }
+      }
+   }
+
+   /// The text output format, adding the trigrams of every line 'key	value' to the filter
+   public static class TextOutput<K, V> extends TextOutputFormat<K, V> {
+      @Override
+      public RecordWriter<K, V> getRecordWriter( TaskAttemptContext job) throws IOException, InterruptedException {
+         final Configuration conf = job.getConfiguration();
+         final RecordWriter<K, V> writer = super.getRecordWriter(job);
+         String extension = "";
+         if (getCompressOutput(job)) {
+            Class<? extends CompressionCodec> codec = getOutputCompressorClass(job, GzipCodec.class);
+            extension = ReflectionUtils.newInstance(codec, conf).getDefaultExtension();
+         }
+         final Path side = sideFile(getDefaultWorkFile(job, extension));
+         final byte[] separator = conf.get(SEPARATOR, "\t").getBytes(StandardCharsets.UTF_8);
+
+         return new RecordWriter<K, V>() {
+            private final Builder builder = new Builder(TRIGRAMS);
+            /// The last two bytes of the line so far, and how many bytes it has
+            private int first;
+            private int second;
+            private int length;
+
+            @Override
+            public void write( K key, V value) throws IOException, InterruptedException {
+               writer.write(key, value);
+               boolean nullKey = key == null || key instanceof NullWritable;
+               boolean nullValue = value == null || value instanceof NullWritable;
+               length = 0;
+               if (!nullKey) {
+                  add(key);
+               }
+               if (!nullKey && !nullValue) {
+                  add(separator, separator.length);
+               }
+               if (!nullValue) {
+                  add(value);
+               }
+            }
+
+            private void add( Object o) {
+               if (o instanceof Text) {
+                  add(((Text) o).getBytes(), ((Text) o).getLength());
+               } else {
+                  byte[] bytes = o.toString().getBytes(StandardCharsets.UTF_8);
+                  add(bytes, bytes.length);
+               }
+            }
+
+            private void add( byte[] bytes, int n) {
+               for (int i = 0; i < n; i++) {
+                  if (length >= 2) {
+                     builder.add(trigram(first, second, bytes[i]));
+                  }
+                  first = second;
+                  second = bytes[i];
+                  length++;
+               }
+            }
+
+            @Override
+            public void close( TaskAttemptContext context) throws IOException, InterruptedException {
+               writer.close(context);
+               builder.write(side.getFileSystem(conf), side, conf.getInt(BITS, 10));
+            }
+         };
+      }
+   }
+
+   /// The binary output format, adding the term of every record to the filter
+   public static class SequenceOutput extends SequenceFileOutputFormat<TermDocWeight, NullWritable> {
+      @Override
+      public RecordWriter<TermDocWeight, NullWritable> getRecordWriter( TaskAttemptContext job)
+            throws IOException, InterruptedException {
+         final Configuration conf = job.getConfiguration();
+         final RecordWriter<TermDocWeight, NullWritable> writer = super.getRecordWriter(job);
+         final Path side = sideFile(getDefaultWorkFile(job, ""));
+
+         return new RecordWriter<TermDocWeight, NullWritable>() {
+            private final Builder builder = new Builder(TERMS);
+
+            @Override
+            public void write( TermDocWeight key, NullWritable value) throws IOException, InterruptedException {
+               writer.write(key, value);
+               builder.add(CountMinSketch.hash(key.getTerm().getBytes(), 0, key.getTerm().getLength()));
+            }
+
+            @Override
+            public void close( TaskAttemptContext context) throws IOException, InterruptedException {
+               writer.close(context);
+               builder.write(side.getFileSystem(conf), side, conf.getInt(BITS, 10));
+            }
+         };
+      }
+   }
+}
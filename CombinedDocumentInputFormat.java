@@ -0,0 +1,262 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileRecordReader;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.LineRecordReader;
+
+/// CombinedDocumentInputFormat packs many whole documents into each split, for corpora of
+/// many small files where a map task per file would spend more time starting than reading.
+/// With -D input.combine=true, DocWordCount, TermFrequency, FusedTFIDF and the sketch job of
+/// CountMinSketch read their input with it. Files are never cut, and a split holds files of
+/// up to -D input.combine.split.size=BYTES in total (default 128 MB), taken from the same node
+/// or rack where possible.
+///
+/// Like DocumentInputFormat, getSplits() numbers the documents by their sorted file names,
+/// sets 'numberOfFiles' and writes the names once to 'documents.path'. The document ids of the
+/// files travel in the split, and the records are the lines of the files with the document id
+/// as key in place of the byte offset, so a mapper written for TextInputFormat still runs and
+/// the stages can carry the id instead of the name. CurrentDocument gives a mapper the
+/// document of its records with either input format.
+public class CombinedDocumentInputFormat extends CombineFileInputFormat<LongWritable, Text> {
+
+   public static final String ENABLED = "input.combine";
+   public static final String SPLIT_SIZE = "input.combine.split.size";
+
+   public static boolean isEnabled( Configuration conf) {
+      return conf.getBoolean(ENABLED, false);
+   }
+
+   /// Makes the job read its input with this format when input.combine is set, writing the
+   /// document names to the given path unless documents.path is set already
+   public static void configure( Job job, Path documents) {
+      Configuration conf = job.getConfiguration();
+      if (isEnabled(conf)) {
+         job.setInputFormatClass( CombinedDocumentInputFormat .class);
+         if (conf.get(DocumentInputFormat.DOCUMENTS_PATH) == null) {
+            conf.set(DocumentInputFormat.DOCUMENTS_PATH, documents.toString());
+         }
+      }
+   }
+
+   @Override
+   protected boolean isSplitable( JobContext context, Path file) {
+      return false;
+   }
+
+   @Override
+   public List<InputSplit> getSplits( JobContext job) throws IOException {
+      Configuration conf = job.getConfiguration();
+      setMaxSplitSize(conf.getLong(SPLIT_SIZE, 128L * 1024 * 1024));
+      List<InputSplit> splits = super.getSplits(job);
+
+      TreeSet<String> names = new TreeSet<String>();
+      for (InputSplit split : splits) {
+         for (Path path : ((CombineFileSplit) split).getPaths()) {
+            names.add(path.getName());
+         }
+      }
+      HashMap<String, Integer> ids = new HashMap<String, Integer>();
+      for (String name : names) {
+         ids.put(name, ids.size());
+      }
+
+      List<InputSplit> documentSplits = new ArrayList<InputSplit>(splits.size());
+      for (InputSplit split : splits) {
+         CombineFileSplit combined = (CombineFileSplit) split;
+         int[] docIds = new int[combined.getNumPaths()];
+         for (int i = 0; i < docIds.length; i++) {
+            docIds[i] = ids.get(combined.getPath(i).getName());
+         }
+         documentSplits.add(new DocumentSplit(combined, docIds));
+      }
+
+      conf.setInt(DocumentInputFormat.NUMBER_OF_FILES, names.size());
+      String side = conf.get(DocumentInputFormat.DOCUMENTS_PATH);
+      if (side != null) {
+         DocumentInputFormat.writeDocuments(conf, new Path(side), names);
+      }
+      return documentSplits;
+   }
+
+   @Override
+   public RecordReader<LongWritable, Text> createRecordReader( InputSplit split, TaskAttemptContext context)
+         throws IOException {
+      return new CombineFileRecordReader<LongWritable, Text>((CombineFileSplit) split, context, FileReader.class);
+   }
+
+   /// A CombineFileSplit with the document id of each of its files
+   public static class DocumentSplit extends CombineFileSplit {
+      private int[] docIds;
+
+      public DocumentSplit() {
+      }
+
+      DocumentSplit( CombineFileSplit split, int[] docIds) throws IOException {
+         super(split.getPaths(), split.getStartOffsets(), split.getLengths(), split.getLocations());
+         this.docIds = docIds;
+      }
+
+      public int getDocId( int i) {
+         return docIds[i];
+      }
+
+      @Override
+      public void write( DataOutput out) throws IOException {
+         super.write(out);
+         for (int docId : docIds) {
+            WritableUtils.writeVInt(out, docId);
+         }
+      }
+
+      @Override
+      public void readFields( DataInput in) throws IOException {
+         super.readFields(in);
+         docIds = new int[getNumPaths()];
+         for (int i = 0; i < docIds.length; i++) {
+            docIds[i] = WritableUtils.readVInt(in);
+         }
+      }
+   }
+
+   /// Reads the lines of one file of a split, keyed by its document id
+   public static class FileReader extends RecordReader<LongWritable, Text> {
+      private final LineRecordReader lines = new LineRecordReader();
+      private final FileSplit file;
+      private final LongWritable docId;
+
+      public FileReader( CombineFileSplit split, TaskAttemptContext context, Integer index) {
+         this.file = new FileSplit(split.getPath(index), split.getOffset(index), split.getLength(index), null);
+         this.docId = new LongWritable(((DocumentSplit) split).getDocId(index));
+      }
+
+      @Override
+      public void initialize( InputSplit split, TaskAttemptContext context) throws IOException {
+         lines.initialize(file, context);
+      }
+
+      @Override
+      public boolean nextKeyValue() throws IOException {
+         return lines.nextKeyValue();
+      }
+
+      @Override
+      public LongWritable getCurrentKey() {
+         return docId;
+      }
+
+      @Override
+      public Text getCurrentValue() {
+         return lines.getCurrentValue();
+      }
+
+      @Override
+      public float getProgress() throws IOException {
+         return lines.getProgress();
+      }
+
+      @Override
+      public void close() throws IOException {
+         lines.close();
+      }
+   }
+
+   /// The document of the records of a map task: the file of a FileSplit, or with this format
+   /// the document id in the key of each record. The name and the id are looked up in
+   /// documents.path only when they are asked for.
+   public static class CurrentDocument {
+      private final Configuration conf;
+      private final FileSplit file;
+      private int docId = -1;
+      private String name;
+      private boolean started = false;
+      private List<String> names;
+
+      public CurrentDocument( TaskAttemptContext context, InputSplit split) {
+         this.conf = context.getConfiguration();
+         this.file = split instanceof FileSplit ? (FileSplit) split : null;
+         if (file != null) {
+            name = file.getPath().getName();
+         }
+      }
+
+      /// Number of documents of the split which no other map task reads, for the DOCUMENTS
+      /// counter: the file of a FileSplit starting at its beginning, every file of a combined one
+      public static int documents( InputSplit split) {
+         if (split instanceof CombineFileSplit) {
+            return ((CombineFileSplit) split).getNumPaths();
+         }
+         return ((FileSplit) split).getStart() == 0 ? 1 : 0;
+      }
+
+      /// Moves to the document of a record, and returns true when it is not the one of the
+      /// record before (always on the first record)
+      public boolean next( LongWritable key) {
+         if (file != null) {
+            boolean first = !started;
+            started = true;
+            return first;
+         }
+         if (started && key.get() == docId) {
+            return false;
+         }
+         started = true;
+         docId = (int) key.get();
+         name = null;
+         return true;
+      }
+
+      public String name() throws IOException {
+         if (name == null) {
+            if (names == null) {
+               names = DocumentInputFormat.readDocuments(conf, documents());
+            }
+            name = names.get(docId);
+         }
+         return name;
+      }
+
+      public int id() throws IOException {
+         if (docId < 0) {
+            Integer id = DocumentInputFormat.readDocumentIds(conf, documents()).get(name);
+            if (id == null) {
+               throw new IOException("No document id for " + file.getPath() + " in " + documents());
+            }
+            docId = id;
+         }
+         return docId;
+      }
+
+      /// '#####name' as UTF-8, the suffix of the keys of the text stages
+      public byte[] suffix() throws IOException {
+         return ("#####" + name()).getBytes(StandardCharsets.UTF_8);
+      }
+
+      private Path documents() {
+         return new Path(conf.get(DocumentInputFormat.DOCUMENTS_PATH));
+      }
+   }
+}
@@ -0,0 +1,333 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.log4j.Logger;
+
+/// CountMinSketch estimates the document frequency and the total count of every word of the
+/// input in a few fixed size tables, so that rare words can be dropped by the tokenizer before
+/// they reach the shuffle. Most of the words found only once or twice are numbers and pieces
+/// of code, and they are most of the vocabulary.
+///
+/// With -D sketch.min.df=N or -D sketch.min.tf=N, TermFrequency and FusedTFIDF first run the
+/// sketch job over the input, which writes OUTPUT_PATH/sketch, and their Tokenizer then drops
+/// the words estimated to be in fewer than N documents, or to occur fewer than N times. A
+/// count-min sketch never underestimates, so a word at or above the threshold is always kept,
+/// and the tfidf values of the kept words do not change; some rare words are kept when they
+/// share cells with frequent ones. (Words which get extra 'documents' from tokens ending in
+/// '#', as TFIDF splits the key on the first '#####', lose those of the dropped tokens.) -D
+/// sketch.path=DIR reuses a sketch written before.
+///
+/// A table has -D sketch.depth=D rows (default 4) of -D sketch.width=W counters (default 2^20).
+/// A word adds to one counter of each row and its estimate is the smallest of them, which is
+/// at most the true value plus about e/W of the total of the table with probability 1 - e^-D.
+/// Each map task counts the words of its split exactly first and adds them with conservative
+/// update (only the counters at the minimum are raised), and the reducers add up the tables of
+/// the tasks. A document read by several map tasks counts once for each of them.
+///
+/// The words dropped are counted in the Sketch counters (PRUNED_TOKENS, PRUNED_BYTES) of the
+/// jobs using the sketch.
+public class CountMinSketch {
+
+   private static final Logger LOG = Logger .getLogger( CountMinSketch.class);
+
+   public static final String MIN_DF = "sketch.min.df";
+   public static final String MIN_TF = "sketch.min.tf";
+   public static final String DEPTH = "sketch.depth";
+   public static final String WIDTH = "sketch.width";
+   public static final String PATH = "sketch.path";
+
+   public static enum Counters { PRUNED_TOKENS, PRUNED_BYTES }
+
+   private final int depth;
+   private final int width;
+   /// Rows of the document frequency and count tables, null for a table which is not used
+   private final int[][] df;
+   private final int[][] tf;
+
+   public CountMinSketch( int depth, int width, boolean df, boolean tf) {
+      this.depth = depth;
+      this.width = width;
+      this.df = df ? new int[depth][width] : null;
+      this.tf = tf ? new int[depth][width] : null;
+   }
+
+   /// True when a threshold is set, so that the sketch is built and used
+   public static boolean isEnabled( Configuration conf) {
+      return conf.getInt(MIN_DF, 0) > 1 || conf.getInt(MIN_TF, 0) > 1;
+   }
+
+   /// 64 bit hash of a word, FNV-1a over its bytes followed by the finalizer of SplitMix64
+   public static long hash( byte[] bytes, int start, int length) {
+      long h = 0xcbf29ce484222325L;
+      for (int i = start; i < start + length; i++) {
+         h = (h ^ (bytes[i] & 0xff)) * 0x100000001b3L;
+      }
+      h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+      h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+      return h ^ (h >>> 31);
+   }
+
+   /// Counter of the hash in row i, from the two halves of the hash
+   private int cell( long hash, int i) {
+      return (int) Math.floorMod((int) hash + (long) i * (int) (hash >>> 32), (long) width);
+   }
+
+   /// Adds a word found count times in one document
+   public void add( byte[] bytes, int start, int length, int count) {
+      long hash = hash(bytes, start, length);
+      if (df != null) {
+         add(df, hash, 1);
+      }
+      if (tf != null) {
+         add(tf, hash, count);
+      }
+   }
+
+   /// Conservative update: the counters are raised to the new estimate at most
+   private void add( int[][] table, long hash, int count) {
+      int estimate = estimate(table, hash) + count;
+      for (int i = 0; i < depth; i++) {
+         int c = cell(hash, i);
+         table[i][c] = Math.max(table[i][c], estimate);
+      }
+   }
+
+   private int estimate( int[][] table, long hash) {
+      int estimate = Integer.MAX_VALUE;
+      for (int i = 0; i < depth; i++) {
+         estimate = Math.min(estimate, table[i][cell(hash, i)]);
+      }
+      return estimate;
+   }
+
+   /// Estimated number of documents containing the word, -1 without that table
+   public int documentFrequency( byte[] bytes, int start, int length) {
+      return df == null ? -1 : estimate(df, hash(bytes, start, length));
+   }
+
+   /// Estimated number of occurrences of the word, -1 without that table
+   public int count( byte[] bytes, int start, int length) {
+      return tf == null ? -1 : estimate(tf, hash(bytes, start, length));
+   }
+
+   /// False for a word below one of the thresholds
+   public boolean keep( byte[] bytes, int start, int length, int minDf, int minTf) {
+      long hash = hash(bytes, start, length);
+      return (df == null || minDf <= 1 || estimate(df, hash) >= minDf)
+            && (tf == null || minTf <= 1 || estimate(tf, hash) >= minTf);
+   }
+
+   /// Adds the words dropped by the tokenizer of a task to its counters
+   public static void report( TaskAttemptContext context, Tokenizer tokenizer) {
+      context.getCounter(Counters.PRUNED_TOKENS).increment(tokenizer.prunedTokens());
+      context.getCounter(Counters.PRUNED_BYTES).increment(tokenizer.prunedBytes());
+   }
+
+   /// Runs the sketch job over the input unless sketch.path names a sketch already, and sets
+   /// sketch.path to its output. Returns false if the job failed.
+   public static boolean build( Configuration conf, String input, Path output) throws Exception {
+      if (conf.get(PATH) != null) {
+         return true;
+      }
+      Job job  = Job .getInstance(conf, " sketch ");
+      job.setJarByClass( CountMinSketch .class);
+      FileInputFormat.addInputPaths(job, input);
+      FileOutputFormat.setOutputPath(job, output);
+      CombinedDocumentInputFormat.configure(job, new Path(output, "_documents"));
+      job.setMapperClass( Map .class);
+      job.setReducerClass( Reduce .class);
+      job.setOutputKeyClass( IntWritable .class);
+      job.setOutputValueClass( Row .class);
+      job.setOutputFormatClass( SequenceFileOutputFormat .class);
+      if (!Metrics.waitForCompletion(job, "sketch")) {
+         return false;
+      }
+      conf.set(PATH, output.toString());
+      return true;
+   }
+
+   private static final HashMap<String, CountMinSketch> cache = new HashMap<String, CountMinSketch>();
+
+   /// The sketch named by sketch.path, read once per JVM, or null if there is none
+   public static synchronized CountMinSketch read( Configuration conf) throws IOException {
+      String path = conf.get(PATH);
+      if (path == null || !isEnabled(conf)) {
+         return null;
+      }
+      CountMinSketch sketch = cache.get(path);
+      if (sketch != null) {
+         return sketch;
+      }
+      int depth = conf.getInt(DEPTH, 4);
+      int width = conf.getInt(WIDTH, 1 << 20);
+      sketch = new CountMinSketch(depth, width, conf.getInt(MIN_DF, 0) > 1, conf.getInt(MIN_TF, 0) > 1);
+      Path dir = new Path(path);
+      FileSystem fs = dir.getFileSystem(conf);
+      IntWritable key = new IntWritable();
+      Row row = new Row();
+      for (FileStatus file : fs.listStatus(dir)) {
+         String name = file.getPath().getName();
+         if (name.startsWith("_") || name.startsWith(".")) {
+            continue;
+         }
+         try (SequenceFile.Reader reader = new SequenceFile.Reader(conf, SequenceFile.Reader.file(file.getPath()))) {
+            while (reader.next(key, row)) {
+               int[][] table = key.get() < depth ? sketch.df : sketch.tf;
+               if (table != null) {
+                  if (row.counts.length != width) {
+                     throw new IOException("Sketch " + path + " has rows of " + row.counts.length
+                           + " counters, " + WIDTH + " is " + width);
+                  }
+                  table[key.get() % depth] = row.counts.clone();
+               }
+            }
+         }
+      }
+      LOG.info("Read the sketch " + path);
+      cache.put(path, sketch);
+      return sketch;
+   }
+
+   /// One row of a table, written as the gaps between its non-zero counters and their values
+   public static class Row implements Writable {
+      private int[] counts = new int[0];
+
+      public Row() {
+      }
+
+      public Row( int[] counts) {
+         this.counts = counts;
+      }
+
+      @Override
+      public void write( DataOutput out) throws IOException {
+         int nonZero = 0;
+         for (int count : counts) {
+            if (count != 0) {
+               nonZero++;
+            }
+         }
+         WritableUtils.writeVInt(out, counts.length);
+         WritableUtils.writeVInt(out, nonZero);
+         int last = -1;
+         for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+               WritableUtils.writeVInt(out, i - last);
+               WritableUtils.writeVInt(out, counts[i]);
+               last = i;
+            }
+         }
+      }
+
+      @Override
+      public void readFields( DataInput in) throws IOException {
+         counts = new int[WritableUtils.readVInt(in)];
+         int nonZero = WritableUtils.readVInt(in);
+         int last = -1;
+         for (int i = 0; i < nonZero; i++) {
+            last += WritableUtils.readVInt(in);
+            counts[last] = WritableUtils.readVInt(in);
+         }
+      }
+   }
+
+   /// This is the Mapper class. The words of a document are counted in a TermTable and added
+   /// to a sketch of the split when the document ends (once per split, unless the input is a
+   /// CombinedDocumentInputFormat), which is written as one record per row: rows 0 to D - 1 of
+   /// the document frequencies, then those of the counts.
+   public static class Map extends Mapper<LongWritable ,  Text ,  IntWritable ,  Row > {
+      private Tokenizer tokenizer;
+      private TermTable terms = new TermTable();
+      private CombinedDocumentInputFormat.CurrentDocument document;
+      private CountMinSketch sketch;
+      private int depth;
+
+      @Override
+      protected void setup( Context context) throws IOException, InterruptedException {
+         Configuration conf = context.getConfiguration();
+         tokenizer = new Tokenizer(conf);
+         document = new CombinedDocumentInputFormat.CurrentDocument(context, context.getInputSplit());
+         depth = conf.getInt(DEPTH, 4);
+         sketch = new CountMinSketch(depth, conf.getInt(WIDTH, 1 << 20),
+               conf.getInt(MIN_DF, 0) > 1, conf.getInt(MIN_TF, 0) > 1);
+      }
+
+      public void map( LongWritable offset,  Text lineText,  Context context)
+        throws  IOException,  InterruptedException {
+         if (document.next(offset)) {
+            addTerms();
+         }
+         tokenizer.reset(lineText);
+         while (tokenizer.next()) {
+            terms.add(tokenizer.bytes(), tokenizer.start(), tokenizer.length());
+         }
+      }
+
+      /// Adds the words of the document read so far to the sketch
+      private void addTerms() {
+         for (int id = 0; id < terms.size(); id++) {
+            sketch.add(terms.bytes(), terms.start(id), terms.length(id), terms.count(id));
+         }
+         terms = new TermTable();
+      }
+
+      @Override
+      protected void cleanup( Context context) throws IOException, InterruptedException {
+         addTerms();
+         IntWritable row = new IntWritable();
+         for (int i = 0; i < depth; i++) {
+            if (sketch.df != null) {
+               row.set(i);
+               context.write(row, new Row(sketch.df[i]));
+            }
+            if (sketch.tf != null) {
+               row.set(depth + i);
+               context.write(row, new Row(sketch.tf[i]));
+            }
+         }
+      }
+   }
+
+   /// This is the Reducer class which adds up the rows of the map tasks
+   public static class Reduce extends Reducer<IntWritable ,  Row ,  IntWritable ,  Row > {
+      @Override
+      public void reduce( IntWritable row,  Iterable<Row > values,  Context context)
+         throws IOException,  InterruptedException {
+         int[] sum = null;
+         for (Row value : values) {
+            if (sum == null) {
+               sum = value.counts.clone();
+               continue;
+            }
+            for (int i = 0; i < sum.length; i++) {
+               sum[i] = (int) Math.min(Integer.MAX_VALUE, (long) sum[i] + value.counts[i]);
+            }
+         }
+         context.write(row, new Row(sum));
+      }
+   }
+}
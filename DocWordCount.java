@@ -5,17 +5,17 @@
 package org.myorg;
 
 import java.io.IOException;
-import java.util.regex.Pattern;
+import java.util.Map.Entry;
 import org.apache.hadoop.conf.Configured;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
+import org.apache.hadoop.mapreduce.Counter;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
-import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.LongWritable;
@@ -39,18 +39,29 @@ public class DocWordCount extends Configured implements Tool {
    /// run() method is responsible for defining a job object. In this case, it sets the input
    /// path and the output path. It sets the mapper and reducer classes, and the datatypes for
    /// Output Key/Value pair which is Text/IntWritable respectively.
+   /// The Reduce class only sums the counts, so it is also registered as the combiner. With
+   /// -D inmapper.combine=true the mapper additionally aggregates counts itself (see
+   /// InMapperCombiner) and the savings in map output records and shuffle bytes are logged.
+   /// With -D input.combine=true many small files are read per map task (see
+   /// CombinedDocumentInputFormat).
    public int run( String[] args) throws  Exception {
       Job job  = Job .getInstance(getConf(), " docwordcount ");
       job.setJarByClass( this .getClass());
 
       FileInputFormat.addInputPaths(job,  args[0]);
       FileOutputFormat.setOutputPath(job,  new Path(args[ 1] + "/docwordcount"));
+      CombinedDocumentInputFormat.configure(job, new Path(args[1] + "/documents"));
       job.setMapperClass( Map .class);
+      job.setCombinerClass( Reduce .class);
       job.setReducerClass( Reduce .class);
       job.setOutputKeyClass( Text .class);
       job.setOutputValueClass( IntWritable .class);
 
-      return job.waitForCompletion( true)  ? 0 : 1;
+      boolean success = Metrics.waitForCompletion(job, "docwordcount");
+      if (success) {
+         InMapperCombiner.report(job, LOG);
+      }
+      return success ? 0 : 1;
    }
    
    /// This is the Mapper class which hosts the map function. Here, the input is taken from the
@@ -58,32 +69,89 @@ public class DocWordCount extends Configured implements Tool {
    public static class Map extends Mapper<LongWritable ,  Text ,  Text ,  IntWritable > {
       private final static IntWritable one  = new IntWritable( 1);
       private Text word  = new Text();
+      private IntWritable count  = new IntWritable();
+
+      private Tokenizer tokenizer;
+
+      /// '#####fileName' as UTF-8, the same for every line of a document
+      private byte[] suffix;
+      private CombinedDocumentInputFormat.CurrentDocument document;
+
+      /// Holds partial counts when in-mapper combining is enabled, null otherwise
+      private InMapperCombiner buffer;
+      private Counter tokens;
+      private Counter tokenBytes;
+      private Counter outputRecords;
+      private Counter outputBytes;
+
+      @Override
+      protected void setup( Context context) throws IOException, InterruptedException {
+         if (InMapperCombiner.isEnabled(context.getConfiguration())) {
+            buffer = new InMapperCombiner(context.getConfiguration());
+         }
+         tokenizer = new Tokenizer(context.getConfiguration());
 
-      private static final Pattern WORD_BOUNDARY = Pattern .compile("\\s*\\b\\s*");
+         /// The document of the input lines, from the FileSplit or from the key of every line
+         /// with CombinedDocumentInputFormat
+         document = new CombinedDocumentInputFormat.CurrentDocument(context, context.getInputSplit());
+         context.getCounter(Metrics.Counters.DOCUMENTS).increment(
+               CombinedDocumentInputFormat.CurrentDocument.documents(context.getInputSplit()));
+         tokens = context.getCounter(InMapperCombiner.CombineCounters.TOKENS);
+         tokenBytes = context.getCounter(InMapperCombiner.CombineCounters.TOKEN_BYTES);
+         outputRecords = context.getCounter(InMapperCombiner.CombineCounters.MAP_OUTPUT_RECORDS);
+         outputBytes = context.getCounter(InMapperCombiner.CombineCounters.MAP_OUTPUT_BYTES);
+      }
 
       public void map( LongWritable offset,  Text lineText,  Context context)
         throws  IOException,  InterruptedException {
-    	  	 
-    	  	 /// All the input is converted to lowercase here. 
-         String line  = lineText.toString().toLowerCase();
-         Text currentWord  = new Text();
-         
-         /// Inbuilt FileSplit object is used to get the filename of the input line.
-         FileSplit file = (FileSplit) context.getInputSplit();
-         String fileName = file.getPath().getName();
-         
-         /// The line is split into words and a new string is created which looks like
+         if (document.next(offset)) {
+            suffix = document.suffix();
+         }
+
+         /// The line is split into words by the Tokenizer, which also lowercases them, and
+         /// each word is followed by the filename in the reused key, which looks like
          /// 'word#####fileName'. This is the Key here. The Value is a constant
          /// IntWritable object with value 1. These are added as Key/Value pairs and
-         /// passed onto the reduce function.
-         for ( String word  : WORD_BOUNDARY .split(line)) {
-            if (word.isEmpty()) {
-               continue;
+         /// passed onto the reduce function. With in-mapper combining the key is only
+         /// counted here and written out later by flush().
+         tokenizer.reset(lineText);
+         while (tokenizer.next()) {
+            word.set(tokenizer.bytes(), tokenizer.start(), tokenizer.length());
+            word.append(suffix, 0, suffix.length);
+            tokens.increment(1);
+            tokenBytes.increment(InMapperCombiner.recordBytes(word.getLength(), 4));
+            if (buffer == null) {
+               write(word, one, context);
+            } else if (buffer.add(word)) {
+               flush(context);
             }
-            currentWord  = new Text(word + "#####" + fileName);
-            context.write(currentWord,one);
          }
       }
+
+      @Override
+      protected void cleanup( Context context) throws IOException, InterruptedException {
+         if (buffer != null) {
+            flush(context);
+         }
+      }
+
+      /// Writes every buffered 'word#####fileName' with its partial count and empties the buffer
+      private void flush( Context context) throws IOException, InterruptedException {
+         for (Entry<Text, int[]> entry : buffer.entries()) {
+            word.set(entry.getKey());
+            count.set(entry.getValue()[0]);
+            write(word, count, context);
+         }
+         buffer.clear();
+         context.getCounter(InMapperCombiner.CombineCounters.FLUSHES).increment(1);
+      }
+
+      private void write( Text key, IntWritable value, Context context)
+        throws IOException, InterruptedException {
+         context.write(key, value);
+         outputRecords.increment(1);
+         outputBytes.increment(InMapperCombiner.recordBytes(key.getLength(), 4));
+      }
    }
    
    /// This is the Reducer class which hosts the reduce function. Here, the input is received
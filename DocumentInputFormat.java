@@ -0,0 +1,105 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+
+/// DocumentInputFormat is a TextInputFormat which also records the documents of the input.
+/// The splits have to be computed before a job is submitted anyway, so the distinct file names
+/// of the splits are collected there instead of listing the input directory a second time.
+///
+/// The number of documents is put into the job configuration as 'numberOfFiles', which is the
+/// same property TFIDF uses, and the sorted file names are written one per line to the side
+/// file given by 'documents.path' (if set), so that later stages can read the count without
+/// touching the input again. The position of a name in that file is its document id, which
+/// the binary stages (see TermDocWeight) store instead of the name.
+public class DocumentInputFormat extends TextInputFormat {
+
+   public static final String NUMBER_OF_FILES = "numberOfFiles";
+   public static final String DOCUMENTS_PATH = "documents.path";
+
+   @Override
+   public List<InputSplit> getSplits( JobContext job) throws IOException {
+      List<InputSplit> splits = super.getSplits(job);
+
+      /// A large file is cut into several splits, so only distinct names are counted
+      TreeSet<String> documents = new TreeSet<String>();
+      for (InputSplit split : splits) {
+         documents.add(((FileSplit) split).getPath().getName());
+      }
+
+      /// getSplits() runs before the job configuration is written out at submission, so the
+      /// value set here reaches every map and reduce task
+      Configuration conf = job.getConfiguration();
+      conf.setInt(NUMBER_OF_FILES, documents.size());
+
+      String side = conf.get(DOCUMENTS_PATH);
+      if (side != null) {
+         writeDocuments(conf, new Path(side), documents);
+      }
+      return splits;
+   }
+
+   /// Writes the document names, one per line, to the given path
+   public static void writeDocuments( Configuration conf, Path path, Iterable<String> documents)
+         throws IOException {
+      FileSystem fs = path.getFileSystem(conf);
+      try (Writer out = new OutputStreamWriter(fs.create(path, true), StandardCharsets.UTF_8)) {
+         for (String document : documents) {
+            out.write(document);
+            out.write('\n');
+         }
+      }
+   }
+
+   /// Reads back the document names written by writeDocuments()
+   public static List<String> readDocuments( Configuration conf, Path path) throws IOException {
+      FileSystem fs = path.getFileSystem(conf);
+      List<String> documents = new ArrayList<String>();
+      try (BufferedReader in = new BufferedReader(
+            new InputStreamReader(fs.open(path), StandardCharsets.UTF_8))) {
+         String line;
+         while ((line = in.readLine()) != null) {
+            documents.add(line);
+         }
+      }
+      return documents;
+   }
+
+   /// Reads the side file as a dictionary from document name to document id. A name listed
+   /// twice (a document added again by IncrementalIndex) gets the id of its last line.
+   public static HashMap<String, Integer> readDocumentIds( Configuration conf, Path path)
+         throws IOException {
+      HashMap<String, Integer> ids = new HashMap<String, Integer>();
+      int docId = 0;
+      for (String document : readDocuments(conf, path)) {
+         ids.put(document, docId++);
+      }
+      return ids;
+   }
+
+   /// Returns the side file of the job, or OUTPUT_PATH/documents next to the given stage output
+   /// folder (for example OUTPUT_PATH/tfidf) when 'documents.path' is not set
+   public static Path documentsPath( Configuration conf, Path stageOutput) {
+      String side = conf.get(DOCUMENTS_PATH);
+      return side != null ? new Path(side) : new Path(stageOutput.getParent(), "documents");
+   }
+}
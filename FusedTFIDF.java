@@ -0,0 +1,207 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map.Entry;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+
+/// FusedTFIDF computes the same output as TermFrequency chained with TFIDF, but in a single
+/// MapReduce job. The mapper counts the words of each file and sends <word, filename=count>
+/// to the reducer, so one shuffle groups all the documents of a word. The reducer then has
+/// both the term counts per document and the document frequency of the word, and writes the
+/// final TFIDF values without the intermediate OUTPUT_PATH/tf folder.
+///
+/// The number of documents is taken from the input splits by DocumentInputFormat instead of a
+/// separate listing of the input folder. The document names are also written to
+/// OUTPUT_PATH/documents for later stages.
+/// Output of this program is the same as TFIDF, 'word#####filename	tfidf', at OUTPUT_PATH/tfidf
+public class FusedTFIDF extends Configured implements Tool {
+
+   private static final Logger LOG = Logger .getLogger( FusedTFIDF.class);
+
+   /// main() method is the starting point of the program
+   public static void main( String[] args) throws  Exception {
+      int res  = ToolRunner .run( new FusedTFIDF(), args);
+      System .exit(res);
+   }
+
+   /// run() method is responsible for defining a job object. In this case, it sets the input
+   /// path and the output path (OUTPUT_PATH/tfidf). It sets the mapper, combiner and reducer
+   /// classes, and the datatypes for the map output, Text/Text, and the final output,
+   /// Text/DoubleWritable. With -D sketch.min.df=N or -D sketch.min.tf=N the rare words are
+   /// dropped by the mapper as in TermFrequency (see CountMinSketch), and with -D
+   /// input.combine=true many small files are read per map task (see CombinedDocumentInputFormat).
+   public int run( String[] args) throws  Exception {
+      if (CountMinSketch.isEnabled(getConf())
+            && !CountMinSketch.build(getConf(), args[0], new Path(args[1] + "/sketch"))) {
+         return 1;
+      }
+      Job job  = Job .getInstance(getConf(), " fusedtfidf ");
+      job.setJarByClass( this .getClass());
+
+      /// The input format counts the documents and writes their names next to the output
+      job.setInputFormatClass( DocumentInputFormat .class);
+      job.getConfiguration().set(DocumentInputFormat.DOCUMENTS_PATH, args[1] + "/documents");
+      CombinedDocumentInputFormat.configure(job, new Path(args[1] + "/documents"));
+
+      FileInputFormat.addInputPaths(job,  args[0]);
+      FileOutputFormat.setOutputPath(job,  new Path(args[ 1] + "/tfidf"));
+      job.setMapperClass( Map .class);
+      job.setCombinerClass( Combine .class);
+      job.setReducerClass( Reduce .class);
+      job.setMapOutputKeyClass( Text .class);
+      job.setMapOutputValueClass( Text .class);
+      job.setOutputKeyClass( Text .class);
+      job.setOutputValueClass( DoubleWritable .class);
+      if (BloomFilter.isEnabled(job.getConfiguration())) {
+         BloomFilter.setOutput(job);
+      }
+
+      return Metrics.waitForCompletion(job, "tfidf") ? 0 : 1;
+   }
+
+   /// Adds the 'filename=count' values of one word to the given map, summing the counts of
+   /// values with the same filename. Used by both the combiner and the reducer.
+   static void addCounts( Iterable<Text > values, HashMap<String, long[]> counts) {
+      for (Text value : values) {
+         String filename_count = value.toString();
+         int split = filename_count.lastIndexOf('=');
+         String filename = filename_count.substring(0, split);
+         long count = Long.parseLong(filename_count.substring(split + 1));
+
+         long[] total = counts.get(filename);
+         if (total == null) {
+            counts.put(filename, new long[] { count });
+         } else {
+            total[0] += count;
+         }
+      }
+   }
+
+   /// This is the Mapper class which hosts the map function. The words are found the same way
+   /// as in TermFrequency, but are always counted inside the map task (see InMapperCombiner)
+   /// and written out as <word, filename=count>
+   public static class Map extends Mapper<LongWritable ,  Text ,  Text ,  Text > {
+      private Text word  = new Text();
+      private Text filename_count  = new Text();
+
+      private Tokenizer tokenizer;
+      private Text key  = new Text();
+
+      /// '#####fileName' as UTF-8, the same for every line of a document
+      private byte[] suffix;
+      private CombinedDocumentInputFormat.CurrentDocument document;
+
+      private InMapperCombiner buffer;
+
+      @Override
+      protected void setup( Context context) throws IOException, InterruptedException {
+         buffer = new InMapperCombiner(context.getConfiguration());
+         tokenizer = new Tokenizer(context.getConfiguration());
+         tokenizer.setSketch(CountMinSketch.read(context.getConfiguration()));
+
+         /// The document of the input lines, from the FileSplit or from the key of every line
+         /// with CombinedDocumentInputFormat
+         document = new CombinedDocumentInputFormat.CurrentDocument(context, context.getInputSplit());
+      }
+
+      public void map( LongWritable offset,  Text lineText,  Context context)
+        throws  IOException,  InterruptedException {
+         if (document.next(offset)) {
+            suffix = document.suffix();
+         }
+         tokenizer.reset(lineText);
+         while (tokenizer.next()) {
+            key.set(tokenizer.bytes(), tokenizer.start(), tokenizer.length());
+            key.append(suffix, 0, suffix.length);
+            if (buffer.add(key)) {
+               flush(context);
+            }
+         }
+      }
+
+      @Override
+      protected void cleanup( Context context) throws IOException, InterruptedException {
+         flush(context);
+         CountMinSketch.report(context, tokenizer);
+      }
+
+      /// The buffered 'word#####filename' keys are split again on the first delimiter, the same
+      /// way TFIDF.Map splits them, so that words ending in '#' are grouped exactly as in the
+      /// two job pipeline. They are written as <word, filename=count>
+      private void flush( Context context) throws IOException, InterruptedException {
+         for (Entry<Text, int[]> entry : buffer.entries()) {
+            String key = entry.getKey().toString();
+            int split = key.indexOf("#####");
+            word.set(key.substring(0, split));
+            filename_count.set(key.substring(split + 5) + "=" + entry.getValue()[0]);
+            context.write(word, filename_count);
+         }
+         buffer.clear();
+      }
+   }
+
+   /// This is the Combiner class. Different map tasks of the same file (or several flushes of
+   /// one task) may send the same <word, filename=count> more than once; the counts are added
+   /// up here so that every filename appears once per word.
+   public static class Combine extends Reducer<Text ,  Text ,  Text ,  Text > {
+      private Text filename_count  = new Text();
+
+      @Override
+      public void reduce( Text word,  Iterable<Text > values,  Context context)
+         throws IOException,  InterruptedException {
+         HashMap<String, long[]> counts = new HashMap<String, long[]>();
+         addCounts(values, counts);
+         for (Entry<String, long[]> entry : counts.entrySet()) {
+            filename_count.set(entry.getKey() + "=" + entry.getValue()[0]);
+            context.write(word, filename_count);
+         }
+      }
+   }
+
+   /// This is the Reducer class which hosts the reduce function. All the documents containing
+   /// a word arrive together, so the document frequency is the number of distinct filenames.
+   /// WF(t, d) = 1 + log10(TF(t, d)), IDF(t) = log10(1 + Total # of documents / # documents
+   /// containing term t) and TF-IDF(t, d) = WF(t, d) * IDF(t), exactly as in TermFrequency and TFIDF
+   public static class Reduce extends Reducer<Text ,  Text ,  Text ,  DoubleWritable > {
+      private Text key  = new Text();
+      private DoubleWritable tfidf  = new DoubleWritable();
+
+      @Override
+      public void reduce( Text word,  Iterable<Text > values,  Context context)
+         throws IOException,  InterruptedException {
+         HashMap<String, long[]> counts = new HashMap<String, long[]>();
+         addCounts(values, counts);
+
+         /// Set by DocumentInputFormat when the job was submitted
+         int numberOfFiles = context.getConfiguration().getInt(DocumentInputFormat.NUMBER_OF_FILES, 0);
+         int numberOfDocumentsWithWord = counts.size();
+
+         /// IDF calculation, with the same integer division as TFIDF.Reduce
+         double idf = Math.log10(1 + (numberOfFiles / numberOfDocumentsWithWord));
+         Metrics.postingList(context, numberOfDocumentsWithWord);
+
+         for (Entry<String, long[]> entry : counts.entrySet()) {
+            key.set(word.toString() + "#####" + entry.getKey());
+            tfidf.set((1.0 + Math.log10(entry.getValue()[0])) * idf);
+            context.write(key, tfidf);
+         }
+      }
+   }
+}
@@ -0,0 +1,113 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.TaskCounter;
+import org.apache.log4j.Logger;
+
+/// InMapperCombiner holds partial counts for 'word#####filename' keys inside a single map task.
+/// Instead of writing <word#####filename, 1> for every token, the mapper adds the key here and
+/// the buffer is written out once per distinct key, either when the map task finishes (cleanup)
+/// or when the buffer grows beyond the configured limits.
+///
+/// The buffer is bounded in two ways:
+/// inmapper.combine.max.entries - number of distinct keys held before a flush (default 100000)
+/// inmapper.combine.max.heap    - fraction of the task heap the buffer may take (default 0.3)
+///
+/// The size of the buffer is estimated from the bytes of its keys and the fixed cost of a map
+/// entry, not read from the heap in use, which counts garbage not yet collected and would make
+/// the buffer flush ever more often just when memory is tight.
+///
+/// In-mapper combining is switched on with -D inmapper.combine=true
+public class InMapperCombiner {
+
+   public static final String ENABLED = "inmapper.combine";
+   public static final String MAX_ENTRIES = "inmapper.combine.max.entries";
+   public static final String MAX_HEAP = "inmapper.combine.max.heap";
+
+   /// Counters reported by DocWordCount and TermFrequency. TOKENS and TOKEN_BYTES are what the
+   /// mapper would have shuffled without any combining, MAP_OUTPUT_RECORDS and MAP_OUTPUT_BYTES
+   /// are what it actually wrote.
+   public static enum CombineCounters { TOKENS, TOKEN_BYTES, MAP_OUTPUT_RECORDS, MAP_OUTPUT_BYTES, FLUSHES }
+
+   /// Estimated heap bytes of one entry besides its key bytes: the Text and its byte array, the
+   /// int[] count, the HashMap node and its table slot
+   private static final int ENTRY_OVERHEAD = 128;
+
+   private final HashMap<Text, int[]> counts = new HashMap<Text, int[]>();
+   private final int maxEntries;
+   private final long maxBytes;
+   private long bytes = 0;
+
+   public InMapperCombiner(Configuration conf) {
+      this.maxEntries = conf.getInt(MAX_ENTRIES, 100000);
+      this.maxBytes = (long) (conf.getFloat(MAX_HEAP, 0.3f) * Runtime.getRuntime().maxMemory());
+   }
+
+   /// Returns true if in-mapper combining was requested for the job
+   public static boolean isEnabled(Configuration conf) {
+      return conf.getBoolean(ENABLED, false);
+   }
+
+   /// Adds one occurrence of the key. Returns true when the buffer should be flushed. The key
+   /// is only copied the first time it is seen, so the caller can reuse its Text.
+   public boolean add(Text key) {
+      int[] count = counts.get(key);
+      if (count == null) {
+         counts.put(new Text(key), new int[] { 1 });
+         bytes += key.getLength() + ENTRY_OVERHEAD;
+      } else {
+         count[0]++;
+      }
+      return isFull();
+   }
+
+   public boolean isFull() {
+      return counts.size() >= maxEntries || bytes >= maxBytes;
+   }
+
+   public Set<Map.Entry<Text, int[]>> entries() {
+      return counts.entrySet();
+   }
+
+   public void clear() {
+      counts.clear();
+      bytes = 0;
+   }
+
+   /// Serialized size of a Text key of the given length followed by a fixed size value. This is
+   /// what one record costs in the map output buffer and, without compression, in the shuffle.
+   public static long recordBytes(int keyLength, int valueLength) {
+      return WritableUtils.getVIntSize(keyLength) + keyLength + valueLength;
+   }
+
+   /// Logs how much the in-mapper combiner and the combiner class saved for a finished job.
+   /// The first figure compares the tokens seen by the mappers with the records reaching the
+   /// reducers, the second compares the raw token bytes with the bytes actually shuffled.
+   public static void report(Job job, Logger log) throws IOException {
+      Counters counters = job.getCounters();
+      long tokens = counters.findCounter(CombineCounters.TOKENS).getValue();
+      long tokenBytes = counters.findCounter(CombineCounters.TOKEN_BYTES).getValue();
+      long shuffledRecords = counters.findCounter(TaskCounter.REDUCE_INPUT_RECORDS).getValue();
+      long shuffledBytes = counters.findCounter(TaskCounter.MAP_OUTPUT_MATERIALIZED_BYTES).getValue();
+      log.info("Map output records: " + tokens + " tokens -> " + shuffledRecords + " shuffled ("
+            + percentSaved(tokens, shuffledRecords) + "% saved)");
+      log.info("Shuffle bytes: " + tokenBytes + " -> " + shuffledBytes + " ("
+            + percentSaved(tokenBytes, shuffledBytes) + "% saved)");
+   }
+
+   private static long percentSaved(long before, long after) {
+      return before == 0 ? 0 : Math.round(100.0 * (before - after) / before);
+   }
+}
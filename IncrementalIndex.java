@@ -0,0 +1,351 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.MultipleInputs;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MapFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.reduce.IntSumReducer;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+/// IncrementalIndex keeps a searchable index of a folder of documents up to date without
+/// recomputing the whole pipeline when documents are added or removed.
+///
+/// $ hadoop jar <filename>.jar org.myorg.IncrementalIndex INPUT_PATH STATE_PATH
+/// compares the files in INPUT_PATH with the documents already in STATE_PATH (see
+/// IncrementalState) and writes a new generation of the state:
+///    1. the word counts of the new files only, with the TermFrequency.BinaryMap mapper
+///    2. the document frequencies, from the previous ones plus one for every word of a new
+///       file and minus one for every word of a removed file
+/// A removed file is only marked as deleted, its counts are skipped when a query reads them.
+/// A file whose content changed has to be removed and added again, in two updates.
+///
+/// Every update adds a generation of counts for queries to probe, and the counts of removed
+/// files stay until they are rewritten. Once more than -D incremental.compact.generations=G
+/// generations (default 10) hold counts, or more than -D incremental.compact.deleted=F of the
+/// stored counts (default 0.2) belong to removed files, the update is followed by a compaction:
+/// a job rewrites the counts of the live documents into one new generation, marked as
+/// compacted, and the generations before it are deleted. A search already reading one of them
+/// when it is deleted fails and has to be started again.
+///
+/// $ hadoop jar <filename>.jar org.myorg.Search -D search.incremental=true STATE_PATH OUTPUT_PATH <query words>
+/// searches the latest generation, with the same output as the index search of Search.
+public class IncrementalIndex extends Configured implements Tool {
+
+   private static final Logger LOG = Logger .getLogger( IncrementalIndex.class);
+
+   /// The first document id of the update and the ids it removes, for DeltaMap
+   private static final String FIRST_ADDED = "incremental.first.added";
+   private static final String REMOVED = "incremental.removed";
+   /// The generation whose deleted ids a compaction drops, for CompactMap
+   private static final String COMPACTED_GENERATION = "incremental.compacted.generation";
+
+   public static final String COMPACT_GENERATIONS = "incremental.compact.generations";
+   public static final String COMPACT_DELETED = "incremental.compact.deleted";
+
+   /// main() method is the starting point of the program
+   public static void main( String[] args) throws  Exception {
+      int res  = ToolRunner .run( new IncrementalIndex(), args);
+      System .exit(res);
+   }
+
+   public int run( String[] args) throws  Exception {
+      Configuration conf = getConf();
+      Path input = new Path(args[0]);
+      Path state = new Path(args[1]);
+      FileSystem fs = state.getFileSystem(conf);
+
+      int previous = IncrementalState.readGeneration(fs, state);
+      int next = previous + 1;
+      Path previousDir = IncrementalState.generationDir(state, previous);
+      Path nextDir = IncrementalState.generationDir(state, next);
+
+      /// Left over by an update which did not finish
+      if (fs.exists(nextDir)) {
+         fs.delete(nextDir, true);
+      }
+
+      List<String> documents = new ArrayList<String>();
+      TreeSet<Integer> deleted = new TreeSet<Integer>();
+      if (previous >= 0) {
+         documents = DocumentInputFormat.readDocuments(conf, new Path(previousDir, "documents"));
+         deleted = IncrementalState.readDeleted(conf, previousDir);
+      }
+      HashMap<String, Integer> live = new HashMap<String, Integer>();
+      for (int docId = 0; docId < documents.size(); docId++) {
+         if (!deleted.contains(docId)) {
+            live.put(documents.get(docId), docId);
+         }
+      }
+
+      TreeSet<String> files = new TreeSet<String>();
+      for (FileStatus file : input.getFileSystem(conf).listStatus(input)) {
+         String name = file.getPath().getName();
+         if (file.isFile() && !name.startsWith("_") && !name.startsWith(".")) {
+            files.add(name);
+         }
+      }
+      TreeSet<String> added = new TreeSet<String>();
+      for (String name : files) {
+         if (!live.containsKey(name)) {
+            added.add(name);
+         }
+      }
+      TreeSet<Integer> removed = new TreeSet<Integer>();
+      for (Map.Entry<String, Integer> entry : live.entrySet()) {
+         if (!files.contains(entry.getKey())) {
+            removed.add(entry.getValue());
+         }
+      }
+      if (added.isEmpty() && removed.isEmpty()) {
+         LOG.info("Generation " + previous + " is up to date with " + input);
+         return 0;
+      }
+
+      int firstAdded = documents.size();
+      documents.addAll(added);
+      deleted.addAll(removed);
+      List<String> deletedLines = new ArrayList<String>();
+      for (int docId : deleted) {
+         deletedLines.add(String.valueOf(docId));
+      }
+      DocumentInputFormat.writeDocuments(conf, new Path(nextDir, "documents"), documents);
+      DocumentInputFormat.writeDocuments(conf, new Path(nextDir, "deleted"), deletedLines);
+
+      if (!added.isEmpty() && !countWords(input, added, nextDir)) {
+         return 1;
+      }
+      if (!updateDocumentFrequencies(state, previous, firstAdded, removed, !added.isEmpty())) {
+         return 1;
+      }
+      IncrementalState.writeGeneration(fs, state, next);
+      LOG.info("Generation " + next + ": added " + added.size() + " and removed " + removed.size()
+            + " documents, " + (documents.size() - deleted.size()) + " documents live");
+
+      /// The generations with counts, and the deleted documents whose counts are still stored
+      int base = IncrementalState.baseGeneration(fs, state, next);
+      int generations = 0;
+      for (int g = base; g <= next; g++) {
+         if (fs.exists(new Path(IncrementalState.generationDir(state, g), "counts"))) {
+            generations++;
+         }
+      }
+      int compacted = IncrementalState.compactedDeletions(conf, IncrementalState.generationDir(state, base));
+      int stored = documents.size() - compacted;
+      int pending = deleted.size() - compacted;
+      if (generations > conf.getInt(COMPACT_GENERATIONS, 10)
+            || pending > conf.getFloat(COMPACT_DELETED, 0.2f) * stored) {
+         return compact(state, base, next, deleted.size()) ? 0 : 1;
+      }
+      return 0;
+   }
+
+   /// Writes generation next + 1 with the counts of the live documents of the generations base
+   /// to next, makes it the latest one and deletes the generations before it
+   private boolean compact( Path state, int base, int next, int deletedCount) throws Exception {
+      Configuration conf = getConf();
+      FileSystem fs = state.getFileSystem(conf);
+      Path nextDir = IncrementalState.generationDir(state, next);
+      Path compactedDir = IncrementalState.generationDir(state, next + 1);
+      if (fs.exists(compactedDir)) {
+         fs.delete(compactedDir, true);
+      }
+
+      Job job  = Job .getInstance(conf, " incrementalcompact ");
+      job.setJarByClass( this .getClass());
+      job.getConfiguration().set(COMPACTED_GENERATION, nextDir.toString());
+      for (int g = base; g <= next; g++) {
+         Path counts = new Path(IncrementalState.generationDir(state, g), "counts");
+         if (fs.exists(counts)) {
+            FileInputFormat.addInputPath(job, counts);
+         }
+      }
+      job.setInputFormatClass( SequenceFileInputFormat .class);
+      FileOutputFormat.setOutputPath(job, new Path(compactedDir, "counts"));
+      job.setMapperClass( CompactMap .class);
+      job.setPartitionerClass( TermDocWeight.TermPartitioner .class);
+      job.setReducerClass( Reducer .class);
+      job.setOutputKeyClass( TermDocWeight .class);
+      job.setOutputValueClass( IntWritable .class);
+      job.setOutputFormatClass( MapFileOutputFormat .class);
+      if (!job.waitForCompletion( true)) {
+         return false;
+      }
+
+      for (String name : new String[] { "documents", "deleted", "df" }) {
+         FileUtil.copy(fs, new Path(nextDir, name), fs, new Path(compactedDir, name), false, conf);
+      }
+      DocumentInputFormat.writeDocuments(conf, new Path(compactedDir, "compacted"),
+            Collections.singletonList(String.valueOf(deletedCount)));
+      IncrementalState.writeGeneration(fs, state, next + 1);
+      for (int g = 0; g <= next; g++) {
+         Path dir = IncrementalState.generationDir(state, g);
+         if (fs.exists(dir)) {
+            fs.delete(dir, true);
+         }
+      }
+      LOG.info("Generation " + (next + 1) + ": compacted the counts of generations " + base + " to " + next);
+      return true;
+   }
+
+   /// Counts the words of the added files into nextDir/counts, as MapFiles sorted by word and
+   /// document id and partitioned by word, so a query can look the word up in every part
+   private boolean countWords( Path input, TreeSet<String> added, Path nextDir) throws Exception {
+      Job job  = Job .getInstance(getConf(), " incrementalcounts ");
+      job.setJarByClass( this .getClass());
+      job.getConfiguration().set(DocumentInputFormat.DOCUMENTS_PATH, new Path(nextDir, "documents").toString());
+
+      for (String name : added) {
+         FileInputFormat.addInputPath(job, new Path(input, name));
+      }
+      FileOutputFormat.setOutputPath(job, new Path(nextDir, "counts"));
+      job.setMapperClass( TermFrequency.BinaryMap .class);
+      job.setCombinerClass( TermFrequency.BinaryCombine .class);
+      job.setPartitionerClass( TermDocWeight.TermPartitioner .class);
+      job.setReducerClass( TermFrequency.BinaryCombine .class);
+      job.setOutputKeyClass( TermDocWeight .class);
+      job.setOutputValueClass( IntWritable .class);
+      job.setOutputFormatClass( MapFileOutputFormat .class);
+      return job.waitForCompletion( true);
+   }
+
+   /// Writes nextDir/df from the document frequencies of the previous generation and the
+   /// counts of the added documents and of the generations holding the removed documents
+   private boolean updateDocumentFrequencies( Path state, int previous, int firstAdded,
+         TreeSet<Integer> removed, boolean hasAdded) throws Exception {
+      Job job  = Job .getInstance(getConf(), " incrementaldf ");
+      job.setJarByClass( this .getClass());
+      Configuration conf = job.getConfiguration();
+      FileSystem fs = state.getFileSystem(conf);
+
+      StringBuilder ids = new StringBuilder();
+      for (int docId : removed) {
+         ids.append(ids.length() == 0 ? "" : ",").append(docId);
+      }
+      conf.setInt(FIRST_ADDED, firstAdded);
+      conf.set(REMOVED, ids.toString());
+
+      Path nextDir = IncrementalState.generationDir(state, previous + 1);
+      if (hasAdded) {
+         MultipleInputs.addInputPath(job, new Path(nextDir, "counts"),
+               SequenceFileInputFormat .class, DeltaMap .class);
+      }
+
+      /// Generation g added the document ids from the size of the document list of g - 1 up
+      /// to the size of its own list, and a compacted one holds every id before it
+      int first = 0;
+      for (int g = IncrementalState.baseGeneration(fs, state, Math.max(previous, 0));
+            g <= previous && !removed.isEmpty(); g++) {
+         Path dir = IncrementalState.generationDir(state, g);
+         int end = DocumentInputFormat.readDocuments(conf, new Path(dir, "documents")).size();
+         Integer lowest = removed.ceiling(first);
+         if (lowest != null && lowest < end && fs.exists(new Path(dir, "counts"))) {
+            MultipleInputs.addInputPath(job, new Path(dir, "counts"),
+                  SequenceFileInputFormat .class, DeltaMap .class);
+         }
+         first = end;
+      }
+      if (previous >= 0) {
+         MultipleInputs.addInputPath(job, new Path(IncrementalState.generationDir(state, previous), "df"),
+               SequenceFileInputFormat .class, Mapper .class);
+      }
+
+      FileOutputFormat.setOutputPath(job, new Path(nextDir, "df"));
+      job.setCombinerClass( IntSumReducer .class);
+      job.setReducerClass( Reduce .class);
+      job.setOutputKeyClass( Text .class);
+      job.setOutputValueClass( IntWritable .class);
+      job.setOutputFormatClass( MapFileOutputFormat .class);
+      return job.waitForCompletion( true);
+   }
+
+   /// This is the Mapper class for the counts. Every count record is one document containing
+   /// the word, so it writes <word, 1> for an added document, <word, -1> for a removed one and
+   /// nothing for the other documents of the same generation.
+   public static class DeltaMap extends Mapper<TermDocWeight ,  IntWritable ,  Text ,  IntWritable > {
+      private final static IntWritable one  = new IntWritable( 1);
+      private final static IntWritable minusOne  = new IntWritable( -1);
+      private int firstAdded;
+      private HashSet<Integer> removed = new HashSet<Integer>();
+
+      @Override
+      protected void setup( Context context) throws IOException, InterruptedException {
+         firstAdded = context.getConfiguration().getInt(FIRST_ADDED, Integer.MAX_VALUE);
+         for (String id : context.getConfiguration().getTrimmedStrings(REMOVED)) {
+            removed.add(Integer.parseInt(id));
+         }
+      }
+
+      public void map( TermDocWeight key,  IntWritable count,  Context context)
+        throws  IOException,  InterruptedException {
+         if (key.getDocId() >= firstAdded) {
+            context.write(key.getTerm(), one);
+         } else if (removed.contains(key.getDocId())) {
+            context.write(key.getTerm(), minusOne);
+         }
+      }
+   }
+
+   /// This is the Mapper class of a compaction. It keeps the counts of the live documents, read
+   /// from the deleted file of the generation being compacted.
+   public static class CompactMap extends Mapper<TermDocWeight ,  IntWritable ,  TermDocWeight ,  IntWritable > {
+      private TreeSet<Integer> deleted;
+
+      @Override
+      protected void setup( Context context) throws IOException, InterruptedException {
+         deleted = IncrementalState.readDeleted(context.getConfiguration(),
+               new Path(context.getConfiguration().get(COMPACTED_GENERATION)));
+      }
+
+      public void map( TermDocWeight key,  IntWritable count,  Context context)
+        throws  IOException,  InterruptedException {
+         if (!deleted.contains(key.getDocId())) {
+            context.write(key, count);
+         }
+      }
+   }
+
+   /// This is the Reducer class which adds up the previous document frequency and the changes.
+   /// Words no document contains any more are dropped.
+   public static class Reduce extends Reducer<Text ,  IntWritable ,  Text ,  IntWritable > {
+      private IntWritable total  = new IntWritable();
+
+      @Override
+      public void reduce( Text word,  Iterable<IntWritable > counts,  Context context)
+         throws IOException,  InterruptedException {
+         int sum  = 0;
+         for ( IntWritable count  : counts) {
+            sum  += count.get();
+         }
+         if (sum > 0) {
+            total.set(sum);
+            context.write(word, total);
+         }
+      }
+   }
+}
@@ -0,0 +1,253 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.lib.output.MapFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.partition.HashPartitioner;
+
+/// IncrementalState is the state kept by IncrementalIndex, and answers queries from it. Instead
+/// of tfidf values it keeps the raw count of every word in every document and the document
+/// frequency of every word, so adding or removing documents only touches the counts of those
+/// documents and the document frequencies of their words. The tfidf values are computed from
+/// the current N and df when a query reads them.
+///
+/// STATE_PATH/current            - number of the latest generation, written last by an update
+/// STATE_PATH/gen-NNNNN/documents - every document added up to generation NNNNN, the line
+///                                 number is the document id (ids are never reused)
+/// STATE_PATH/gen-NNNNN/deleted  - ids of the documents removed up to generation NNNNN
+/// STATE_PATH/gen-NNNNN/counts   - MapFiles of <TermDocWeight(word, docId, 0), count> for the
+///                                 documents added by generation NNNNN, partitioned by word
+/// STATE_PATH/gen-NNNNN/df       - MapFiles of <word, document frequency> over the documents
+///                                 live in generation NNNNN
+/// STATE_PATH/gen-NNNNN/compacted - written by a compaction (see IncrementalIndex): the counts
+///                                 of this generation are those of every live document up to
+///                                 it, and the line is the number of deleted ids it dropped
+///
+/// The counts of every generation since the last compacted one stay in use, the other files
+/// only in the latest one. A query probes the counts of each of those generations, and the
+/// counts of removed documents stay on disk until the next compaction, so without compaction
+/// the cost of a query and the disk use grow with the number of updates and deletions, not
+/// with the live documents.
+public class IncrementalState implements IndexReader {
+
+   public static final String INCREMENTAL = "search.incremental";
+
+   private final int generation;
+   private final List<String> documents;
+   private final boolean[] deleted;
+   private final int numberOfFiles;
+   private final MapFile.Reader[] df;
+   private final List<MapFile.Reader[]> counts = new ArrayList<MapFile.Reader[]>();
+   private final HashPartitioner<Text, IntWritable> dfPartitioner = new HashPartitioner<Text, IntWritable>();
+   private final TermDocWeight.TermPartitioner<IntWritable> countPartitioner =
+         new TermDocWeight.TermPartitioner<IntWritable>();
+
+   public IncrementalState( Configuration conf, Path dir) throws IOException {
+      FileSystem fs = dir.getFileSystem(conf);
+      generation = readGeneration(fs, dir);
+      if (generation < 0) {
+         throw new IOException("No incremental index in " + dir);
+      }
+      Path current = generationDir(dir, generation);
+      documents = DocumentInputFormat.readDocuments(conf, new Path(current, "documents"));
+      deleted = new boolean[documents.size()];
+      for (int docId : readDeleted(conf, current)) {
+         deleted[docId] = true;
+      }
+      int live = 0;
+      for (boolean d : deleted) {
+         if (!d) {
+            live++;
+         }
+      }
+      numberOfFiles = live;
+
+      df = MapFileOutputFormat.getReaders(new Path(current, "df"), conf);
+      for (int g = baseGeneration(fs, dir, generation); g <= generation; g++) {
+         Path countsDir = new Path(generationDir(dir, g), "counts");
+         if (fs.exists(countsDir)) {
+            counts.add(MapFileOutputFormat.getReaders(countsDir, conf));
+         }
+      }
+   }
+
+   public static Path generationDir( Path dir, int generation) {
+      return new Path(dir, String.format("gen-%05d", generation));
+   }
+
+   /// Returns the latest generation, or -1 if no update has finished yet
+   public static int readGeneration( FileSystem fs, Path dir) throws IOException {
+      Path current = new Path(dir, "current");
+      if (!fs.exists(current)) {
+         return -1;
+      }
+      try (BufferedReader in = new BufferedReader(
+            new InputStreamReader(fs.open(current), StandardCharsets.UTF_8))) {
+         return Integer.parseInt(in.readLine().trim());
+      }
+   }
+
+   /// The last compacted generation up to the given one, whose counts hold every document
+   /// before it, or 0 if there is none
+   public static int baseGeneration( FileSystem fs, Path dir, int generation) throws IOException {
+      for (int g = generation; g > 0; g--) {
+         if (fs.exists(new Path(generationDir(dir, g), "compacted"))) {
+            return g;
+         }
+      }
+      return 0;
+   }
+
+   /// Number of deleted document ids whose counts the compaction of a generation dropped, 0
+   /// if it was not compacted
+   public static int compactedDeletions( Configuration conf, Path generationDir) throws IOException {
+      Path marker = new Path(generationDir, "compacted");
+      if (!marker.getFileSystem(conf).exists(marker)) {
+         return 0;
+      }
+      return Integer.parseInt(DocumentInputFormat.readDocuments(conf, marker).get(0).trim());
+   }
+
+   /// Makes a generation the latest one. An update does this last, so an update which fails
+   /// part way leaves the previous generation in use.
+   public static void writeGeneration( FileSystem fs, Path dir, int generation) throws IOException {
+      Path next = new Path(dir, "current.tmp");
+      try (Writer out = new OutputStreamWriter(fs.create(next, true), StandardCharsets.UTF_8)) {
+         out.write(generation + "\n");
+      }
+      fs.delete(new Path(dir, "current"), false);
+      fs.rename(next, new Path(dir, "current"));
+   }
+
+   /// Reads the deleted document ids of a generation folder
+   public static TreeSet<Integer> readDeleted( Configuration conf, Path generationDir) throws IOException {
+      TreeSet<Integer> ids = new TreeSet<Integer>();
+      for (String line : DocumentInputFormat.readDocuments(conf, new Path(generationDir, "deleted"))) {
+         ids.add(Integer.parseInt(line));
+      }
+      return ids;
+   }
+
+   public int generation() {
+      return generation;
+   }
+
+   /// Document names, indexed by document id, including the deleted ones
+   public List<String> documents() {
+      return documents;
+   }
+
+   public boolean isDeleted( int docId) {
+      return deleted[docId];
+   }
+
+   /// Number of live documents, the N of the IDF
+   public int numberOfFiles() {
+      return numberOfFiles;
+   }
+
+   /// Document frequency of the word over the live documents, 0 if it does not occur
+   public int documentFrequency( String word) throws IOException {
+      IntWritable value = new IntWritable();
+      return MapFileOutputFormat.getEntry(df, dfPartitioner, new Text(word), value) == null ? 0 : value.get();
+   }
+
+   public int postings( String word, InvertedIndex.PostingVisitor visitor) throws IOException {
+      TopK.PostingList list = postingList(word);
+      if (list == null) {
+         return 0;
+      }
+      for (int i = 0; i < list.size(); i++) {
+         visitor.visit(list.docId(i), list.weight(i));
+      }
+      return list.size();
+   }
+
+   /// Reads the counts of the word in the live documents and turns them into tfidf values as
+   /// TermFrequency and TFIDF do, WF = 1 + log10(count) and IDF = log10(1 + N / df). Every
+   /// generation holds larger document ids than the ones before it, so reading them in order
+   /// gives a list in document id order (a compacted generation holds the ids of all the
+   /// generations before it).
+   public TopK.PostingList postingList( String word) throws IOException {
+      int documentFrequency = documentFrequency(word);
+      if (documentFrequency == 0) {
+         return null;
+      }
+      double idf = Math.log10(1 + (numberOfFiles / documentFrequency));
+
+      final int[] docIds = new int[documentFrequency];
+      final double[] weights = new double[documentFrequency];
+      int size = 0;
+      double maxWeight = 0.0;
+      TermDocWeight probe = new TermDocWeight(word, -1, 0.0);
+      TermDocWeight key = new TermDocWeight();
+      IntWritable count = new IntWritable();
+      for (MapFile.Reader[] readers : counts) {
+         MapFile.Reader reader = readers[countPartitioner.getPartition(probe, count, readers.length)];
+
+         /// getClosest() returns the first posting of the word, the others follow it
+         TermDocWeight found = (TermDocWeight) reader.getClosest(probe, count);
+         if (found == null || !found.getTerm().equals(probe.getTerm())) {
+            continue;
+         }
+         key.set(found.getTerm(), found.getDocId(), 0.0);
+         do {
+            if (!deleted[key.getDocId()]) {
+               if (size == docIds.length) {
+                  throw new IOException("More postings than the document frequency of " + word);
+               }
+               docIds[size] = key.getDocId();
+               weights[size] = (1.0 + Math.log10(count.get())) * idf;
+               maxWeight = Math.max(maxWeight, weights[size]);
+               size++;
+            }
+         } while (reader.next(key, count) && key.getTerm().equals(probe.getTerm()));
+      }
+
+      final int n = size;
+      final double max = maxWeight;
+      return new TopK.PostingList() {
+         public int size() {
+            return n;
+         }
+         public int docId( int i) {
+            return docIds[i];
+         }
+         public double weight( int i) {
+            return weights[i];
+         }
+         public double maxWeight() {
+            return max;
+         }
+      };
+   }
+
+   @Override
+   public void close() throws IOException {
+      for (MapFile.Reader reader : df) {
+         reader.close();
+      }
+      for (MapFile.Reader[] readers : counts) {
+         for (MapFile.Reader reader : readers) {
+            reader.close();
+         }
+      }
+   }
+}
@@ -0,0 +1,216 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import java.io.IOException;
+import java.util.HashMap;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Partitioner;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+/// IndexBuilder turns the output of TFIDF into the inverted index described in InvertedIndex,
+/// so that Search can read the postings of the query words only instead of scanning the whole
+/// TFIDF output.
+///
+/// $ hadoop jar <filename>.jar org.myorg.IndexBuilder OUTPUT_PATH
+/// reads OUTPUT_PATH/tfidf and OUTPUT_PATH/documents and writes OUTPUT_PATH/index. The number
+/// of shards is set with -D index.shards=N (default 4), -D index.weight.bits=B stores the tfidf
+/// values with 16 (default), 8 or 64 (exact) bits, and -D tfidf.format=binary reads the binary
+/// TFIDF output.
+///
+/// With -D index.partition=document the shards split the documents instead of the terms, for
+/// QueryCoordinator: OUTPUT_PATH/shards/shard-NNNNN holds a complete index (one term shard and
+/// the documents side file) of the postings of documents NNNNN * D / N up to (NNNNN + 1) * D / N,
+/// for D documents and N shards. Document ids stay those of the whole corpus, and the weights are
+/// the tfidf values of TFIDF, whose IDF was counted over all the documents, so every shard scores
+/// with the global IDF and the scores of different shards can be compared. The weights of a list
+/// are quantized per shard, so 16 and 8 bits may round a score slightly differently than the
+/// term partitioned index does.
+public class IndexBuilder extends Configured implements Tool {
+
+   private static final Logger LOG = Logger .getLogger( IndexBuilder.class);
+
+   public static final String PARTITION = "index.partition";
+
+   public static boolean isDocumentPartitioned( Configuration conf) {
+      return conf.get(PARTITION, "term").equals("document");
+   }
+
+   /// main() method is the starting point of the program
+   public static void main( String[] args) throws  Exception {
+      int res  = ToolRunner .run( new IndexBuilder(), args);
+      System .exit(res);
+   }
+
+   /// run() method is responsible for defining a job object. There is one reducer per shard,
+   /// and records are partitioned by the hash of the term (or the document id, see
+   /// DocumentPartitioner), sorted by term and document id and grouped by term, so each reduce
+   /// call writes one complete posting list.
+   public int run( String[] args) throws  Exception {
+      Job job  = Job .getInstance(getConf(), " indexbuilder ");
+      job.setJarByClass( this .getClass());
+      Configuration conf = job.getConfiguration();
+      boolean byDocument = isDocumentPartitioned(conf);
+
+      Path tfidf = new Path(args[0] + "/tfidf");
+      Path index = new Path(args[0] + (byDocument ? "/shards" : "/index"));
+      Path documents = DocumentInputFormat.documentsPath(conf, tfidf);
+      conf.set(DocumentInputFormat.DOCUMENTS_PATH, documents.toString());
+
+      FileInputFormat.addInputPath(job, tfidf);
+      FileOutputFormat.setOutputPath(job, index);
+      if (TermDocWeight.isBinary(conf)) {
+         job.setInputFormatClass( SequenceFileInputFormat .class);
+         job.setMapperClass( Mapper .class);
+      } else {
+         job.setMapperClass( Map .class);
+      }
+      job.setMapOutputKeyClass( TermDocWeight .class);
+      job.setMapOutputValueClass( NullWritable .class);
+      job.setPartitionerClass( TermDocWeight.TermPartitioner .class);
+      job.setGroupingComparatorClass( TermDocWeight.TermGroupingComparator .class);
+      job.setReducerClass( Reduce .class);
+      int shards = conf.getInt(InvertedIndex.SHARDS, 4);
+      job.setNumReduceTasks(shards);
+      if (byDocument) {
+         conf.setInt(DocumentInputFormat.NUMBER_OF_FILES, DocumentInputFormat.readDocuments(conf, documents).size());
+         job.setPartitionerClass( DocumentPartitioner .class);
+      }
+
+      /// The reducers write the shard files themselves, no part files are needed
+      LazyOutputFormat.setOutputFormatClass(job, TextOutputFormat .class);
+
+      if (!Metrics.waitForCompletion(job, "index")) {
+         return 1;
+      }
+      FileSystem fs = index.getFileSystem(conf);
+      FileUtil.copy(fs, documents, fs, new Path(index, "documents"), false, conf);
+      if (byDocument) {
+         for (int shard = 0; shard < shards; shard++) {
+            FileUtil.copy(fs, documents, fs, new Path(new Path(index, InvertedIndex.shardName(shard)), "documents"),
+                  false, conf);
+         }
+         LOG.info("Wrote " + shards + " document shards to " + index);
+      }
+      return 0;
+   }
+
+   /// Sends every posting to the shard of its document, the documents being cut into ranges
+   /// of consecutive ids, so the document id gaps of a shard stay as small as in one index
+   public static class DocumentPartitioner<V> extends Partitioner<TermDocWeight, V> implements Configurable {
+      private Configuration conf;
+      private int numberOfFiles;
+
+      @Override
+      public void setConf( Configuration conf) {
+         this.conf = conf;
+         numberOfFiles = conf.getInt(DocumentInputFormat.NUMBER_OF_FILES, 0);
+      }
+
+      @Override
+      public Configuration getConf() {
+         return conf;
+      }
+
+      @Override
+      public int getPartition( TermDocWeight key, V value, int numPartitions) {
+         return shardOf(key.getDocId(), numberOfFiles, numPartitions);
+      }
+   }
+
+   /// The shard of a document, for numberOfFiles documents in the given number of shards
+   public static int shardOf( int docId, int numberOfFiles, int shards) {
+      return (int) Math.min(shards - 1, (long) docId * shards / Math.max(1, numberOfFiles));
+   }
+
+   /// The first document id of a shard, the smallest id which shardOf() puts in it, or
+   /// numberOfFiles for shard == shards, so a shard holds the ids up to the first of the next
+   public static int firstDocument( int shard, int numberOfFiles, int shards) {
+      return (int) (((long) shard * numberOfFiles + shards - 1) / shards);
+   }
+
+   /// This is the Mapper class for the text TFIDF output. A line 'word#####filename	tfidf' is
+   /// split on the last delimiter, as a word may end in '#', and the filename is replaced by
+   /// its document id.
+   public static class Map extends Mapper<LongWritable ,  Text ,  TermDocWeight ,  NullWritable > {
+      private TermDocWeight record = new TermDocWeight();
+      private HashMap<String, Integer> documentIds;
+
+      @Override
+      protected void setup( Context context) throws IOException, InterruptedException {
+         documentIds = DocumentInputFormat.readDocumentIds(context.getConfiguration(),
+               new Path(context.getConfiguration().get(DocumentInputFormat.DOCUMENTS_PATH)));
+      }
+
+      public void map( LongWritable offset,  Text lineText,  Context context)
+        throws  IOException,  InterruptedException {
+         String line = lineText.toString();
+         int tab = line.lastIndexOf('\t');
+         int delimiter = line.lastIndexOf("#####", tab);
+         if (tab < 0 || delimiter < 0) {
+            context.getCounter(Metrics.Counters.PARSE_FAILURES).increment(1);
+            return;
+         }
+         Integer docId = documentIds.get(line.substring(delimiter + 5, tab));
+         if (docId == null) {
+            throw new IOException("Unknown document in line: " + line);
+         }
+         record.set(line.substring(0, delimiter), docId, Double.parseDouble(line.substring(tab + 1)));
+         context.write(record, NullWritable.get());
+      }
+   }
+
+   /// This is the Reducer class which writes the shard of its partition. The key object is
+   /// refilled with each posting while the values are iterated, in document id order. A
+   /// document shard is written as the only term shard of its own index folder.
+   public static class Reduce extends Reducer<TermDocWeight ,  NullWritable ,  NullWritable ,  NullWritable > {
+      private InvertedIndex.ShardWriter writer;
+
+      @Override
+      protected void setup( Context context) throws IOException, InterruptedException {
+         Path dir = FileOutputFormat.getWorkOutputPath(context);
+         int shard = context.getTaskAttemptID().getTaskID().getId();
+         if (isDocumentPartitioned(context.getConfiguration())) {
+            dir = new Path(dir, InvertedIndex.shardName(shard));
+            shard = 0;
+         }
+         writer = new InvertedIndex.ShardWriter(dir.getFileSystem(context.getConfiguration()), dir, shard,
+               context.getConfiguration().getInt(InvertedIndex.WEIGHT_BITS, 16));
+      }
+
+      @Override
+      public void reduce( TermDocWeight key,  Iterable<NullWritable > values,  Context context)
+         throws IOException,  InterruptedException {
+         writer.startTerm(key.getTerm());
+         for (NullWritable value : values) {
+            writer.addPosting(key.getDocId(), key.getWeight());
+         }
+         writer.endTerm();
+      }
+
+      @Override
+      protected void cleanup( Context context) throws IOException, InterruptedException {
+         writer.close();
+      }
+   }
+}
@@ -0,0 +1,26 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/// IndexReader is what Search needs from an index to answer queries without a job. It is
+/// implemented by InvertedIndex, over the files of IndexBuilder, by IncrementalState, over the
+/// raw counts kept by IncrementalIndex, and by SegmentedIndex, over the segments of
+/// SegmentIndexer.
+public interface IndexReader extends Closeable {
+
+   /// Document names, indexed by document id
+   List<String> documents();
+
+   /// Passes every posting of the term to the visitor, in document id order, and returns the
+   /// number of postings, which is 0 if the term is not in the index
+   int postings( String term, InvertedIndex.PostingVisitor visitor) throws IOException;
+
+   /// Reads the whole posting list of the term, or returns null if it is not in the index
+   TopK.PostingList postingList( String term) throws IOException;
+}
@@ -0,0 +1,680 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import java.io.Closeable;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+
+/// InvertedIndex describes the index written by IndexBuilder and reads it back for Search.
+///
+/// The index folder holds a copy of the documents side file and one pair of files per shard.
+/// A term always belongs to shard hash(term) % number of shards, so a query word is looked up
+/// in exactly one shard. Numbers marked vint/vlong are unsigned LEB128 varints (7 bits a byte,
+/// low bits first), everything else is big endian.
+///
+/// shard-NNNNN.post - the posting lists of the shard, one after another, each in blocks of
+///                    BLOCK postings sorted by document id. A block holds the document ids as
+///                    vint gaps (the first one from the last id of the previous block, or from
+///                    0) followed by the weights of its postings. Lists of more than one block
+///                    start with a skip table: the last document id (int) and the end of every
+///                    block (int, counted from the end of the table), so a reader can jump to
+///                    the block of a document and only decode the blocks it needs.
+/// shard-NNNNN.dict - the terms of the shard in sorted (byte) order, in blocks of DICT_BLOCK
+///                    terms. A block starts with the offset of its first posting list in the
+///                    .post file (vlong). Each entry is the length of the prefix it shares with
+///                    the previous term of the block (vint, 0 for the first), the length of the
+///                    rest (vint) and its bytes, the number of postings (vint), the bytes of
+///                    the posting list (vlong) and the largest tfidf value of the list (double),
+///                    used by TopK. The blocks are followed by a table with the offset (long) of
+///                    every block, and a footer with the offset of that table (long), the number
+///                    of blocks (int), the weight bits (int) and the format version (int). A term
+///                    is found by binary search over the first terms of the blocks and a scan of
+///                    one block.
+///
+/// Weights are stored with -D index.weight.bits=B bits: 64 keeps the tfidf double as it is,
+/// 16 (the default) and 8 store round(tfidf / scale) with scale = max / (2^B - 1) for the largest
+/// tfidf 'max' of the list, which decodes to within scale / 2 of the tfidf. The largest weight
+/// decodes to max exactly, so max stays a bound for TopK.
+public class InvertedIndex implements IndexReader {
+
+   public static final String SHARDS = "index.shards";
+   public static final String WEIGHT_BITS = "index.weight.bits";
+   public static final int VERSION = 3;
+   public static final int BLOCK = 128;
+   public static final int DICT_BLOCK = 16;
+   public static final int FOOTER_BYTES = 20;
+
+   /// Receives the postings of a term, in document id order
+   public interface PostingVisitor {
+      void visit( int docId, double weight);
+   }
+
+   /// Random access to the bytes of an index file, a mapped file (MappedIndex) or a part of a
+   /// file read into an array
+   public interface Input {
+      byte get( long position);
+      int getInt( long position);
+      long getLong( long position);
+   }
+
+   /// Input over an array holding the bytes of a file from a given file offset on
+   static class ArrayInput implements Input {
+      private final byte[] bytes;
+      private final long base;
+
+      ArrayInput( byte[] bytes, long base) {
+         this.bytes = bytes;
+         this.base = base;
+      }
+
+      public byte get( long position) {
+         return bytes[(int) (position - base)];
+      }
+
+      public int getInt( long position) {
+         return WritableComparator.readInt(bytes, (int) (position - base));
+      }
+
+      public long getLong( long position) {
+         return WritableComparator.readLong(bytes, (int) (position - base));
+      }
+   }
+
+   public static String shardName( int shard) {
+      return String.format("shard-%05d", shard);
+   }
+
+   /// The shard a term belongs to. This is the same hash as Text.hashCode(), so the
+   /// IndexBuilder partitioner and the readers agree on it.
+   public static int shardOf( byte[] term, int length, int shards) {
+      return (WritableComparator.hashBytes(term, length) & Integer.MAX_VALUE) % shards;
+   }
+
+   /// Checks the footer of a dictionary file and returns { table offset, blocks, weight bits }
+   static long[] readFooter( Input dict, long length, String name) throws IOException {
+      int version = dict.getInt(length - 4);
+      if (version != VERSION) {
+         throw new IOException("Unsupported index version " + version + " in " + name
+               + ", rebuild the index with IndexBuilder");
+      }
+      long footer = length - FOOTER_BYTES;
+      return new long[] { dict.getLong(footer), dict.getInt(footer + 8), dict.getInt(footer + 12) };
+   }
+
+   static void writeVLong( DataOutput out, long value) throws IOException {
+      while ((value & ~0x7fL) != 0) {
+         out.writeByte((int) ((value & 0x7f) | 0x80));
+         value >>>= 7;
+      }
+      out.writeByte((int) value);
+   }
+
+   /// Writes the two files of one shard. Terms have to be added in sorted order.
+   public static class ShardWriter implements Closeable {
+      private final FSDataOutputStream dict;
+      private final FSDataOutputStream post;
+      private final int weightBits;
+      private final DataOutputBuffer blocks = new DataOutputBuffer();
+      private long[] blockOffsets = new long[1024];
+      private int blockCount = 0;
+      private int termsInBlock = 0;
+      private byte[] previous = new byte[64];
+      private int previousLength = 0;
+      private Text term = new Text();
+      private int[] docIds = new int[BLOCK];
+      private double[] weights = new double[BLOCK];
+      private int[] skips = new int[2];
+      private int postingCount;
+      private double maxWeight;
+
+      public ShardWriter( FileSystem fs, Path dir, int shard, int weightBits) throws IOException {
+         if (weightBits != 8 && weightBits != 16 && weightBits != 64) {
+            throw new IllegalArgumentException(WEIGHT_BITS + " has to be 8, 16 or 64, not " + weightBits);
+         }
+         this.weightBits = weightBits;
+         dict = fs.create(new Path(dir, shardName(shard) + ".dict"), true);
+         post = fs.create(new Path(dir, shardName(shard) + ".post"), true);
+      }
+
+      public void startTerm( Text term) throws IOException {
+         this.term.set(term);
+         postingCount = 0;
+         maxWeight = 0.0;
+      }
+
+      public void addPosting( int docId, double weight) throws IOException {
+         if (postingCount == docIds.length) {
+            docIds = Arrays.copyOf(docIds, 2 * postingCount);
+            weights = Arrays.copyOf(weights, 2 * postingCount);
+         }
+         docIds[postingCount] = docId;
+         weights[postingCount++] = weight;
+         maxWeight = Math.max(maxWeight, weight);
+      }
+
+      public void endTerm() throws IOException {
+         long postingsOffset = post.getPos();
+         writePostings();
+         long postingsBytes = post.getPos() - postingsOffset;
+
+         if (termsInBlock == DICT_BLOCK || blockCount == 0) {
+            if (blockCount == blockOffsets.length) {
+               blockOffsets = Arrays.copyOf(blockOffsets, blockCount * 2);
+            }
+            blockOffsets[blockCount++] = dict.getPos();
+            writeVLong(dict, postingsOffset);
+            termsInBlock = 0;
+            previousLength = 0;
+         }
+         int length = term.getLength();
+         byte[] bytes = term.getBytes();
+         int shared = 0;
+         while (shared < Math.min(length, previousLength) && bytes[shared] == previous[shared]) {
+            shared++;
+         }
+         writeVLong(dict, shared);
+         writeVLong(dict, length - shared);
+         dict.write(bytes, shared, length - shared);
+         writeVLong(dict, postingCount);
+         writeVLong(dict, postingsBytes);
+         dict.writeDouble(maxWeight);
+         termsInBlock++;
+
+         if (previous.length < length) {
+            previous = new byte[Math.max(length, 2 * previous.length)];
+         }
+         System.arraycopy(bytes, 0, previous, 0, length);
+         previousLength = length;
+      }
+
+      /// Encodes the blocks into a buffer first, as the skip table in front of them needs
+      /// their ends
+      private void writePostings() throws IOException {
+         int blockCount = (postingCount + BLOCK - 1) / BLOCK;
+         int max = (1 << Math.min(weightBits, 31)) - 1;
+         double scale = maxWeight / max;
+         if (skips.length < 2 * blockCount) {
+            skips = new int[2 * blockCount];
+         }
+         blocks.reset();
+         int previousDoc = 0;
+         for (int b = 0; b < blockCount; b++) {
+            int end = Math.min((b + 1) * BLOCK, postingCount);
+            for (int i = b * BLOCK; i < end; i++) {
+               writeVLong(blocks, docIds[i] - previousDoc);
+               previousDoc = docIds[i];
+            }
+            for (int i = b * BLOCK; i < end; i++) {
+               if (weightBits == 64) {
+                  blocks.writeDouble(weights[i]);
+               } else {
+                  long q = weights[i] == maxWeight ? max : Math.min(max, Math.round(weights[i] / scale));
+                  if (weightBits == 16) {
+                     blocks.writeShort((int) q);
+                  } else {
+                     blocks.writeByte((int) q);
+                  }
+               }
+            }
+            skips[2 * b] = previousDoc;
+            skips[2 * b + 1] = blocks.getLength();
+         }
+         if (blockCount > 1) {
+            for (int i = 0; i < 2 * blockCount; i++) {
+               post.writeInt(skips[i]);
+            }
+         }
+         post.write(blocks.getData(), 0, blocks.getLength());
+      }
+
+      @Override
+      public void close() throws IOException {
+         long tableOffset = dict.getPos();
+         for (int i = 0; i < blockCount; i++) {
+            dict.writeLong(blockOffsets[i]);
+         }
+         dict.writeLong(tableOffset);
+         dict.writeInt(blockCount);
+         dict.writeInt(weightBits);
+         dict.writeInt(VERSION);
+         dict.close();
+         post.close();
+      }
+   }
+
+   /// Reads varints and doubles from a position of an Input onwards
+   static class Cursor {
+      final Input in;
+      long position;
+
+      Cursor( Input in, long position) {
+         this.in = in;
+         this.position = position;
+      }
+
+      long readVLong() {
+         long value = 0;
+         for (int shift = 0; ; shift += 7) {
+            byte b = in.get(position++);
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+               return value;
+            }
+         }
+      }
+
+      int readVInt() {
+         return (int) readVLong();
+      }
+
+      double readDouble() {
+         double value = Double.longBitsToDouble(in.getLong(position));
+         position += 8;
+         return value;
+      }
+   }
+
+   /// Compares the first term of the dictionary block at the given offset with a term, byte by
+   /// byte as unsigned values like WritableComparator.compareBytes()
+   static int compareFirstTerm( Input dict, long block, byte[] term) {
+      Cursor cursor = new Cursor(dict, block);
+      cursor.readVLong();
+      cursor.readVInt();
+      int length = cursor.readVInt();
+      int n = Math.min(length, term.length);
+      for (int i = 0; i < n; i++) {
+         int a = dict.get(cursor.position + i) & 0xff;
+         int b = term[i] & 0xff;
+         if (a != b) {
+            return a - b;
+         }
+      }
+      return length - term.length;
+   }
+
+   /// Scans the dictionary block from offset 'block' to 'end' for the term. Returns the posting
+   /// list of the term as { offset, count, bytes, maximum bits }, or null if the block does not
+   /// contain it.
+   static long[] findInBlock( Input dict, long block, long end, byte[] term) {
+      Cursor cursor = new Cursor(dict, block);
+      long postingsOffset = cursor.readVLong();
+      /// Length of the prefix the previous entry, which is smaller, has in common with the term
+      int matched = 0;
+      for (int entry = 0; cursor.position < end; entry++) {
+         int shared = cursor.readVInt();
+         int suffix = cursor.readVInt();
+         long suffixStart = cursor.position;
+         cursor.position += suffix;
+         int count = cursor.readVInt();
+         long bytes = cursor.readVLong();
+         long maxBits = Double.doubleToRawLongBits(cursor.readDouble());
+
+         if (entry > 0 && shared < matched) {
+            /// The entry leaves the previous one where that still matched the term, upwards
+            return null;
+         }
+         /// With more in common with the previous entry than the term has, it is smaller too
+         if (shared == matched) {
+            int cmp = 0;
+            int i = 0;
+            while (i < suffix && matched + i < term.length) {
+               cmp = (dict.get(suffixStart + i) & 0xff) - (term[matched + i] & 0xff);
+               if (cmp != 0) {
+                  break;
+               }
+               i++;
+            }
+            if (cmp == 0 && i == suffix && matched + i == term.length) {
+               return new long[] { postingsOffset, count, bytes, maxBits };
+            }
+            if (cmp > 0 || (cmp == 0 && i < suffix)) {
+               return null;
+            }
+            matched += i;
+         }
+         postingsOffset += bytes;
+      }
+      return null;
+   }
+
+   /// Walks through the terms of a shard in sorted order with their posting lists, for merging
+   /// indexes (see SegmentIndexer). The term bytes are valid until the next call to next().
+   public static class Terms {
+      private final Input dict;
+      private final Input post;
+      private final long table;
+      private final int blockCount;
+      private final int weightBits;
+      private Cursor cursor;
+      private int block = -1;
+      private long blockEnd;
+      private long postingsOffset;
+      private byte[] term = new byte[64];
+      private int length;
+      private int count;
+      private long bytes;
+      private double maxWeight;
+
+      Terms( Input dict, Input post, long table, int blockCount, int weightBits) {
+         this.dict = dict;
+         this.post = post;
+         this.table = table;
+         this.blockCount = blockCount;
+         this.weightBits = weightBits;
+      }
+
+      /// Moves to the next term. Returns false after the last one.
+      public boolean next() {
+         if (block >= 0 && cursor.position < blockEnd) {
+            postingsOffset += bytes;
+         } else {
+            if (block + 1 >= blockCount) {
+               return false;
+            }
+            block++;
+            cursor = new Cursor(dict, dict.getLong(table + 8L * block));
+            blockEnd = block + 1 < blockCount ? dict.getLong(table + 8L * (block + 1)) : table;
+            postingsOffset = cursor.readVLong();
+         }
+         int shared = cursor.readVInt();
+         int suffix = cursor.readVInt();
+         if (term.length < shared + suffix) {
+            term = Arrays.copyOf(term, Math.max(shared + suffix, 2 * term.length));
+         }
+         for (int i = 0; i < suffix; i++) {
+            term[shared + i] = dict.get(cursor.position + i);
+         }
+         cursor.position += suffix;
+         length = shared + suffix;
+         count = cursor.readVInt();
+         bytes = cursor.readVLong();
+         maxWeight = cursor.readDouble();
+         return true;
+      }
+
+      public byte[] term() {
+         return term;
+      }
+
+      public int length() {
+         return length;
+      }
+
+      /// The posting list of the current term
+      public TopK.PostingList postings() {
+         return new Postings(post, postingsOffset, count, weightBits, maxWeight);
+      }
+   }
+
+   /// A posting list decoded one block at a time, as it is read. Reading the postings in order
+   /// decodes every block once, and seek() uses the skip table to decode only the blocks of the
+   /// documents it is asked for. reset() moves it to another list and keeps the block buffers,
+   /// so a thread which looks up many terms can keep one per term of a query.
+   static class Postings implements TopK.PostingList {
+      private Input in;
+      private long table;
+      private long start;
+      private int count;
+      private int blockCount;
+      private int weightBits;
+      private int maxQuantized;
+      private double maxWeight;
+      private double scale;
+      private final int[] docIds = new int[BLOCK];
+      private final double[] weights = new double[BLOCK];
+      private int block = -1;
+
+      Postings() {
+      }
+
+      Postings( Input in, long offset, int count, int weightBits, double maxWeight) {
+         reset(in, offset, count, weightBits, maxWeight);
+      }
+
+      Postings reset( Input in, long offset, int count, int weightBits, double maxWeight) {
+         this.in = in;
+         this.count = count;
+         this.blockCount = (count + BLOCK - 1) / BLOCK;
+         this.table = offset;
+         this.start = offset + (blockCount > 1 ? 8L * blockCount : 0);
+         this.weightBits = weightBits;
+         this.maxQuantized = (1 << Math.min(weightBits, 31)) - 1;
+         this.maxWeight = maxWeight;
+         this.scale = maxWeight / maxQuantized;
+         this.block = -1;
+         return this;
+      }
+
+      public int size() {
+         return count;
+      }
+
+      public int docId( int i) {
+         if (i / BLOCK != block) {
+            decode(i / BLOCK);
+         }
+         return docIds[i % BLOCK];
+      }
+
+      public double weight( int i) {
+         if (i / BLOCK != block) {
+            decode(i / BLOCK);
+         }
+         return weights[i % BLOCK];
+      }
+
+      public double maxWeight() {
+         return maxWeight;
+      }
+
+      @Override
+      public int seek( int from, int doc) {
+         if (from >= count) {
+            return count;
+         }
+         int b = from / BLOCK;
+         if (blockCount > 1) {
+            int high = blockCount - 1;
+            if (in.getInt(table + 8L * high) < doc) {
+               return count;
+            }
+            while (b < high) {
+               int mid = (b + high) >>> 1;
+               if (in.getInt(table + 8L * mid) < doc) {
+                  b = mid + 1;
+               } else {
+                  high = mid;
+               }
+            }
+         }
+         if (b != block) {
+            decode(b);
+         }
+         int i = Math.max(from, b * BLOCK);
+         int end = Math.min(count, (b + 1) * BLOCK);
+         while (i < end && docIds[i - b * BLOCK] < doc) {
+            i++;
+         }
+         return i;
+      }
+
+      private void decode( int b) {
+         long position = start;
+         int doc = 0;
+         if (b > 0) {
+            doc = in.getInt(table + 8L * (b - 1));
+            position += in.getInt(table + 8L * (b - 1) + 4);
+         }
+         int n = Math.min(BLOCK, count - b * BLOCK);
+         for (int i = 0; i < n; i++) {
+            int gap = 0;
+            for (int shift = 0; ; shift += 7) {
+               byte v = in.get(position++);
+               gap |= (v & 0x7f) << shift;
+               if (v >= 0) {
+                  break;
+               }
+            }
+            doc += gap;
+            docIds[i] = doc;
+         }
+         for (int i = 0; i < n; i++) {
+            int q;
+            if (weightBits == 64) {
+               weights[i] = Double.longBitsToDouble(in.getLong(position));
+               position += 8;
+               continue;
+            } else if (weightBits == 16) {
+               q = ((in.get(position) & 0xff) << 8) | (in.get(position + 1) & 0xff);
+               position += 2;
+            } else {
+               q = in.get(position++) & 0xff;
+            }
+            weights[i] = q == maxQuantized ? maxWeight : q * scale;
+         }
+         block = b;
+      }
+   }
+
+   /// Reads one shard with positioned reads. The table of dictionary blocks is loaded, and a
+   /// lookup reads the blocks of the binary search and then the posting list.
+   private static class Shard implements Closeable {
+      private final FSDataInputStream dict;
+      private final FSDataInputStream post;
+      private final long[] blocks;
+      private final int weightBits;
+
+      Shard( FileSystem fs, Path dir, int shard) throws IOException {
+         Path dictPath = new Path(dir, shardName(shard) + ".dict");
+         long length = fs.getFileStatus(dictPath).getLen();
+         dict = fs.open(dictPath);
+         post = fs.open(new Path(dir, shardName(shard) + ".post"));
+
+         byte[] footer = new byte[FOOTER_BYTES];
+         dict.readFully(length - FOOTER_BYTES, footer, 0, FOOTER_BYTES);
+         long[] values = readFooter(new ArrayInput(footer, length - FOOTER_BYTES), length, dictPath.toString());
+         weightBits = (int) values[2];
+         byte[] table = new byte[8 * (int) values[1]];
+         dict.readFully(values[0], table, 0, table.length);
+         blocks = new long[(int) values[1] + 1];
+         for (int i = 0; i < blocks.length - 1; i++) {
+            blocks[i] = WritableComparator.readLong(table, 8 * i);
+         }
+         blocks[blocks.length - 1] = values[0];
+      }
+
+      /// Returns the posting list of the term, or null if the shard does not contain it
+      TopK.PostingList postingList( byte[] term) throws IOException {
+         int low = 0;
+         int high = blocks.length - 2;
+         Input block = null;
+         int found = -1;
+         while (low <= high) {
+            int mid = (low + high) >>> 1;
+            Input in = readBlock(mid);
+            if (compareFirstTerm(in, blocks[mid], term) <= 0) {
+               block = in;
+               found = mid;
+               low = mid + 1;
+            } else {
+               high = mid - 1;
+            }
+         }
+         if (block == null) {
+            return null;
+         }
+         long[] list = findInBlock(block, blocks[found], blocks[found + 1], term);
+         if (list == null) {
+            return null;
+         }
+         byte[] postings = new byte[(int) list[2]];
+         post.readFully(list[0], postings, 0, postings.length);
+         return new Postings(new ArrayInput(postings, list[0]), list[0], (int) list[1], weightBits,
+               Double.longBitsToDouble(list[3]));
+      }
+
+      private Input readBlock( int i) throws IOException {
+         byte[] bytes = new byte[(int) (blocks[i + 1] - blocks[i])];
+         dict.readFully(blocks[i], bytes, 0, bytes.length);
+         return new ArrayInput(bytes, blocks[i]);
+      }
+
+      @Override
+      public void close() throws IOException {
+         dict.close();
+         post.close();
+      }
+   }
+
+   private final Shard[] shards;
+   private final List<String> documents;
+
+   public InvertedIndex( Configuration conf, Path dir) throws IOException {
+      FileSystem fs = dir.getFileSystem(conf);
+      int count = 0;
+      for (FileStatus file : fs.listStatus(dir)) {
+         if (file.getPath().getName().endsWith(".dict")) {
+            count++;
+         }
+      }
+      if (count == 0) {
+         throw new IOException("No index shards in " + dir);
+      }
+      shards = new Shard[count];
+      for (int i = 0; i < count; i++) {
+         shards[i] = new Shard(fs, dir, i);
+      }
+      documents = DocumentInputFormat.readDocuments(conf, new Path(dir, "documents"));
+   }
+
+   public int numberOfShards() {
+      return shards.length;
+   }
+
+   /// Document names, indexed by document id
+   public List<String> documents() {
+      return documents;
+   }
+
+   /// Passes every posting of the term to the visitor and returns the number of postings,
+   /// which is 0 if the term is not in the index
+   public int postings( String term, PostingVisitor visitor) throws IOException {
+      TopK.PostingList list = postingList(term);
+      if (list == null) {
+         return 0;
+      }
+      for (int i = 0; i < list.size(); i++) {
+         visitor.visit(list.docId(i), list.weight(i));
+      }
+      return list.size();
+   }
+
+   /// Reads the whole posting list of the term, or returns null if it is not in the index. The
+   /// blocks are decoded as they are used.
+   public TopK.PostingList postingList( String term) throws IOException {
+      byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+      return shards[shardOf(bytes, bytes.length, shards.length)].postingList(bytes);
+   }
+
+   @Override
+   public void close() throws IOException {
+      for (Shard shard : shards) {
+         shard.close();
+      }
+   }
+}
@@ -0,0 +1,95 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/// LatencyHistogram records the latencies of QueryServer in microseconds and answers
+/// percentiles of them, the way HdrHistogram does with 2 significant digits: values below 256
+/// have a bucket each, and above that every power of two range is cut into 128 buckets, so a
+/// percentile is never off by more than 1/128 of its value. That is 256 + 55 * 128 counters
+/// for every long value, recorded without locks by any number of threads.
+public class LatencyHistogram {
+
+   private static final int SUB_BITS = 8;
+   private static final int SUB_BUCKETS = 1 << SUB_BITS;
+   private static final int HALF = SUB_BUCKETS / 2;
+
+   private final AtomicLongArray counts = new AtomicLongArray(SUB_BUCKETS + (64 - SUB_BITS - 1) * HALF);
+   private final LongAdder count = new LongAdder();
+   private final LongAdder sum = new LongAdder();
+   private final AtomicLong max = new AtomicLong();
+
+   /// Records one value, negative values are recorded as 0
+   public void record( long value) {
+      value = Math.max(0, value);
+      counts.incrementAndGet(index(value));
+      count.increment();
+      sum.add(value);
+      long current = max.get();
+      while (value > current && !max.compareAndSet(current, value)) {
+         current = max.get();
+      }
+   }
+
+   /// Bucket of a value: the value itself below 256, else 128 buckets per power of two keeping
+   /// the 8 highest bits of the value
+   static int index( long value) {
+      if (value < SUB_BUCKETS) {
+         return (int) value;
+      }
+      int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+      return SUB_BUCKETS + (shift - 1) * HALF + (int) (value >>> shift) - HALF;
+   }
+
+   /// Highest value of a bucket
+   static long highest( int index) {
+      if (index < SUB_BUCKETS) {
+         return index;
+      }
+      int shift = (index - SUB_BUCKETS) / HALF + 1;
+      long mantissa = (index - SUB_BUCKETS) % HALF + HALF;
+      return ((mantissa + 1) << shift) - 1;
+   }
+
+   public long count() {
+      return count.sum();
+   }
+
+   public long sum() {
+      return sum.sum();
+   }
+
+   public long max() {
+      return max.get();
+   }
+
+   /// Mean of the recorded values, 0 before the first one
+   public double mean() {
+      long n = count.sum();
+      return n == 0 ? 0.0 : (double) sum.sum() / n;
+   }
+
+   /// The value below which the given percent (0 to 100) of the recorded values are, as the
+   /// highest value of its bucket but not above the largest value recorded. 0 before the first
+   /// value.
+   public long percentile( double percent) {
+      long n = count.sum();
+      if (n == 0) {
+         return 0;
+      }
+      long rank = Math.max(1, (long) Math.ceil(Math.min(100.0, percent) / 100.0 * n));
+      long seen = 0;
+      for (int i = 0; i < counts.length(); i++) {
+         seen += counts.get(i);
+         if (seen >= rank) {
+            return Math.min(highest(i), max.get());
+         }
+      }
+      return max.get();
+   }
+}
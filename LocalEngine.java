@@ -0,0 +1,910 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.IndexedSortable;
+import org.apache.hadoop.util.QuickSort;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+/// LocalEngine runs DocWordCount, TermFrequency, TFIDF and Search in one process, without
+/// MapReduce jobs, for a corpus which fits on one machine. The output files are the same, byte
+/// for byte, as the ones the jobs write with one reducer. For TFIDF and Search that holds as
+/// long as the job has a single map task, beyond that the jobs themselves order the lines of a
+/// word differently depending on their split size (see writeTfidf()).
+///
+/// $ hadoop jar <filename>.jar org.myorg.LocalEngine INPUT_PATH OUTPUT_PATH [query words]
+/// writes OUTPUT_PATH/docwordcount, OUTPUT_PATH/tf, OUTPUT_PATH/tfidf and OUTPUT_PATH/documents,
+/// and OUTPUT_PATH/search when query words are given. The paths are local paths.
+///
+/// The files are cut into chunks at line ends and a pool of threads tokenizes the chunks (with
+/// the Tokenizer of the mappers) into a TermTable each. These are merged into one table of all
+/// terms and posting lists of (document id, count) per term, and the three outputs are written
+/// from them, again by the pool in blocks of terms which are then written in order.
+///
+/// Being the same as the jobs includes their quirks: TFIDF and Search parse the text written by
+/// the previous stage, which for words ending in '#' gives different words and filenames (see
+/// quirkPosting()). These postings go through the same string splitting as in TFIDF.Map, and
+/// the lines TFIDF.Map and Search.Map cannot parse are skipped as they skip them.
+///
+/// local.threads    - number of threads (default the number of processors)
+/// local.chunk.size - bytes of a file tokenized by one task (default 64 MB)
+/// The tokenizer.* options of Tokenizer and search.k of Search apply as well.
+public class LocalEngine extends Configured implements Tool {
+
+   private static final Logger LOG = Logger .getLogger( LocalEngine.class);
+
+   public static final String THREADS = "local.threads";
+   public static final String CHUNK_SIZE = "local.chunk.size";
+
+   private static final byte[] SEPARATOR = "#####".getBytes(StandardCharsets.UTF_8);
+
+   /// The splits of TFIDF.Map and Search.Map
+   private static final Pattern TAB = Pattern .compile("\\b(\\s*\\t+)\\b");
+   private static final Pattern HASHES = Pattern .compile("#####");
+   private static final Pattern EQUALS = Pattern .compile("=");
+
+   /// Postings written by one output task
+   private static final int BLOCK_POSTINGS = 1 << 16;
+
+   /// Text keys compare as unsigned bytes, which is not String order outside the BMP
+   private static final Comparator<String> BYTE_ORDER = new Comparator<String>() {
+      public int compare( String a, String b) {
+         byte[] x = a.getBytes(StandardCharsets.UTF_8);
+         byte[] y = b.getBytes(StandardCharsets.UTF_8);
+         return compareBytes(x, 0, x.length, y, 0, y.length);
+      }
+   };
+
+   private ExecutorService pool;
+
+   /// Input files in the byte order of their names, the index is the document id
+   private String[] names;
+   private byte[][] nameBytes;
+
+   /// False for a filename which TFIDF.Map and Reduce would not split back unchanged
+   private boolean[] plain;
+
+   /// Names of the entries in the input folder, and their number, as TFIDF.run() finds them
+   private TreeSet<String> documents;
+   private int numberOfFiles;
+
+   /// All terms, and for term t < numberOfTerms its postings
+   /// postingDocs/postingCounts[postingStarts[t] .. postingStarts[t + 1]) in document order
+   private TermTable terms;
+   private int numberOfTerms;
+   private int[] postingStarts;
+   private int[] postingDocs;
+   private int[] postingCounts;
+
+   /// Postings in the order of the docwordcount and tf lines, and their terms
+   private int[] lineOrder;
+   private int[] lineTerms;
+
+   /// main() method is the starting point of the program
+   public static void main( String[] args) throws  Exception {
+      int res  = ToolRunner .run( new LocalEngine(), args);
+      System .exit(res);
+   }
+
+   public int run( String[] args) throws  Exception {
+      Configuration conf = getConf();
+      File input = new File(args[0]);
+      File output = new File(args[1]);
+      String[] queries = queries(Arrays.copyOfRange(args, 2, args.length));
+      for (String stage : new String[] { "docwordcount", "tf", "tfidf", "search" }) {
+         if (new File(output, stage).exists()) {
+            throw new IOException("Output directory " + new File(output, stage) + " already exists");
+         }
+      }
+
+      int threads = conf.getInt(THREADS, Runtime.getRuntime().availableProcessors());
+      pool = Executors.newFixedThreadPool(threads);
+      try {
+         long start = System.currentTimeMillis();
+         listFiles(input);
+         long tokens = count(input, conf.getLong(CHUNK_SIZE, 64L << 20));
+         LOG.info("Counted " + tokens + " tokens, " + numberOfTerms + " terms and "
+               + postingDocs.length + " postings in " + names.length + " files with " + threads
+               + " threads in " + (System.currentTimeMillis() - start) + " ms");
+
+         start = System.currentTimeMillis();
+         writeCounts(new File(output, "docwordcount"), new File(output, "tf"));
+         LOG.info("Wrote docwordcount and tf in " + (System.currentTimeMillis() - start) + " ms");
+
+         start = System.currentTimeMillis();
+         writeTfidf(new File(output, "tfidf"), queries.length > 0 ? new File(output, "search") : null, queries);
+         LOG.info("Wrote tfidf" + (queries.length > 0 ? " and search" : "") + " in "
+               + (System.currentTimeMillis() - start) + " ms");
+      } finally {
+         pool.shutdownNow();
+      }
+      return 0;
+   }
+
+   /// The query words as Search.run() passes them to its mapper, joined by spaces and split again
+   private static String[] queries( String[] args) {
+      if (args.length == 0) {
+         return new String[0];
+      }
+      String queries = "";
+      for (String arg : args) {
+         queries += arg + " ";
+      }
+      return queries.split(" ");
+   }
+
+   /// Finds the files FileInputFormat would read and numbers them in the order of their names.
+   /// TFIDF.run() counts every entry of the folder instead, and writes their names to
+   /// OUTPUT_PATH/documents, which is done here too.
+   private void listFiles( File input) throws IOException {
+      File[] entries = input.isDirectory() ? input.listFiles() : new File[] { input };
+      if (entries == null) {
+         throw new IOException("Cannot list " + input);
+      }
+      TreeSet<String> listed = new TreeSet<String>();
+      List<String> files = new ArrayList<String>();
+      for (File entry : entries) {
+         String name = entry.getName();
+
+         /// Checksum files are hidden by Hadoop's local file system
+         if (name.startsWith(".") && name.endsWith(".crc")) {
+            continue;
+         }
+         listed.add(name);
+         if (name.startsWith("_") || name.startsWith(".")) {
+            continue;
+         }
+         if (!entry.isFile()) {
+            throw new IOException("Not a file: " + entry);
+         }
+         files.add(name);
+      }
+      Collections.sort(files, BYTE_ORDER);
+      numberOfFiles = listed.size();
+
+      names = files.toArray(new String[files.size()]);
+      nameBytes = new byte[names.length][];
+      plain = new boolean[names.length];
+      for (int docId = 0; docId < names.length; docId++) {
+         nameBytes[docId] = names[docId].getBytes(StandardCharsets.UTF_8);
+         plain[docId] = isPlain(names[docId]);
+      }
+      documents = listed;
+   }
+
+   /// A filename which comes back unchanged from 'word#####filename<TAB>value'.split(TAB), then
+   /// split(HASHES) and 'filename=value'.split(EQUALS): no '#', '=' or whitespace, ending in an
+   /// ASCII word character
+   private static boolean isPlain( String name) {
+      for (int i = 0; i < name.length(); i++) {
+         char c = name.charAt(i);
+         if (c == '#' || c == '=' || Character.isWhitespace(c) || c > 0x7f) {
+            return false;
+         }
+      }
+      char last = name.charAt(name.length() - 1);
+      return (last >= 'a' && last <= 'z') || (last >= 'A' && last <= 'Z') || (last >= '0' && last <= '9')
+            || last == '_';
+   }
+
+   /// Tokenizes every file in chunks on the pool and merges the chunk tables into terms and the
+   /// posting lists. Returns the number of tokens.
+   private long count( File input, long chunkSize) throws IOException, InterruptedException {
+      File folder = input.isDirectory() ? input : input.getAbsoluteFile().getParentFile();
+      List<List<Future<TermTable>>> chunks = new ArrayList<List<Future<TermTable>>>();
+      for (int docId = 0; docId < names.length; docId++) {
+         File file = new File(folder, names[docId]);
+         List<Future<TermTable>> fileChunks = new ArrayList<Future<TermTable>>();
+         try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long length = channel.size();
+            long start = 0;
+            while (start < length) {
+               long end = lineStart(channel, Math.min(length, start + chunkSize));
+               fileChunks.add(pool.submit(new CountTask(file, start, end)));
+               start = end;
+            }
+         }
+         chunks.add(fileChunks);
+      }
+
+      /// The chunk tables are merged as they finish, in document order. A file of several
+      /// chunks is added up in counts, indexed by term id, before its postings are kept.
+      terms = new TermTable();
+      int[][] docTerms = new int[names.length][];
+      int[][] docCounts = new int[names.length][];
+      int[] counts = new int[1024];
+      int[] touched = new int[1024];
+      long tokens = 0;
+      for (int docId = 0; docId < names.length; docId++) {
+         int distinct = 0;
+         for (Future<TermTable> chunk : chunks.get(docId)) {
+            TermTable table = get(chunk);
+            for (int id = 0; id < table.size(); id++) {
+               int term = terms.intern(table.bytes(), table.start(id), table.length(id));
+               if (term >= counts.length) {
+                  counts = Arrays.copyOf(counts, Math.max(term + 1, 2 * counts.length));
+               }
+               if (counts[term] == 0) {
+                  if (distinct == touched.length) {
+                     touched = Arrays.copyOf(touched, 2 * touched.length);
+                  }
+                  touched[distinct++] = term;
+               }
+               counts[term] += table.count(id);
+               tokens += table.count(id);
+            }
+         }
+         docTerms[docId] = Arrays.copyOf(touched, distinct);
+         docCounts[docId] = new int[distinct];
+         for (int i = 0; i < distinct; i++) {
+            docCounts[docId][i] = counts[touched[i]];
+            counts[touched[i]] = 0;
+         }
+         chunks.set(docId, null);
+      }
+
+      numberOfTerms = terms.size();
+      postingStarts = new int[numberOfTerms + 1];
+      for (int[] docTerm : docTerms) {
+         for (int term : docTerm) {
+            postingStarts[term + 1]++;
+         }
+      }
+      for (int term = 0; term < numberOfTerms; term++) {
+         postingStarts[term + 1] += postingStarts[term];
+      }
+      int[] next = Arrays.copyOf(postingStarts, numberOfTerms);
+      postingDocs = new int[postingStarts[numberOfTerms]];
+      postingCounts = new int[postingDocs.length];
+      for (int docId = 0; docId < names.length; docId++) {
+         for (int i = 0; i < docTerms[docId].length; i++) {
+            int p = next[docTerms[docId][i]]++;
+            postingDocs[p] = docId;
+            postingCounts[p] = docCounts[docId][i];
+         }
+      }
+      return tokens;
+   }
+
+   /// Returns the position after the first line end at or after position - 1, so that a
+   /// chunk starts at the start of a line, or the file length if there is none. Chunks end
+   /// after a '\n', so a "\r\n" is never cut.
+   private static long lineStart( FileChannel channel, long position) throws IOException {
+      long length = channel.size();
+      if (position >= length) {
+         return length;
+      }
+      ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+      for (long p = position - 1; p < length; ) {
+         buffer.clear();
+         int read = channel.read(buffer, p);
+         if (read <= 0) {
+            break;
+         }
+         for (int i = 0; i < read; i++) {
+            if (buffer.get(i) == '\n') {
+               return p + i + 1;
+            }
+         }
+         p += read;
+      }
+      return length;
+   }
+
+   /// Tokenizes the lines of one chunk of a file into a TermTable. Lines end at '\n', '\r'
+   /// or "\r\n", and a UTF-8 byte order mark at the start of the file is skipped, as in
+   /// LineRecordReader.
+   private class CountTask implements Callable<TermTable> {
+      private final File file;
+      private final long start;
+      private final long end;
+
+      CountTask( File file, long start, long end) {
+         this.file = file;
+         this.start = start;
+         this.end = end;
+      }
+
+      public TermTable call() throws IOException {
+         byte[] bytes = new byte[(int) (end - start)];
+         try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+               if (channel.read(buffer, start + buffer.position()) < 0) {
+                  throw new IOException(file + " is shorter than " + end + " bytes");
+               }
+            }
+         }
+
+         TermTable table = new TermTable();
+         Tokenizer tokenizer = new Tokenizer(getConf());
+         Text line = new Text();
+         int position = 0;
+         if (start == 0 && bytes.length >= 3 && bytes[0] == (byte) 0xEF && bytes[1] == (byte) 0xBB
+               && bytes[2] == (byte) 0xBF) {
+            position = 3;
+         }
+         while (position < bytes.length) {
+            int lineEnd = position;
+            while (lineEnd < bytes.length && bytes[lineEnd] != '\n' && bytes[lineEnd] != '\r') {
+               lineEnd++;
+            }
+            line.set(bytes, position, lineEnd - position);
+            tokenizer.reset(line);
+            while (tokenizer.next()) {
+               table.add(tokenizer.bytes(), tokenizer.start(), tokenizer.length());
+            }
+            if (lineEnd + 1 < bytes.length && bytes[lineEnd] == '\r' && bytes[lineEnd + 1] == '\n') {
+               lineEnd++;
+            }
+            position = lineEnd + 1;
+         }
+         return table;
+      }
+   }
+
+   /// Writes OUTPUT_PATH/docwordcount and OUTPUT_PATH/tf. Both are sorted by the whole
+   /// 'word#####filename' key, which is term order except where one term followed by '#####'
+   /// is the start of another one followed by '#####' (for example '!' and '!!', or '#' and
+   /// '######'). The terms are sorted with the separator, and such runs of terms have their
+   /// postings sorted by the whole key.
+   private void writeCounts( File docWordCountDir, File tfDir) throws IOException, InterruptedException {
+      Integer[] order = new Integer[numberOfTerms];
+      for (int term = 0; term < numberOfTerms; term++) {
+         order[term] = term;
+      }
+      Arrays.parallelSort(order, new Comparator<Integer>() {
+         public int compare( Integer a, Integer b) {
+            return compareWithSeparator(a, b);
+         }
+      });
+
+      lineOrder = new int[postingDocs.length];
+      lineTerms = new int[postingDocs.length];
+      int n = 0;
+      for (int i = 0; i < numberOfTerms; ) {
+         int j = i + 1;
+         while (j < numberOfTerms && startsWithSeparator(order[j], order[i])) {
+            j++;
+         }
+         int run = n;
+         for (int k = i; k < j; k++) {
+            for (int p = postingStarts[order[k]]; p < postingStarts[order[k] + 1]; p++) {
+               lineOrder[n] = p;
+               lineTerms[n] = order[k];
+               n++;
+            }
+         }
+         if (j > i + 1) {
+            sortByKey(run, n);
+         }
+         i = j;
+      }
+
+      List<Future<byte[][]>> blocks = new ArrayList<Future<byte[][]>>();
+      for (int from = 0; from < n; from += BLOCK_POSTINGS) {
+         blocks.add(pool.submit(new CountsTask(from, Math.min(n, from + BLOCK_POSTINGS))));
+      }
+      try (OutputStream docWordCount = create(docWordCountDir); OutputStream tf = create(tfDir)) {
+         for (Future<byte[][]> block : blocks) {
+            byte[][] lines = get(block);
+            docWordCount.write(lines[0]);
+            tf.write(lines[1]);
+         }
+      }
+      success(docWordCountDir);
+      success(tfDir);
+   }
+
+   /// Sorts the lines from .. to by their whole 'word#####filename' key
+   private void sortByKey( int from, int to) {
+      List<int[]> run = new ArrayList<int[]>();
+      for (int i = from; i < to; i++) {
+         run.add(new int[] { lineTerms[i], lineOrder[i] });
+      }
+      Collections.sort(run, new Comparator<int[]>() {
+         public int compare( int[] a, int[] b) {
+            return compareKeys(a[0], postingDocs[a[1]], b[0], postingDocs[b[1]]);
+         }
+      });
+      for (int i = from; i < to; i++) {
+         lineTerms[i] = run.get(i - from)[0];
+         lineOrder[i] = run.get(i - from)[1];
+      }
+   }
+
+   /// Writes the docwordcount and tf lines from .. to
+   private class CountsTask implements Callable<byte[][]> {
+      private final int from;
+      private final int to;
+
+      CountsTask( int from, int to) {
+         this.from = from;
+         this.to = to;
+      }
+
+      public byte[][] call() {
+         Lines docWordCount = new Lines();
+         Lines tf = new Lines();
+         for (int i = from; i < to; i++) {
+            int term = lineTerms[i];
+            int docId = postingDocs[lineOrder[i]];
+            int count = postingCounts[lineOrder[i]];
+            docWordCount.key(term, docId).append(Integer.toString(count)).newLine();
+
+            /// As in TermFrequency.Reduce, from the count summed as a double
+            tf.key(term, docId).append(Double.toString(1.0 + Math.log10((double) count))).newLine();
+         }
+         return new byte[][] { docWordCount.toByteArray(), tf.toByteArray() };
+      }
+   }
+
+   /// The word and the 'filename=tf' value TFIDF.Map finds in a tf line which does not split
+   /// back into the term and filename it was written from
+   private static class QuirkPosting {
+      final int word;
+      final String filename;
+      final double tf;
+
+      QuirkPosting( int word, String filename, double tf) {
+         this.word = word;
+         this.filename = filename;
+         this.tf = tf;
+      }
+   }
+
+   /// Writes OUTPUT_PATH/tfidf and OUTPUT_PATH/documents as TFIDF does, and OUTPUT_PATH/search
+   /// when there are queries, as Search does on that output.
+   ///
+   /// A reduce call of TFIDF writes the postings of a word in the order of a HashMap from
+   /// filename to tf, which for filenames in the same bucket is the order the shuffle gave
+   /// them in. The map task sorts its output with Hadoop's QuickSort, which is not stable, so
+   /// the tf lines are sorted by word here with the same QuickSort (see shuffle()), and a
+   /// HashMap is filled in that order. This is the order of a TFIDF job with one map task
+   /// which does not spill more than once; with more map tasks or spills the lines of a word
+   /// can come in another order, as they do between two such jobs with different settings.
+   private void writeTfidf( File tfidfDir, File searchDir, String[] queries)
+         throws IOException, InterruptedException {
+      DocumentInputFormat.writeDocuments(getConf(),
+            new Path(tfidfDir.getAbsoluteFile().getParent(), "documents"), documents);
+
+      /// TFIDF.Map: the word of every tf line
+      boolean[] hasHash = new boolean[numberOfTerms];
+      for (int term = 0; term < numberOfTerms; term++) {
+         for (int i = terms.start(term); i < terms.start(term) + terms.length(term); i++) {
+            hasHash[term] |= terms.bytes()[i] == '#';
+         }
+      }
+      /// kept holds the tf lines TFIDF.Map writes a record for, the records being numbered in
+      /// the order they are written
+      int[] kept = new int[lineOrder.length];
+      int[] words = new int[lineOrder.length];
+      HashMap<Integer, QuirkPosting> quirks = new HashMap<Integer, QuirkPosting>();
+      int n = 0;
+      for (int i = 0; i < lineOrder.length; i++) {
+         int term = lineTerms[i];
+         int p = lineOrder[i];
+         if (hasHash[term] || !plain[postingDocs[p]]) {
+            QuirkPosting quirk = quirkPosting(term, postingDocs[p], postingCounts[p]);
+            if (quirk == null) {
+               continue;
+            }
+            quirks.put(n, quirk);
+            words[n] = quirk.word;
+         } else {
+            words[n] = term;
+         }
+         kept[n++] = i;
+      }
+      if (n < lineOrder.length) {
+         LOG.info("Skipped " + (lineOrder.length - n) + " tf lines TFIDF.Map cannot parse");
+         kept = Arrays.copyOf(kept, n);
+         words = Arrays.copyOf(words, n);
+      }
+
+      /// The words in byte order, the order of the reduce calls
+      Integer[] order = new Integer[terms.size()];
+      for (int term = 0; term < order.length; term++) {
+         order[term] = term;
+      }
+      Arrays.parallelSort(order, new Comparator<Integer>() {
+         public int compare( Integer a, Integer b) {
+            return compareBytes(terms.bytes(), terms.start(a), terms.length(a),
+                  terms.bytes(), terms.start(b), terms.length(b));
+         }
+      });
+      int[] rank = new int[order.length];
+      for (int i = 0; i < order.length; i++) {
+         rank[order[i]] = i;
+      }
+      int[] keys = new int[n];
+      for (int i = 0; i < n; i++) {
+         keys[i] = rank[words[i]];
+      }
+      int[] records = shuffle(keys);
+
+      List<Future<TfidfBlock>> blocks = new ArrayList<Future<TfidfBlock>>();
+      for (int from = 0; from < n; ) {
+         int to = Math.min(n, from + BLOCK_POSTINGS);
+         while (to < n && keys[records[to]] == keys[records[to - 1]]) {
+            to++;
+         }
+         blocks.add(pool.submit(new TfidfTask(records, kept, words, quirks, from, to, queries)));
+         from = to;
+      }
+
+      List<String> matches = new ArrayList<String>();
+      List<Double> values = new ArrayList<Double>();
+      try (OutputStream tfidf = create(tfidfDir)) {
+         for (Future<TfidfBlock> future : blocks) {
+            TfidfBlock block = get(future);
+            tfidf.write(block.lines);
+            matches.addAll(block.matches);
+            values.addAll(block.values);
+         }
+      }
+      success(tfidfDir);
+
+      if (searchDir != null) {
+         writeSearch(searchDir, matches, values);
+      }
+   }
+
+   /// Splits the tf line of a posting as TFIDF.Map does and the value as TFIDF.Reduce does.
+   /// Returns null for a line TFIDF.Map skips.
+   private QuirkPosting quirkPosting( int term, int docId, int count) {
+      String tfLine = new String(terms.bytes(), terms.start(term), terms.length(term), StandardCharsets.UTF_8)
+            + "#####" + names[docId] + "\t" + Double.toString(1.0 + Math.log10((double) count));
+      String[] line = TAB.split(tfLine);
+      String[] key_word_filename = HASHES.split(line[0]);
+      if (line.length < 2 || key_word_filename.length < 2) {
+         return null;
+      }
+      String[] filename_tf = EQUALS.split(key_word_filename[1] + "=" + line[1]);
+      byte[] word = key_word_filename[0].getBytes(StandardCharsets.UTF_8);
+      return new QuirkPosting(terms.intern(word, 0, word.length), filename_tf[0], Double.valueOf(filename_tf[1]));
+   }
+
+   /// Orders map output records as MapTask does before it writes them for the reducers. The
+   /// records are numbered backwards in its buffer, and sorted by key with Hadoop's QuickSort.
+   /// Returns the record numbers in the order the reducer gets them.
+   static int[] shuffle( final int[] keys) {
+      final int[] records = new int[keys.length];
+      for (int i = 0; i < records.length; i++) {
+         records[i] = records.length - 1 - i;
+      }
+      if (records.length < 2) {
+         return records;
+      }
+      new QuickSort().sort(new IndexedSortable() {
+         public int compare( int i, int j) {
+            return Integer.compare(keys[records[i]], keys[records[j]]);
+         }
+         public void swap( int i, int j) {
+            int record = records[i];
+            records[i] = records[j];
+            records[j] = record;
+         }
+      }, 0, records.length);
+      return records;
+   }
+
+   /// The tfidf lines of a block of words, and the (filename, tfidf) pairs Search.Map finds in
+   /// them, in line order
+   private static class TfidfBlock {
+      byte[] lines;
+      List<String> matches = new ArrayList<String>();
+      List<Double> values = new ArrayList<Double>();
+   }
+
+   /// Runs TFIDF.Reduce for the records from .. to, which hold whole words
+   private class TfidfTask implements Callable<TfidfBlock> {
+      private final int[] records;
+      private final int[] kept;
+      private final int[] words;
+      private final HashMap<Integer, QuirkPosting> quirks;
+      private final int from;
+      private final int to;
+      private final byte[][] queries;
+
+      TfidfTask( int[] records, int[] kept, int[] words, HashMap<Integer, QuirkPosting> quirks, int from, int to,
+            String[] queries) {
+         this.records = records;
+         this.kept = kept;
+         this.words = words;
+         this.quirks = quirks;
+         this.from = from;
+         this.to = to;
+         this.queries = new byte[queries.length][];
+         for (int i = 0; i < queries.length; i++) {
+            this.queries[i] = queries[i].getBytes(StandardCharsets.UTF_8);
+         }
+      }
+
+      public TfidfBlock call() {
+         TfidfBlock block = new TfidfBlock();
+         Lines lines = new Lines();
+         for (int i = from; i < to; ) {
+            int word = words[records[i]];
+            HashMap<String, Double> values = new HashMap<String, Double>();
+            int numberOfDocumentsWithWord = 0;
+            for (; i < to && words[records[i]] == word; i++) {
+               QuirkPosting quirk = quirks.isEmpty() ? null : quirks.get(records[i]);
+               if (quirk != null) {
+                  values.put(quirk.filename, quirk.tf);
+               } else {
+                  int p = lineOrder[kept[records[i]]];
+                  values.put(names[postingDocs[p]], 1.0 + Math.log10((double) postingCounts[p]));
+               }
+               numberOfDocumentsWithWord++;
+            }
+
+            double idf = Math.log10(1 + (numberOfFiles / numberOfDocumentsWithWord));
+            for (String v : values.keySet()) {
+               int lineStart = lines.size();
+               lines.append(terms.bytes(), terms.start(word), terms.length(word)).append(SEPARATOR)
+                     .append(v).tab().append(Double.toString(values.get(v) * idf));
+               search(lines, lineStart, block);
+               lines.newLine();
+            }
+         }
+         block.lines = lines.toByteArray();
+         return block;
+      }
+
+      /// Search.Map on the line at lineStart. A String contains another exactly when their
+      /// UTF-8 bytes do, so the line is only turned into a String when it matches.
+      private void search( Lines lines, int lineStart, TfidfBlock block) {
+         for (byte[] query : queries) {
+            if (lines.indexOf(query, lineStart) >= 0) {
+               String line = new String(lines.bytes(), lineStart, lines.size() - lineStart, StandardCharsets.UTF_8);
+               String[] word_value = HASHES.split(line);
+               String[] filename_tfidf = word_value.length < 2 ? word_value : TAB.split(word_value[1]);
+               double tfidf;
+               try {
+                  tfidf = filename_tfidf.length < 2 ? Double.NaN : Double.parseDouble(filename_tfidf[1]);
+               } catch (NumberFormatException e) {
+                  tfidf = Double.NaN;
+               }
+               if (!Double.isNaN(tfidf)) {
+                  block.matches.add(filename_tfidf[0]);
+                  block.values.add(tfidf);
+               }
+            }
+         }
+      }
+   }
+
+   /// Runs Search.Reduce on the (filename, tfidf) pairs of Search.Map, shuffled as the job
+   /// shuffles them, and writes the sums in filename order or with search.k the best k
+   private void writeSearch( File searchDir, List<String> matches, List<Double> values) throws IOException {
+      TreeMap<String, Integer> filenames = new TreeMap<String, Integer>(BYTE_ORDER);
+      for (String filename : matches) {
+         filenames.put(filename, 0);
+      }
+      int rank = 0;
+      for (Map.Entry<String, Integer> entry : filenames.entrySet()) {
+         entry.setValue(rank++);
+      }
+      int[] keys = new int[matches.size()];
+      for (int i = 0; i < keys.length; i++) {
+         keys[i] = filenames.get(matches.get(i));
+      }
+      int[] records = shuffle(keys);
+
+      final Lines lines = new Lines();
+      int k = TopK.k(getConf());
+      TopK.Heap heap = k > 0 ? new TopK.Heap(k) : null;
+      int order = 0;
+      for (int i = 0; i < records.length; ) {
+         String filename = matches.get(records[i]);
+         int key = keys[records[i]];
+         double sum = 0.0;
+         for (; i < records.length && keys[records[i]] == key; i++) {
+            sum += values.get(records[i]);
+         }
+         if (heap != null) {
+            heap.add(sum, order++, filename);
+         } else {
+            lines.append(filename).tab().append(Double.toString(sum)).newLine();
+         }
+      }
+      if (heap != null) {
+         heap.drain(new TopK.ResultVisitor() {
+            public void result( int id, double score, Object filename) {
+               lines.append((String) filename).tab().append(Double.toString(score)).newLine();
+            }
+         });
+      }
+      try (OutputStream search = create(searchDir)) {
+         search.write(lines.toByteArray());
+      }
+      success(searchDir);
+   }
+
+   /// Compares term a followed by '#####' with term b followed by '#####'
+   private int compareWithSeparator( int a, int b) {
+      int lengthA = terms.length(a) + SEPARATOR.length;
+      int lengthB = terms.length(b) + SEPARATOR.length;
+      for (int i = 0; i < Math.min(lengthA, lengthB); i++) {
+         int cmp = (keyByte(a, -1, i) & 0xff) - (keyByte(b, -1, i) & 0xff);
+         if (cmp != 0) {
+            return cmp;
+         }
+      }
+      return lengthA - lengthB;
+   }
+
+   /// True if term b followed by '#####' starts with term a followed by '#####'
+   private boolean startsWithSeparator( int b, int a) {
+      int length = terms.length(a) + SEPARATOR.length;
+      if (terms.length(b) + SEPARATOR.length < length) {
+         return false;
+      }
+      for (int i = 0; i < length; i++) {
+         if (keyByte(a, -1, i) != keyByte(b, -1, i)) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /// Compares the 'word#####filename' keys of two postings as Text does
+   private int compareKeys( int termA, int docA, int termB, int docB) {
+      int lengthA = terms.length(termA) + SEPARATOR.length + nameBytes[docA].length;
+      int lengthB = terms.length(termB) + SEPARATOR.length + nameBytes[docB].length;
+      for (int i = 0; i < Math.min(lengthA, lengthB); i++) {
+         int cmp = (keyByte(termA, docA, i) & 0xff) - (keyByte(termB, docB, i) & 0xff);
+         if (cmp != 0) {
+            return cmp;
+         }
+      }
+      return lengthA - lengthB;
+   }
+
+   /// Byte i of 'term#####filename', without building it
+   private byte keyByte( int term, int docId, int i) {
+      int length = terms.length(term);
+      if (i < length) {
+         return terms.bytes()[terms.start(term) + i];
+      }
+      i -= length;
+      return i < SEPARATOR.length ? SEPARATOR[i] : nameBytes[docId][i - SEPARATOR.length];
+   }
+
+   private static int compareBytes( byte[] a, int startA, int lengthA, byte[] b, int startB, int lengthB) {
+      for (int i = 0; i < Math.min(lengthA, lengthB); i++) {
+         int cmp = (a[startA + i] & 0xff) - (b[startB + i] & 0xff);
+         if (cmp != 0) {
+            return cmp;
+         }
+      }
+      return lengthA - lengthB;
+   }
+
+   /// Opens STAGE_DIR/part-r-00000, the one output file of a job with one reducer
+   private static OutputStream create( File dir) throws IOException {
+      if (!dir.mkdirs()) {
+         throw new IOException("Cannot create " + dir);
+      }
+      return new BufferedOutputStream(new FileOutputStream(new File(dir, "part-r-00000")), 1 << 16);
+   }
+
+   /// The empty _SUCCESS file a finished job leaves
+   private static void success( File dir) throws IOException {
+      new FileOutputStream(new File(dir, "_SUCCESS")).close();
+   }
+
+   private static <T> T get( Future<T> future) throws IOException, InterruptedException {
+      try {
+         return future.get();
+      } catch (ExecutionException e) {
+         if (e.getCause() instanceof IOException) {
+            throw (IOException) e.getCause();
+         }
+         throw new IOException(e.getCause());
+      }
+   }
+
+   /// A growing buffer of output lines, as TextOutputFormat writes them
+   private class Lines {
+      private byte[] bytes = new byte[1 << 16];
+      private int size = 0;
+
+      int size() {
+         return size;
+      }
+
+      byte[] bytes() {
+         return bytes;
+      }
+
+      Lines key( int term, int docId) {
+         return append(terms.bytes(), terms.start(term), terms.length(term)).append(SEPARATOR)
+               .append(nameBytes[docId]).tab();
+      }
+
+      Lines append( byte[] b) {
+         return append(b, 0, b.length);
+      }
+
+      Lines append( byte[] b, int start, int length) {
+         ensure(length);
+         System.arraycopy(b, start, bytes, size, length);
+         size += length;
+         return this;
+      }
+
+      Lines append( String s) {
+         return append(s.getBytes(StandardCharsets.UTF_8));
+      }
+
+      Lines tab() {
+         ensure(1);
+         bytes[size++] = '\t';
+         return this;
+      }
+
+      Lines newLine() {
+         ensure(1);
+         bytes[size++] = '\n';
+         return this;
+      }
+
+      /// Position of pattern in the bytes from start on, or -1
+      int indexOf( byte[] pattern, int start) {
+         for (int i = start; i + pattern.length <= size; i++) {
+            int j = 0;
+            while (j < pattern.length && bytes[i + j] == pattern[j]) {
+               j++;
+            }
+            if (j == pattern.length) {
+               return i;
+            }
+         }
+         return -1;
+      }
+
+      byte[] toByteArray() {
+         return Arrays.copyOf(bytes, size);
+      }
+
+      private void ensure( int length) {
+         if (size + length > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(size + length, 2 * bytes.length));
+         }
+      }
+   }
+}
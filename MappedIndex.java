@@ -0,0 +1,187 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/// MappedIndex reads an index written by IndexBuilder (see InvertedIndex for the layout) from
+/// the local file system, with every file memory mapped through FileChannel.map. Lookups only
+/// use absolute reads on the mapped buffers, so one MappedIndex can be shared by any number of
+/// threads. A posting list decodes its blocks straight from the mapped .post file.
+///
+/// The index has to be copied out of HDFS first, for example with
+/// $ hadoop fs -get OUTPUT_PATH/index LOCAL_INDEX
+public class MappedIndex {
+
+   /// A file mapped as a number of buffers of at most SEGMENT bytes each, as a single
+   /// MappedByteBuffer cannot be larger than 2GB. Values which cross the end of a segment are
+   /// put together byte by byte.
+   static class MappedFile implements InvertedIndex.Input {
+      private static final int SEGMENT_BITS = 30;
+      private static final long SEGMENT = 1L << SEGMENT_BITS;
+
+      private final MappedByteBuffer[] segments;
+      private final long length;
+
+      MappedFile( File file) throws IOException {
+         try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+               FileChannel channel = raf.getChannel()) {
+            length = channel.size();
+            segments = new MappedByteBuffer[(int) ((length + SEGMENT - 1) / SEGMENT)];
+            for (int i = 0; i < segments.length; i++) {
+               long start = i * SEGMENT;
+               segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                     Math.min(SEGMENT, length - start));
+            }
+         }
+      }
+
+      long length() {
+         return length;
+      }
+
+      public byte get( long position) {
+         return segments[(int) (position >>> SEGMENT_BITS)].get((int) (position & (SEGMENT - 1)));
+      }
+
+      public int getInt( long position) {
+         int offset = (int) (position & (SEGMENT - 1));
+         if (offset <= SEGMENT - 4) {
+            return segments[(int) (position >>> SEGMENT_BITS)].getInt(offset);
+         }
+         int value = 0;
+         for (int i = 0; i < 4; i++) {
+            value = (value << 8) | (get(position + i) & 0xff);
+         }
+         return value;
+      }
+
+      public long getLong( long position) {
+         int offset = (int) (position & (SEGMENT - 1));
+         if (offset <= SEGMENT - 8) {
+            return segments[(int) (position >>> SEGMENT_BITS)].getLong(offset);
+         }
+         return ((long) getInt(position) << 32) | (getInt(position + 4) & 0xffffffffL);
+      }
+
+      double getDouble( long position) {
+         return Double.longBitsToDouble(getLong(position));
+      }
+   }
+
+   private final MappedFile[] dicts;
+   private final MappedFile[] posts;
+   private final long[] tableOffsets;
+   private final int[] blockCounts;
+   private final int[] weightBits;
+   private final List<String> documents;
+
+   public MappedIndex( File dir) throws IOException {
+      int count = 0;
+      while (new File(dir, InvertedIndex.shardName(count) + ".dict").exists()) {
+         count++;
+      }
+      if (count == 0) {
+         throw new IOException("No index shards in " + dir);
+      }
+      dicts = new MappedFile[count];
+      posts = new MappedFile[count];
+      tableOffsets = new long[count];
+      blockCounts = new int[count];
+      weightBits = new int[count];
+      for (int shard = 0; shard < count; shard++) {
+         File dict = new File(dir, InvertedIndex.shardName(shard) + ".dict");
+         dicts[shard] = new MappedFile(dict);
+         posts[shard] = new MappedFile(new File(dir, InvertedIndex.shardName(shard) + ".post"));
+         long[] footer = InvertedIndex.readFooter(dicts[shard], dicts[shard].length(), dict.toString());
+         tableOffsets[shard] = footer[0];
+         blockCounts[shard] = (int) footer[1];
+         weightBits[shard] = (int) footer[2];
+      }
+
+      documents = new ArrayList<String>();
+      try (BufferedReader in = new BufferedReader(new InputStreamReader(
+            new FileInputStream(new File(dir, "documents")), StandardCharsets.UTF_8))) {
+         String line;
+         while ((line = in.readLine()) != null) {
+            documents.add(line);
+         }
+      }
+   }
+
+   public int numberOfShards() {
+      return dicts.length;
+   }
+
+   public int numberOfDocuments() {
+      return documents.size();
+   }
+
+   public String document( int docId) {
+      return documents.get(docId);
+   }
+
+   public int shardOf( byte[] term) {
+      return InvertedIndex.shardOf(term, term.length, dicts.length);
+   }
+
+   /// Binary search for the dictionary block of the term in its shard, then a scan of the
+   /// block. Returns the posting list of the term as { offset, count, bytes, maximum bits }, or
+   /// null if the term is not in the index.
+   public long[] find( int shard, byte[] term) {
+      MappedFile dict = dicts[shard];
+      long table = tableOffsets[shard];
+      int low = 0;
+      int high = blockCounts[shard] - 1;
+      int found = -1;
+      while (low <= high) {
+         int mid = (low + high) >>> 1;
+         if (InvertedIndex.compareFirstTerm(dict, dict.getLong(table + 8L * mid), term) <= 0) {
+            found = mid;
+            low = mid + 1;
+         } else {
+            high = mid - 1;
+         }
+      }
+      if (found < 0) {
+         return null;
+      }
+      long end = found + 1 < blockCounts[shard] ? dict.getLong(table + 8L * (found + 1)) : table;
+      return InvertedIndex.findInBlock(dict, dict.getLong(table + 8L * found), end, term);
+   }
+
+   /// The terms of a shard in sorted order, with their posting lists
+   public InvertedIndex.Terms terms( int shard) {
+      return new InvertedIndex.Terms(dicts[shard], posts[shard], tableOffsets[shard], blockCounts[shard],
+            weightBits[shard]);
+   }
+
+   /// Returns the posting list of the term for TopK, or null if it is not in the index. The
+   /// blocks are decoded from the mapped file as they are used.
+   public TopK.PostingList postingList( byte[] term) {
+      return postingList(term, new InvertedIndex.Postings());
+   }
+
+   /// As postingList(term), but decodes into the given list instead of a new one
+   TopK.PostingList postingList( byte[] term, InvertedIndex.Postings reuse) {
+      int shard = shardOf(term);
+      long[] list = find(shard, term);
+      if (list == null) {
+         return null;
+      }
+      return reuse.reset(posts[shard], list[0], (int) list[1], weightBits[shard],
+            Double.longBitsToDouble(list[3]));
+   }
+}
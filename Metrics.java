@@ -0,0 +1,167 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.CounterGroup;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.log4j.Logger;
+
+/// Metrics reports what the stages of the pipeline did. Every job of DocWordCount,
+/// TermFrequency, TFIDF, FusedTFIDF, Search, BatchSearch and IndexBuilder runs through
+/// waitForCompletion() here, which times it and writes its counters to OUTPUT_PATH/metrics (the
+/// parent of the job output):
+///
+/// STAGE.json - stage, job id, success, start time, wall clock time, a summary (documents,
+///              tokens, terms, postings, parse failures) and every counter by group
+/// STAGE.prom - the same in the Prometheus text format, for the node_exporter textfile
+///              collector or any scraper reading files
+///
+/// The counters of the mappers and reducers are in Counters, and the tfidf reducers count
+/// every posting list in a power of two bucket of the 'Posting lengths' group, which shows the
+/// terms with very long lists. The report is switched off with -D metrics.report=false and
+/// written elsewhere with -D metrics.report.dir=DIR. QueryServer has its own metrics.
+public class Metrics {
+
+   private static final Logger LOG = Logger .getLogger( Metrics.class);
+
+   public static final String REPORT = "metrics.report";
+   public static final String REPORT_DIR = "metrics.report.dir";
+   public static final String POSTING_LENGTHS = "Posting lengths";
+
+   /// DOCUMENTS - files read by the word counting mappers
+   /// TERMS, POSTINGS - posting lists and postings written by TFIDF
+   /// PARSE_FAILURES - input lines a mapper could not parse and skipped
+   public static enum Counters { DOCUMENTS, TERMS, POSTINGS, PARSE_FAILURES }
+
+   /// Counts one posting list of the given length
+   public static void postingList( TaskAttemptContext context, int length) {
+      context.getCounter(Counters.TERMS).increment(1);
+      context.getCounter(Counters.POSTINGS).increment(length);
+      context.getCounter(POSTING_LENGTHS, bucket(length)).increment(1);
+   }
+
+   /// Name of the power of two bucket of a posting list length: '1', '2-3', '4-7', ...
+   static String bucket( int length) {
+      int low = Integer.highestOneBit(Math.max(length, 1));
+      return low == 1 ? "1" : low + "-" + (2L * low - 1);
+   }
+
+   /// Runs the job like job.waitForCompletion(true), then logs its wall clock time and writes
+   /// its report. Returns true if the job succeeded.
+   public static boolean waitForCompletion( Job job, String stage)
+         throws IOException, InterruptedException, ClassNotFoundException {
+      long start = System.currentTimeMillis();
+      boolean success = job.waitForCompletion( true);
+      long millis = System.currentTimeMillis() - start;
+      LOG.info("Stage " + stage + (success ? " finished" : " failed") + " in " + millis + " ms");
+
+      Configuration conf = job.getConfiguration();
+      if (conf.getBoolean(REPORT, true)) {
+         Path dir = conf.get(REPORT_DIR) != null ? new Path(conf.get(REPORT_DIR))
+               : new Path(FileOutputFormat.getOutputPath(job).getParent(), "metrics");
+         try {
+            writeReport(job, stage, success, start, millis, dir);
+         } catch (IOException e) {
+            LOG.warn("Cannot write the metrics of " + stage + " to " + dir, e);
+         }
+      }
+      return success;
+   }
+
+   private static void writeReport( Job job, String stage, boolean success, long start, long millis, Path dir)
+         throws IOException {
+      org.apache.hadoop.mapreduce.Counters counters = job.getCounters();
+      long[] summary = counters == null ? new long[5] : new long[] {
+            counters.findCounter(Counters.DOCUMENTS).getValue(),
+            counters.findCounter(InMapperCombiner.CombineCounters.TOKENS).getValue(),
+            counters.findCounter(Counters.TERMS).getValue(),
+            counters.findCounter(Counters.POSTINGS).getValue(),
+            counters.findCounter(Counters.PARSE_FAILURES).getValue() };
+      String[] names = { "documents", "tokens", "terms", "postings", "parseFailures" };
+
+      StringBuilder json = new StringBuilder();
+      json.append("{\n  \"stage\": ").append(json(stage))
+            .append(",\n  \"job\": ").append(json(String.valueOf(job.getJobID())))
+            .append(",\n  \"success\": ").append(success)
+            .append(",\n  \"startTime\": ").append(start)
+            .append(",\n  \"wallClockMillis\": ").append(millis)
+            .append(",\n  \"summary\": {");
+      for (int i = 0; i < names.length; i++) {
+         json.append(i == 0 ? "" : ",").append("\n    ").append(json(names[i])).append(": ").append(summary[i]);
+      }
+      json.append("\n  },\n  \"counters\": {");
+
+      StringBuilder prom = new StringBuilder();
+      String label = "stage=\"" + label(stage) + "\"";
+      prom.append("# HELP pipeline_stage_seconds Wall clock time of a pipeline stage\n")
+            .append("# TYPE pipeline_stage_seconds gauge\n")
+            .append("pipeline_stage_seconds{").append(label).append("} ").append(millis / 1000.0).append('\n')
+            .append("# HELP pipeline_stage_success 1 if the job of the stage succeeded\n")
+            .append("# TYPE pipeline_stage_success gauge\n")
+            .append("pipeline_stage_success{").append(label).append("} ").append(success ? 1 : 0).append('\n')
+            .append("# HELP pipeline_counter Hadoop counters of the job of a stage\n")
+            .append("# TYPE pipeline_counter gauge\n");
+
+      if (counters != null) {
+         boolean firstGroup = true;
+         for (CounterGroup group : counters) {
+            json.append(firstGroup ? "" : ",").append("\n    ").append(json(group.getName())).append(": {");
+            boolean firstCounter = true;
+            for (Counter counter : group) {
+               json.append(firstCounter ? "" : ",").append("\n      ").append(json(counter.getName()))
+                     .append(": ").append(counter.getValue());
+               prom.append("pipeline_counter{").append(label).append(",group=\"").append(label(group.getName()))
+                     .append("\",counter=\"").append(label(counter.getName())).append("\"} ")
+                     .append(counter.getValue()).append('\n');
+               firstCounter = false;
+            }
+            json.append("\n    }");
+            firstGroup = false;
+         }
+      }
+      json.append("\n  }\n}\n");
+
+      FileSystem fs = dir.getFileSystem(job.getConfiguration());
+      write(fs, new Path(dir, stage + ".json"), json);
+      write(fs, new Path(dir, stage + ".prom"), prom);
+   }
+
+   private static void write( FileSystem fs, Path path, CharSequence text) throws IOException {
+      try (Writer out = new OutputStreamWriter(fs.create(path, true), StandardCharsets.UTF_8)) {
+         out.append(text);
+      }
+   }
+
+   /// A string as a JSON string literal
+   public static String json( String s) {
+      StringBuilder out = new StringBuilder(s.length() + 2).append('"');
+      for (int i = 0; i < s.length(); i++) {
+         char c = s.charAt(i);
+         if (c == '"' || c == '\\') {
+            out.append('\\').append(c);
+         } else if (c < 0x20) {
+            out.append(String.format("\\u%04x", (int) c));
+         } else {
+            out.append(c);
+         }
+      }
+      return out.append('"').toString();
+   }
+
+   /// A string escaped for a Prometheus label value
+   public static String label( String s) {
+      return s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+   }
+}
@@ -0,0 +1,275 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+/// QueryCache is the size bounded cache QueryServer keeps its query results and decoded posting
+/// lists in. Every entry has a weight (the number of results or postings it holds) and the sum
+/// of the weights stays below the maximum given to the constructor. Two eviction policies:
+///
+/// LRU     - one list in access order, the least recently used entries are evicted first
+/// TINYLFU - W-TinyLFU: new entries go to a small LRU window (1% of the weight). An entry leaving
+///           the window only replaces the least recently used entry of the main part if it was
+///           asked for more often, going by a count-min sketch of recent accesses whose counters
+///           are halved from time to time. The main part is a segmented LRU: entries hit again
+///           move from probation to a protected segment (80% of the main part).
+///
+/// TinyLFU keeps a query asked every minute when a burst of one-off queries goes through, which
+/// is what users repeating the same few queries look like. The statistics (hits, misses,
+/// evictions, ...) are there to size the cache. All methods are synchronized.
+public class QueryCache<K, V> {
+
+   public static enum Policy { LRU, TINYLFU }
+
+   private static final int WINDOW = 0;
+   private static final int PROBATION = 1;
+   private static final int PROTECTED = 2;
+
+   private static final class Entry<V> {
+      final V value;
+      final int weight;
+      int segment;
+
+      Entry( V value, int weight) {
+         this.value = value;
+         this.weight = weight;
+      }
+   }
+
+   private final Policy policy;
+   private final long maxWeight;
+   private final long[] limits = new long[3];
+   private final long[] weights = new long[3];
+   private final HashMap<K, Entry<V>> entries = new HashMap<K, Entry<V>>();
+   @SuppressWarnings({ "unchecked", "rawtypes" })
+   private final LinkedHashMap<K, Entry<V>>[] segments = new LinkedHashMap[3];
+   private final FrequencySketch sketch;
+
+   private long hits = 0;
+   private long misses = 0;
+   private long evictions = 0;
+   private long rejections = 0;
+   private long invalidations = 0;
+
+   public QueryCache( Policy policy, long maxWeight) {
+      this.policy = policy;
+      this.maxWeight = Math.max(0, maxWeight);
+      for (int i = 0; i < segments.length; i++) {
+         segments[i] = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true);
+      }
+      if (policy == Policy.TINYLFU) {
+         limits[WINDOW] = Math.max(1, this.maxWeight / 100);
+         limits[PROTECTED] = (this.maxWeight - limits[WINDOW]) * 4 / 5;
+         sketch = new FrequencySketch((int) Math.min(Math.max(this.maxWeight, 64), 1 << 16));
+      } else {
+         limits[WINDOW] = this.maxWeight;
+         sketch = null;
+      }
+   }
+
+   /// Returns true if the cache can hold anything at all
+   public boolean isEnabled() {
+      return maxWeight > 0;
+   }
+
+   /// Returns the cached value, or null
+   public synchronized V get( K key) {
+      if (sketch != null) {
+         sketch.increment(key.hashCode());
+      }
+      Entry<V> entry = entries.get(key);
+      if (entry == null) {
+         misses++;
+         return null;
+      }
+      hits++;
+      if (entry.segment == PROBATION) {
+         move(key, entry, PROTECTED);
+         while (weights[PROTECTED] > limits[PROTECTED]) {
+            K eldest = segments[PROTECTED].keySet().iterator().next();
+            move(eldest, segments[PROTECTED].get(eldest), PROBATION);
+         }
+      } else {
+         /// Access order: the get moves the entry to the most recently used end
+         segments[entry.segment].get(key);
+      }
+      return entry.value;
+   }
+
+   /// Adds or replaces a value. Values heavier than the whole cache are not kept.
+   public synchronized void put( K key, V value, int weight) {
+      Entry<V> old = entries.remove(key);
+      if (old != null) {
+         segments[old.segment].remove(key);
+         weights[old.segment] -= old.weight;
+      }
+      if (weight > maxWeight) {
+         return;
+      }
+      Entry<V> entry = new Entry<V>(value, weight);
+      entries.put(key, entry);
+      add(key, entry, WINDOW);
+
+      while (weights[WINDOW] > limits[WINDOW]) {
+         K candidate = segments[WINDOW].keySet().iterator().next();
+         Entry<V> candidateEntry = segments[WINDOW].remove(candidate);
+         weights[WINDOW] -= candidateEntry.weight;
+         if (policy == Policy.LRU) {
+            entries.remove(candidate);
+            evictions++;
+         } else {
+            admit(candidate, candidateEntry);
+         }
+      }
+   }
+
+   /// Drops every entry, for when the index they were read from is replaced
+   public synchronized void invalidate() {
+      entries.clear();
+      for (int i = 0; i < segments.length; i++) {
+         segments[i].clear();
+         weights[i] = 0;
+      }
+      invalidations++;
+   }
+
+   /// Moves an entry leaving the window to probation if it fits, or if it was used more often
+   /// than the entries that have to make room for it
+   private void admit( K candidate, Entry<V> entry) {
+      long mainLimit = maxWeight - limits[WINDOW];
+      int frequency = sketch.frequency(candidate.hashCode());
+      while (weights[PROBATION] + weights[PROTECTED] + entry.weight > mainLimit) {
+         LinkedHashMap<K, Entry<V>> segment =
+               segments[PROBATION].isEmpty() ? segments[PROTECTED] : segments[PROBATION];
+         K victim = segment.isEmpty() ? null : segment.keySet().iterator().next();
+         if (victim == null || sketch.frequency(victim.hashCode()) >= frequency) {
+            entries.remove(candidate);
+            evictions++;
+            rejections++;
+            return;
+         }
+         Entry<V> victimEntry = entries.remove(victim);
+         segment.remove(victim);
+         weights[victimEntry.segment] -= victimEntry.weight;
+         evictions++;
+      }
+      add(candidate, entry, PROBATION);
+   }
+
+   private void add( K key, Entry<V> entry, int segment) {
+      entry.segment = segment;
+      segments[segment].put(key, entry);
+      weights[segment] += entry.weight;
+   }
+
+   private void move( K key, Entry<V> entry, int segment) {
+      segments[entry.segment].remove(key);
+      weights[entry.segment] -= entry.weight;
+      add(key, entry, segment);
+   }
+
+   public synchronized long hits() {
+      return hits;
+   }
+
+   public synchronized long misses() {
+      return misses;
+   }
+
+   /// Fraction of the lookups that found their value, 0 before the first lookup
+   public synchronized double hitRatio() {
+      return hits + misses == 0 ? 0.0 : (double) hits / (hits + misses);
+   }
+
+   /// Entries dropped to make room, including the new entries TinyLFU did not admit
+   public synchronized long evictions() {
+      return evictions;
+   }
+
+   /// New entries TinyLFU did not admit, as they were used less than the entries they would replace
+   public synchronized long rejections() {
+      return rejections;
+   }
+
+   public synchronized long invalidations() {
+      return invalidations;
+   }
+
+   public synchronized int size() {
+      return entries.size();
+   }
+
+   public synchronized long weight() {
+      return weights[WINDOW] + weights[PROBATION] + weights[PROTECTED];
+   }
+
+   public long maxWeight() {
+      return maxWeight;
+   }
+
+   /// One line summary, e.g. for the /stats page of QueryServer
+   public synchronized String stats() {
+      return "policy=" + policy.name().toLowerCase() + " entries=" + entries.size() + " weight=" + weight()
+            + "/" + maxWeight + " hits=" + hits + " misses=" + misses
+            + " hitRatio=" + String.format("%.4f", hitRatio()) + " evictions=" + evictions
+            + " rejections=" + rejections + " invalidations=" + invalidations;
+   }
+
+   /// Count-min sketch of 4 rows of counters up to 15. After 10 increments per counter of a row
+   /// all counters are halved, so the frequencies follow what is asked for now.
+   static class FrequencySketch {
+      private final byte[][] rows = new byte[4][];
+      private final int mask;
+      private final int sampleSize;
+      private int additions = 0;
+
+      FrequencySketch( int width) {
+         int size = Integer.highestOneBit(Math.max(width - 1, 1)) << 1;
+         for (int i = 0; i < rows.length; i++) {
+            rows[i] = new byte[size];
+         }
+         mask = size - 1;
+         sampleSize = 10 * size;
+      }
+
+      void increment( int hash) {
+         boolean added = false;
+         for (int i = 0; i < rows.length; i++) {
+            int index = index(hash, i);
+            if (rows[i][index] < 15) {
+               rows[i][index]++;
+               added = true;
+            }
+         }
+         if (added && ++additions >= sampleSize) {
+            for (byte[] row : rows) {
+               for (int j = 0; j < row.length; j++) {
+                  row[j] >>= 1;
+               }
+            }
+            additions /= 2;
+         }
+      }
+
+      int frequency( int hash) {
+         int frequency = 15;
+         for (int i = 0; i < rows.length; i++) {
+            frequency = Math.min(frequency, rows[i][index(hash, i)]);
+         }
+         return frequency;
+      }
+
+      /// A different mix of the hash per row, so keys colliding in one row rarely collide in all
+      private int index( int hash, int row) {
+         int h = (hash + row) * (0x9e3779b9 + 2 * row);
+         h ^= h >>> 16;
+         h *= 0x85ebca6b;
+         h ^= h >>> 13;
+         return h & mask;
+      }
+   }
+}
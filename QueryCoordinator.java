@@ -0,0 +1,339 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.GenericOptionsParser;
+import org.apache.log4j.Logger;
+
+/// QueryCoordinator answers queries over the document shards of IndexBuilder (-D
+/// index.partition=document) by sending every query to all the shards at once and merging
+/// their answers, the way a search cluster spreads one index over many nodes. Each shard is
+/// served by a QueryServer of its own, with its own caches, behind a pool of worker threads
+/// standing in for the shard's node, so a slow shard only delays the queries waiting for it.
+///
+/// $ hadoop fs -get OUTPUT_PATH/shards LOCAL_SHARDS
+/// $ java -cp <filename>.jar:<hadoop jars> org.myorg.QueryCoordinator [-D option=value ...] LOCAL_SHARDS [PORT] [THREADS]
+/// $ curl 'http://localhost:8080/search?q=computer+science&k=10'
+/// $ curl 'http://localhost:8080/search?q=computer+science'
+///
+/// With k every shard returns its own k best documents (see TopK) and the coordinator keeps the
+/// k best of those, which are the k best of the corpus since a document is in exactly one shard.
+/// Without k every matching document is returned in filename order: the shards hold
+/// consecutive ranges of document ids, so their answers are simply put one after the other.
+/// The scores are the tfidf sums of QueryServer over the whole index, with k up to the rounding
+/// of the last bit, as MaxScore may add up the words of a shard in another order; this can
+/// swap documents whose scores only differ there.
+///
+/// A shard which has not answered -D coordinator.timeout.ms=T milliseconds (default 1000) after
+/// the query was sent, or which failed, is left out: the response holds the documents of the
+/// other shards, and its X-Shards header ('answered/total') tells the client it is partial.
+/// /stats lists the latency, timeouts and failures of every shard.
+///
+/// -D coordinator.shard.threads=N   - worker threads of each shard (default the number of cores)
+/// The query.cache.* and search.k.max options of QueryServer apply to each shard; the shards are
+/// not reopened when their files change. The score accumulators of a shard only cover its range
+/// of document ids, so one worker thread of every shard together needs no more than one thread
+/// of a QueryServer over the whole index.
+public class QueryCoordinator {
+
+   private static final Logger LOG = Logger .getLogger( QueryCoordinator.class);
+
+   public static final String TIMEOUT = "coordinator.timeout.ms";
+   public static final String SHARD_THREADS = "coordinator.shard.threads";
+
+   /// A shard with the threads answering its part of the queries
+   static class Shard {
+      final QueryServer server;
+      final ExecutorService workers;
+      final LatencyHistogram latency = new LatencyHistogram();
+      final LongAdder timeouts = new LongAdder();
+      final LongAdder failures = new LongAdder();
+
+      Shard( final String name, QueryServer server, int threads) {
+         this.server = server;
+         this.workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private int count = 0;
+
+            public synchronized Thread newThread( Runnable runnable) {
+               Thread thread = new Thread(runnable, name + "-" + count++);
+               thread.setDaemon(true);
+               return thread;
+            }
+         });
+      }
+   }
+
+   /// The merged answer of a query: the documents, best first with k or in filename order
+   /// without, and how many shards answered in time
+   public static class Response {
+      private final List<String> documents = new ArrayList<String>();
+      private final List<Double> scores = new ArrayList<Double>();
+      private final int shards;
+      private int answered = 0;
+
+      Response( int shards) {
+         this.shards = shards;
+      }
+
+      public int size() {
+         return documents.size();
+      }
+
+      public String document( int i) {
+         return documents.get(i);
+      }
+
+      public double score( int i) {
+         return scores.get(i);
+      }
+
+      public int shards() {
+         return shards;
+      }
+
+      public int answered() {
+         return answered;
+      }
+
+      /// True if some shard timed out or failed, so documents of it may be missing
+      public boolean isPartial() {
+         return answered < shards;
+      }
+   }
+
+   /// The documents of one shard for a query, in the order the shard returned them
+   private static class ShardResult {
+      final List<Integer> docIds = new ArrayList<Integer>();
+      final List<Double> scores = new ArrayList<Double>();
+   }
+
+   private final Shard[] shards;
+   private final long timeoutMillis;
+   private final int maxK;
+   private final LatencyHistogram latency = new LatencyHistogram();
+   private final LongAdder partial = new LongAdder();
+
+   /// Opens the shard-NNNNN folders of dir
+   public QueryCoordinator( File dir, Configuration conf) throws IOException {
+      Configuration shardConf = new Configuration(conf);
+      shardConf.setLong(QueryServer.CACHE_REFRESH, 0);
+      int threads = conf.getInt(SHARD_THREADS, Runtime.getRuntime().availableProcessors());
+      int count = 0;
+      while (new File(dir, InvertedIndex.shardName(count)).isDirectory()) {
+         count++;
+      }
+      List<Shard> opened = new ArrayList<Shard>();
+      for (int i = 0; i < count; i++) {
+         File shard = new File(dir, InvertedIndex.shardName(i));
+         opened.add(new Shard(shard.getName(), new QueryServer(shard, shardConf, i, count), threads));
+      }
+      if (opened.isEmpty()) {
+         throw new IOException("No document shards in " + dir + ", build them with IndexBuilder -D "
+               + IndexBuilder.PARTITION + "=document");
+      }
+      this.shards = opened.toArray(new Shard[opened.size()]);
+      this.timeoutMillis = conf.getLong(TIMEOUT, 1000);
+      this.maxK = conf.getInt(TopK.MAX_K, TopK.DEFAULT_MAX_K);
+   }
+
+   public int numberOfShards() {
+      return shards.length;
+   }
+
+   public int numberOfDocuments() {
+      return shards[0].server.index().numberOfDocuments();
+   }
+
+   /// Latencies of the queries answered so far, in microseconds
+   public LatencyHistogram latency() {
+      return latency;
+   }
+
+   /// Sends the query to every shard and merges the answers of the shards which answer in
+   /// time. k > 0 keeps the k best documents, k = 0 returns every matching one.
+   public Response search( final String query, final int k) throws IOException {
+      long start = System.nanoTime();
+      List<Future<ShardResult>> futures = new ArrayList<Future<ShardResult>>(shards.length);
+      for (final Shard shard : shards) {
+         futures.add(shard.workers.submit(new Callable<ShardResult>() {
+            public ShardResult call() throws IOException {
+               long shardStart = System.nanoTime();
+               final ShardResult result = new ShardResult();
+               if (k > 0) {
+                  shard.server.search(query, k, new TopK.ResultVisitor() {
+                     public void result( int docId, double score, Object item) {
+                        result.docIds.add(docId);
+                        result.scores.add(score);
+                     }
+                  });
+               } else {
+                  shard.server.search(query, new QueryServer.ResultVisitor() {
+                     public void result( int docId, double score) {
+                        result.docIds.add(docId);
+                        result.scores.add(score);
+                     }
+                  });
+               }
+               shard.latency.record((System.nanoTime() - shardStart) / 1000);
+               return result;
+            }
+         }));
+      }
+
+      /// Every shard gets the same deadline, counted from the time the query was sent
+      long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+      ShardResult[] results = new ShardResult[shards.length];
+      final Response response = new Response(shards.length);
+      for (int i = 0; i < shards.length; i++) {
+         try {
+            results[i] = futures.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            response.answered++;
+         } catch (TimeoutException e) {
+            futures.get(i).cancel(true);
+            shards[i].timeouts.increment();
+         } catch (ExecutionException e) {
+            shards[i].failures.increment();
+            LOG.warn("Shard " + i + " failed on query '" + query + "'", e.getCause());
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for shard " + i, e);
+         }
+      }
+
+      final MappedIndex index = shards[0].server.index();
+      if (k > 0) {
+         /// The same heap as the shards, so ties are broken by document id as in one index. It
+         /// never needs more room than the shards returned.
+         int returned = 0;
+         for (ShardResult result : results) {
+            if (result != null) {
+               returned += result.docIds.size();
+            }
+         }
+         TopK.Heap heap = new TopK.Heap(Math.max(1, Math.min(k, returned)));
+         for (ShardResult result : results) {
+            if (result != null) {
+               for (int j = 0; j < result.docIds.size(); j++) {
+                  heap.add(result.scores.get(j), result.docIds.get(j), null);
+               }
+            }
+         }
+         heap.drain(new TopK.ResultVisitor() {
+            public void result( int docId, double score, Object item) {
+               response.documents.add(index.document(docId));
+               response.scores.add(score);
+            }
+         });
+      } else {
+         for (ShardResult result : results) {
+            if (result != null) {
+               for (int j = 0; j < result.docIds.size(); j++) {
+                  response.documents.add(index.document(result.docIds.get(j)));
+                  response.scores.add(result.scores.get(j));
+               }
+            }
+         }
+      }
+      if (response.isPartial()) {
+         partial.increment();
+      }
+      latency.record((System.nanoTime() - start) / 1000);
+      return response;
+   }
+
+   /// Per shard statistics, one line per shard, then the totals of the coordinator
+   public String stats() {
+      StringBuilder out = new StringBuilder();
+      for (int i = 0; i < shards.length; i++) {
+         Shard shard = shards[i];
+         out.append(InvertedIndex.shardName(i))
+               .append("\tqueries=").append(shard.latency.count())
+               .append(" p50=").append(shard.latency.percentile(50))
+               .append("us p99=").append(shard.latency.percentile(99))
+               .append("us max=").append(shard.latency.max())
+               .append("us timeouts=").append(shard.timeouts.sum())
+               .append(" failures=").append(shard.failures.sum())
+               .append(" results=").append(shard.server.resultCache().stats()).append('\n');
+      }
+      out.append("coordinator\tqueries=").append(latency.count())
+            .append(" mean=").append(String.format("%.1f", latency.mean()))
+            .append("us p50=").append(latency.percentile(50))
+            .append("us p99=").append(latency.percentile(99))
+            .append("us max=").append(latency.max())
+            .append("us partial=").append(partial.sum()).append('\n');
+      return out.toString();
+   }
+
+   /// Serves GET /search?q=words[&k=K] and GET /stats on the given port
+   public HttpServer serve( int port, int threads) throws IOException {
+      HttpServer server = HttpServer.create(new InetSocketAddress(port), 1024);
+      server.createContext("/search", new HttpHandler() {
+         public void handle( HttpExchange exchange) throws IOException {
+            String query = QueryServer.parameter(exchange.getRequestURI().getRawQuery(), "q");
+            int k = QueryServer.topK(QueryServer.parameter(exchange.getRequestURI().getRawQuery(), "k"), maxK);
+            boolean valid = query != null && k >= 0;
+            StringBuilder body = new StringBuilder();
+            if (valid) {
+               Response response = search(query, k);
+               for (int i = 0; i < response.size(); i++) {
+                  body.append(response.document(i)).append('\t').append(response.score(i)).append('\n');
+               }
+               exchange.getResponseHeaders().set("X-Shards", response.answered() + "/" + response.shards());
+            }
+            byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(valid ? 200 : 400, bytes.length == 0 ? -1 : bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+               out.write(bytes);
+            }
+         }
+      });
+      server.createContext("/stats", new HttpHandler() {
+         public void handle( HttpExchange exchange) throws IOException {
+            byte[] bytes = stats().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+               out.write(bytes);
+            }
+         }
+      });
+      server.setExecutor(Executors.newFixedThreadPool(threads));
+      server.start();
+      return server;
+   }
+
+   /// main() method is the starting point of the program
+   public static void main( String[] args) throws Exception {
+      Configuration conf = new Configuration();
+      args = new GenericOptionsParser(conf, args).getRemainingArgs();
+      int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+      int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+      QueryCoordinator coordinator = new QueryCoordinator(new File(args[0]), conf);
+      coordinator.serve(port, threads);
+      LOG.info("Serving " + coordinator.numberOfDocuments() + " documents in " + coordinator.numberOfShards()
+            + " document shards on port " + port + " with " + threads + " threads");
+   }
+}
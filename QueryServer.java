@@ -0,0 +1,716 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.GenericOptionsParser;
+import org.apache.log4j.Logger;
+
+/// QueryServer answers queries from a local copy of the index written by IndexBuilder without
+/// starting a Hadoop job. The index is memory mapped (see MappedIndex) and the scores are the
+/// same sums of tfidf values as Search.Reduce, as stored in the index (see index.weight.bits in
+/// InvertedIndex), one 'filename	tfidf_sum' line per matching document, in filename order.
+///
+/// $ java -cp <filename>.jar:<hadoop jars> org.myorg.QueryServer [-D option=value ...] LOCAL_INDEX [PORT] [THREADS]
+/// $ curl 'http://localhost:8080/search?q=computer+science'
+/// $ curl 'http://localhost:8080/search?q=computer+science&k=10'
+/// With k only the k best documents are returned, best first, using MaxScore (see TopK).
+///
+/// Each request thread keeps its own score accumulator, sized for the number of documents and
+/// reused for every query, and postings are decoded straight from the mapped files, so a query
+/// does not allocate per posting. THREADS defaults to the number of cores.
+///
+/// Results and decoded posting lists are cached (see QueryCache). A query is normalized first,
+/// its words lowercased and sorted, so 'Science computer' and 'computer science' share a cache
+/// entry; a repeated word is kept, as Search adds its tfidf once per occurrence. Cache keys
+/// include the generation of the index, and the index folder is checked every few seconds: when
+/// a new index has been copied over LOCAL_INDEX (and its files stopped changing) it is opened,
+/// replaces the old one for new queries and the caches are emptied. Copy a new index to a
+/// temporary folder and rename it over LOCAL_INDEX, as files rewritten in place change under the
+/// mapped buffers of queries still running.
+/// $ curl 'http://localhost:8080/stats'
+/// prints the index generation, the query latencies and the hits, misses, hit ratio and
+/// evictions of both caches.
+/// $ curl 'http://localhost:8080/metrics'
+/// $ curl 'http://localhost:8080/metrics.json'
+/// return the same in the Prometheus text format and as JSON: the query latency percentiles
+/// (see LatencyHistogram, measured from the request to the end of the search), the cache
+/// statistics and the index. They are also registered as the MBean org.myorg:type=QueryServer
+/// for JMX clients such as jconsole.
+///
+/// -D query.cache.results=N   - number of cached results (documents) over all queries (default 1000000, 0 disables)
+/// -D query.cache.postings=N  - number of cached postings over all words (default 4000000, 0 disables)
+/// -D query.cache.policy=P    - tinylfu (default) or lru
+/// -D query.cache.refresh=S   - seconds between checks for a new index (default 10, 0 never checks)
+/// -D search.k.max=K          - largest k of a request, a larger one is answered with 400 (default 10000)
+public class QueryServer {
+
+   private static final Logger LOG = Logger .getLogger( QueryServer.class);
+
+   public static final String CACHE_RESULTS = "query.cache.results";
+   public static final String CACHE_POSTINGS = "query.cache.postings";
+   public static final String CACHE_POLICY = "query.cache.policy";
+   public static final String CACHE_REFRESH = "query.cache.refresh";
+
+   /// Percentiles reported by /metrics, /metrics.json and the MBean
+   private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+   private static final String[] QUANTILE_NAMES = { "p50", "p90", "p99", "p999" };
+
+   /// The attributes of the MBean of QueryServer
+   public interface StatsMBean {
+      long getGeneration();
+      int getDocuments();
+      long getQueries();
+      double getLatencyMeanMicros();
+      long getLatencyP50Micros();
+      long getLatencyP90Micros();
+      long getLatencyP99Micros();
+      long getLatencyP999Micros();
+      long getLatencyMaxMicros();
+      double getResultCacheHitRatio();
+      long getResultCacheEvictions();
+      double getPostingCacheHitRatio();
+      long getPostingCacheEvictions();
+   }
+
+   /// Receives the documents matching a query with their summed tfidf
+   public interface ResultVisitor {
+      void result( int docId, double score) throws IOException;
+   }
+
+   /// Score accumulator of one thread. Only the documents touched by a query are reset
+   /// afterwards, so reuse costs nothing in the number of documents. It covers the documents
+   /// from first on which the index can hold, and scores, matched and touched are indexed by
+   /// docId - first. It also keeps the decode buffers of the posting lists, one per word of a
+   /// query, so a lookup allocates nothing.
+   static class Accumulator {
+      final int first;
+      final double[] scores;
+      final boolean[] matched;
+      final int[] touched;
+      int touchedCount;
+      private InvertedIndex.Postings[] postings = new InvertedIndex.Postings[0];
+
+      Accumulator( int first, int numberOfDocuments) {
+         this.first = first;
+         scores = new double[numberOfDocuments];
+         matched = new boolean[numberOfDocuments];
+         touched = new int[numberOfDocuments];
+      }
+
+      void add( int docId, double weight) {
+         int i = docId - first;
+         if (!matched[i]) {
+            matched[i] = true;
+            touched[touchedCount++] = i;
+         }
+         scores[i] += weight;
+      }
+
+      /// The decode buffers of the posting list of word i of a query
+      InvertedIndex.Postings postings( int i) {
+         if (i >= postings.length) {
+            postings = Arrays.copyOf(postings, Math.max(i + 1, 2 * postings.length));
+         }
+         if (postings[i] == null) {
+            postings[i] = new InvertedIndex.Postings();
+         }
+         return postings[i];
+      }
+
+      void reset() {
+         for (int i = 0; i < touchedCount; i++) {
+            scores[touched[i]] = 0.0;
+            matched[touched[i]] = false;
+         }
+         touchedCount = 0;
+      }
+   }
+
+   /// An opened index with the accumulators sized for it. A query uses one snapshot from start
+   /// to end, so document ids always resolve against the index they were read from. The index
+   /// of a document shard (see IndexBuilder) holds the postings of its range of documents only,
+   /// and its accumulators only cover that range.
+   static class Snapshot {
+      final MappedIndex index;
+      final long generation;
+      final long fingerprint;
+      final ThreadLocal<Accumulator> accumulators;
+
+      Snapshot( final MappedIndex index, long generation, long fingerprint, int shard, int shards) {
+         this.index = index;
+         this.generation = generation;
+         this.fingerprint = fingerprint;
+         final int first = IndexBuilder.firstDocument(shard, index.numberOfDocuments(), shards);
+         final int end = IndexBuilder.firstDocument(shard + 1, index.numberOfDocuments(), shards);
+         this.accumulators = new ThreadLocal<Accumulator>() {
+            @Override
+            protected Accumulator initialValue() {
+               return new Accumulator(first, end - first);
+            }
+         };
+      }
+   }
+
+   /// Cached result of a query, documents in the order they were returned
+   static class Result {
+      final int[] docIds;
+      final double[] scores;
+
+      Result( int[] docIds, double[] scores) {
+         this.docIds = docIds;
+         this.scores = scores;
+      }
+   }
+
+   /// Posting list copied out of the mapped files
+   static class CachedPostings implements TopK.PostingList {
+      final int[] docIds;
+      final double[] weights;
+      final double maxWeight;
+
+      CachedPostings( TopK.PostingList list) {
+         docIds = new int[list.size()];
+         weights = new double[list.size()];
+         for (int i = 0; i < docIds.length; i++) {
+            docIds[i] = list.docId(i);
+            weights[i] = list.weight(i);
+         }
+         maxWeight = list.maxWeight();
+      }
+
+      public int size() {
+         return docIds.length;
+      }
+
+      public int docId( int i) {
+         return docIds[i];
+      }
+
+      public double weight( int i) {
+         return weights[i];
+      }
+
+      public double maxWeight() {
+         return maxWeight;
+      }
+   }
+
+   private final File dir;
+   private volatile Snapshot snapshot;
+   private final QueryCache<String, Result> results;
+   private final QueryCache<String, CachedPostings> postings;
+   private final int maxK;
+   private final int shard;
+   private final int shards;
+   private long pendingFingerprint = 0;
+   private final LatencyHistogram latency = new LatencyHistogram();
+
+   /// Serves an index that never changes, without caches
+   public QueryServer( MappedIndex index) {
+      this.dir = null;
+      this.shard = 0;
+      this.shards = 1;
+      this.snapshot = new Snapshot(index, 1, 0, shard, shards);
+      this.results = new QueryCache<String, Result>(QueryCache.Policy.LRU, 0);
+      this.postings = new QueryCache<String, CachedPostings>(QueryCache.Policy.LRU, 0);
+      this.maxK = TopK.DEFAULT_MAX_K;
+   }
+
+   /// Serves the index in dir with the caches configured in conf, and reopens it when a new
+   /// index is copied there if query.cache.refresh is above 0
+   public QueryServer( File dir, Configuration conf) throws IOException {
+      this(dir, conf, 0, 1);
+   }
+
+   /// Serves document shard 'shard' of 'shards' (see IndexBuilder) in dir, with accumulators
+   /// for the documents of that shard only
+   public QueryServer( File dir, Configuration conf, int shard, int shards) throws IOException {
+      QueryCache.Policy policy = QueryCache.Policy.valueOf(conf.get(CACHE_POLICY, "tinylfu").toUpperCase());
+      this.dir = dir;
+      this.shard = shard;
+      this.shards = shards;
+      this.snapshot = new Snapshot(new MappedIndex(dir), 1, fingerprint(dir), shard, shards);
+      this.results = new QueryCache<String, Result>(policy, conf.getLong(CACHE_RESULTS, 1000000));
+      this.postings = new QueryCache<String, CachedPostings>(policy, conf.getLong(CACHE_POSTINGS, 4000000));
+      this.maxK = conf.getInt(TopK.MAX_K, TopK.DEFAULT_MAX_K);
+      long refresh = conf.getLong(CACHE_REFRESH, 10);
+      if (refresh > 0) {
+         ScheduledExecutorService checker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread( Runnable runnable) {
+               Thread thread = new Thread(runnable, "index-refresh");
+               thread.setDaemon(true);
+               return thread;
+            }
+         });
+         checker.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+               refresh();
+            }
+         }, refresh, refresh, TimeUnit.SECONDS);
+      }
+   }
+
+   public MappedIndex index() {
+      return snapshot.index;
+   }
+
+   /// Generation of the index being served, 1 for the index opened first
+   public long generation() {
+      return snapshot.generation;
+   }
+
+   public QueryCache<String, Result> resultCache() {
+      return results;
+   }
+
+   public QueryCache<String, CachedPostings> postingCache() {
+      return postings;
+   }
+
+   /// Opens the index again if its files changed and have not changed since the last check, so
+   /// an index still being copied is not opened. Returns true if a new index is served.
+   public synchronized boolean refresh() {
+      try {
+         long fingerprint = fingerprint(dir);
+         if (fingerprint == snapshot.fingerprint || !new File(dir, "_SUCCESS").exists()) {
+            pendingFingerprint = 0;
+            return false;
+         }
+         if (fingerprint != pendingFingerprint) {
+            pendingFingerprint = fingerprint;
+            return false;
+         }
+         Snapshot next = new Snapshot(new MappedIndex(dir), snapshot.generation + 1, fingerprint, shard, shards);
+         snapshot = next;
+         results.invalidate();
+         postings.invalidate();
+         pendingFingerprint = 0;
+         LOG.info("Serving generation " + next.generation + " of the index, " + next.index.numberOfDocuments()
+               + " documents in " + next.index.numberOfShards() + " shards");
+         return true;
+      } catch (IOException | RuntimeException e) {
+         LOG.warn("Cannot open the index in " + dir + ", still serving generation " + snapshot.generation, e);
+         return false;
+      }
+   }
+
+   /// Names, sizes and modification times of the files in the index folder, hashed
+   static long fingerprint( File dir) {
+      String[] names = dir.list();
+      if (names == null) {
+         return 0;
+      }
+      Arrays.sort(names);
+      long hash = 1125899906842597L;
+      for (String name : names) {
+         File file = new File(dir, name);
+         hash = 31 * hash + name.hashCode();
+         hash = 31 * hash + file.length();
+         hash = 31 * hash + file.lastModified();
+      }
+      return hash;
+   }
+
+   /// Returns the query words lowercased and sorted, repeated words included
+   static String[] normalize( String query) {
+      String[] words = query.trim().toLowerCase().split("\\s+");
+      if (words.length == 1 && words[0].isEmpty()) {
+         return new String[0];
+      }
+      Arrays.sort(words);
+      return words;
+   }
+
+   /// Scores the query words, which are separated by whitespace, and passes every matching
+   /// document to the visitor in document id (filename) order. Returns the number of postings
+   /// read, 0 if the result came from the cache.
+   public long search( String query, ResultVisitor visitor) throws IOException {
+      return search(snapshot, query, visitor);
+   }
+
+   long search( Snapshot snapshot, String query, ResultVisitor visitor) throws IOException {
+      String[] words = normalize(query);
+      String key = null;
+      if (results.isEnabled()) {
+         key = snapshot.generation + " 0 " + String.join(" ", words);
+         Result result = results.get(key);
+         if (result != null) {
+            for (int i = 0; i < result.docIds.length; i++) {
+               visitor.result(result.docIds[i], result.scores[i]);
+            }
+            return 0;
+         }
+      }
+
+      Accumulator accumulator = snapshot.accumulators.get();
+      long postings = 0;
+      try {
+         for (String word : words) {
+            TopK.PostingList list = postingList(snapshot, word, accumulator.postings(0), false);
+            if (list == null) {
+               continue;
+            }
+            int count = list.size();
+            for (int i = 0; i < count; i++) {
+               accumulator.add(list.docId(i), list.weight(i));
+            }
+            postings += count;
+         }
+
+         Arrays.sort(accumulator.touched, 0, accumulator.touchedCount);
+         int[] docIds = key == null ? null : new int[accumulator.touchedCount];
+         double[] scores = key == null ? null : new double[accumulator.touchedCount];
+         for (int i = 0; i < accumulator.touchedCount; i++) {
+            int docId = accumulator.first + accumulator.touched[i];
+            double score = accumulator.scores[accumulator.touched[i]];
+            if (key != null) {
+               docIds[i] = docId;
+               scores[i] = score;
+            }
+            visitor.result(docId, score);
+         }
+         if (key != null && snapshot == this.snapshot) {
+            results.put(key, new Result(docIds, scores), docIds.length + 1);
+         }
+      } finally {
+         accumulator.reset();
+      }
+      return postings;
+   }
+
+   /// Returns the k best documents for the query words, best first, to the visitor. Returns
+   /// the number of postings scored, which MaxScore keeps below the total for broad queries,
+   /// and 0 if the result came from the cache.
+   public long search( String query, int k, TopK.ResultVisitor visitor) throws IOException {
+      return search(snapshot, query, k, visitor);
+   }
+
+   long search( Snapshot snapshot, String query, int k, TopK.ResultVisitor visitor) throws IOException {
+      String[] words = normalize(query);
+      String key = null;
+      if (results.isEnabled()) {
+         key = snapshot.generation + " " + k + " " + String.join(" ", words);
+         Result result = results.get(key);
+         if (result != null) {
+            for (int i = 0; i < result.docIds.length; i++) {
+               visitor.result(result.docIds[i], result.scores[i], null);
+            }
+            return 0;
+         }
+      }
+
+      Accumulator accumulator = snapshot.accumulators.get();
+      TopK.PostingList[] lists = new TopK.PostingList[words.length];
+      for (int i = 0; i < words.length; i++) {
+         lists[i] = postingList(snapshot, words[i], accumulator.postings(i), true);
+      }
+      if (key == null) {
+         return TopK.search(lists, k, visitor);
+      }
+      /// At most as many results as the heap of TopK.search holds, not k
+      final int[] docIds = new int[TopK.capacity(lists, k)];
+      final double[] scores = new double[docIds.length];
+      final int[] n = new int[1];
+      long scored = TopK.search(lists, k, new TopK.ResultVisitor() {
+         public void result( int docId, double score, Object item) {
+            docIds[n[0]] = docId;
+            scores[n[0]++] = score;
+         }
+      });
+      for (int i = 0; i < n[0]; i++) {
+         visitor.result(docIds[i], scores[i], null);
+      }
+      if (snapshot == this.snapshot) {
+         results.put(key, n[0] == docIds.length ? new Result(docIds, scores)
+               : new Result(Arrays.copyOf(docIds, n[0]), Arrays.copyOf(scores, n[0])), n[0] + 1);
+      }
+      return scored;
+   }
+
+   /// Returns the posting list of a lowercased word, from the posting cache if it is there,
+   /// otherwise decoded from the mapped index into the given buffers. Caching a list decodes
+   /// and copies all of it, so for a top-k query (skip set) a list longer than one block is
+   /// not cached and is read from the index, where MaxScore only decodes the blocks it visits.
+   private TopK.PostingList postingList( Snapshot snapshot, String word, InvertedIndex.Postings reuse,
+         boolean skip) {
+      byte[] term = word.getBytes(StandardCharsets.UTF_8);
+      if (!postings.isEnabled()) {
+         return snapshot.index.postingList(term, reuse);
+      }
+      String key = snapshot.generation + " " + word;
+      CachedPostings cached = postings.get(key);
+      if (cached == null) {
+         TopK.PostingList list = snapshot.index.postingList(term, reuse);
+         if (list == null || (skip && list.size() > InvertedIndex.BLOCK)) {
+            return list;
+         }
+         cached = new CachedPostings(list);
+         if (snapshot == this.snapshot) {
+            postings.put(key, cached, cached.size() + 1);
+         }
+      }
+      return cached;
+   }
+
+   /// Serves GET /search?q=words[&k=K], GET /stats, GET /metrics and GET /metrics.json on the
+   /// given port
+   public HttpServer serve( int port, int threads) throws IOException {
+      HttpServer server = HttpServer.create(new InetSocketAddress(port), 1024);
+      server.createContext("/search", new HttpHandler() {
+         public void handle( HttpExchange exchange) throws IOException {
+            long start = System.nanoTime();
+            final Snapshot snapshot = QueryServer.this.snapshot;
+            final MappedIndex index = snapshot.index;
+            String query = parameter(exchange.getRequestURI().getRawQuery(), "q");
+            int k = topK(parameter(exchange.getRequestURI().getRawQuery(), "k"), maxK);
+            boolean valid = query != null && k >= 0;
+            final StringBuilder body = new StringBuilder();
+            if (valid && k > 0) {
+               search(snapshot, query, k, new TopK.ResultVisitor() {
+                  public void result( int docId, double score, Object item) {
+                     body.append(index.document(docId)).append('\t').append(score).append('\n');
+                  }
+               });
+            } else if (valid) {
+               search(snapshot, query, new ResultVisitor() {
+                  public void result( int docId, double score) {
+                     body.append(index.document(docId)).append('\t').append(score).append('\n');
+                  }
+               });
+            }
+            if (valid) {
+               latency.record((System.nanoTime() - start) / 1000);
+            }
+            byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(valid ? 200 : 400, bytes.length == 0 ? -1 : bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+               out.write(bytes);
+            }
+         }
+      });
+      server.createContext("/stats", new HttpHandler() {
+         public void handle( HttpExchange exchange) throws IOException {
+            Snapshot snapshot = QueryServer.this.snapshot;
+            String body = "generation\t" + snapshot.generation + "\n"
+                  + "documents\t" + snapshot.index.numberOfDocuments() + "\n"
+                  + "latency\tqueries=" + latency.count() + " mean=" + String.format("%.1f", latency.mean())
+                  + "us p50=" + latency.percentile(50) + "us p99=" + latency.percentile(99)
+                  + "us max=" + latency.max() + "us\n"
+                  + "results\t" + results.stats() + "\n"
+                  + "postings\t" + postings.stats() + "\n";
+            send(exchange, "text/plain; charset=utf-8", body);
+         }
+      });
+      server.createContext("/metrics", new HttpHandler() {
+         public void handle( HttpExchange exchange) throws IOException {
+            if (exchange.getRequestURI().getPath().equals("/metrics.json")) {
+               send(exchange, "application/json; charset=utf-8", metricsJson());
+            } else {
+               send(exchange, "text/plain; version=0.0.4; charset=utf-8", metricsText());
+            }
+         }
+      });
+      server.setExecutor(Executors.newFixedThreadPool(threads));
+      server.start();
+      return server;
+   }
+
+   private static void send( HttpExchange exchange, String contentType, String body) throws IOException {
+      byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", contentType);
+      exchange.sendResponseHeaders(200, bytes.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+         out.write(bytes);
+      }
+   }
+
+   /// Latencies of the queries answered so far, in microseconds
+   public LatencyHistogram latency() {
+      return latency;
+   }
+
+   /// The metrics in the Prometheus text format
+   public String metricsText() {
+      Snapshot snapshot = this.snapshot;
+      StringBuilder out = new StringBuilder();
+      out.append("# HELP query_latency_microseconds Time from a /search request to the end of its search\n")
+            .append("# TYPE query_latency_microseconds summary\n");
+      for (double quantile : QUANTILES) {
+         out.append("query_latency_microseconds{quantile=\"").append(quantile).append("\"} ")
+               .append(latency.percentile(quantile * 100)).append('\n');
+      }
+      out.append("query_latency_microseconds_sum ").append(latency.sum()).append('\n')
+            .append("query_latency_microseconds_count ").append(latency.count()).append('\n');
+      gauge(out, "query_latency_max_microseconds", "Longest query so far", null, latency.max());
+      cacheMetrics(out, "results", results);
+      cacheMetrics(out, "postings", postings);
+      gauge(out, "index_generation", "Number of times the index was opened", null, snapshot.generation);
+      gauge(out, "index_documents", "Documents in the index", null, snapshot.index.numberOfDocuments());
+      return out.toString();
+   }
+
+   private static void cacheMetrics( StringBuilder out, String cache, QueryCache<?, ?> stats) {
+      String label = "cache=\"" + cache + "\"";
+      counter(out, "query_cache_hits_total", "Cache lookups which found their value", label, stats.hits());
+      counter(out, "query_cache_misses_total", "Cache lookups which did not find their value", label, stats.misses());
+      counter(out, "query_cache_evictions_total", "Entries dropped to make room", label, stats.evictions());
+      counter(out, "query_cache_rejections_total", "New entries TinyLFU did not admit", label, stats.rejections());
+      counter(out, "query_cache_invalidations_total", "Times the cache was emptied for a new index", label,
+            stats.invalidations());
+      gauge(out, "query_cache_hit_ratio", "Fraction of the lookups which found their value", label, stats.hitRatio());
+      gauge(out, "query_cache_entries", "Entries in the cache", label, stats.size());
+      gauge(out, "query_cache_weight", "Results or postings held by the cache", label, stats.weight());
+   }
+
+   private static void counter( StringBuilder out, String name, String help, String label, Number value) {
+      metric(out, name, "counter", help, label, value);
+   }
+
+   private static void gauge( StringBuilder out, String name, String help, String label, Number value) {
+      metric(out, name, "gauge", help, label, value);
+   }
+
+   /// One sample, with the HELP and TYPE lines before the first sample of the metric
+   private static void metric( StringBuilder out, String name, String type, String help, String label, Number value) {
+      if (out.indexOf("# TYPE " + name + " ") < 0) {
+         out.append("# HELP ").append(name).append(' ').append(help).append('\n')
+               .append("# TYPE ").append(name).append(' ').append(type).append('\n');
+      }
+      out.append(name).append(label == null ? "" : "{" + label + "}").append(' ').append(value).append('\n');
+   }
+
+   /// The metrics as JSON
+   public String metricsJson() {
+      Snapshot snapshot = this.snapshot;
+      StringBuilder out = new StringBuilder();
+      out.append("{\n  \"index\": {\"generation\": ").append(snapshot.generation)
+            .append(", \"documents\": ").append(snapshot.index.numberOfDocuments()).append("},\n")
+            .append("  \"latencyMicros\": {\"count\": ").append(latency.count())
+            .append(", \"mean\": ").append(latency.mean());
+      for (int i = 0; i < QUANTILES.length; i++) {
+         out.append(", \"").append(QUANTILE_NAMES[i]).append("\": ").append(latency.percentile(QUANTILES[i] * 100));
+      }
+      out.append(", \"max\": ").append(latency.max()).append("},\n")
+            .append("  \"caches\": {\n    \"results\": ").append(cacheJson(results))
+            .append(",\n    \"postings\": ").append(cacheJson(postings)).append("\n  }\n}\n");
+      return out.toString();
+   }
+
+   private static String cacheJson( QueryCache<?, ?> stats) {
+      return "{\"hits\": " + stats.hits() + ", \"misses\": " + stats.misses() + ", \"hitRatio\": " + stats.hitRatio()
+            + ", \"evictions\": " + stats.evictions() + ", \"rejections\": " + stats.rejections()
+            + ", \"invalidations\": " + stats.invalidations() + ", \"entries\": " + stats.size()
+            + ", \"weight\": " + stats.weight() + ", \"maxWeight\": " + stats.maxWeight() + "}";
+   }
+
+   /// Registers the metrics as the MBean org.myorg:type=QueryServer of the platform MBean server
+   public void registerMBean() throws JMException {
+      StatsMBean stats = new StatsMBean() {
+         public long getGeneration() {
+            return snapshot.generation;
+         }
+         public int getDocuments() {
+            return snapshot.index.numberOfDocuments();
+         }
+         public long getQueries() {
+            return latency.count();
+         }
+         public double getLatencyMeanMicros() {
+            return latency.mean();
+         }
+         public long getLatencyP50Micros() {
+            return latency.percentile(50);
+         }
+         public long getLatencyP90Micros() {
+            return latency.percentile(90);
+         }
+         public long getLatencyP99Micros() {
+            return latency.percentile(99);
+         }
+         public long getLatencyP999Micros() {
+            return latency.percentile(99.9);
+         }
+         public long getLatencyMaxMicros() {
+            return latency.max();
+         }
+         public double getResultCacheHitRatio() {
+            return results.hitRatio();
+         }
+         public long getResultCacheEvictions() {
+            return results.evictions();
+         }
+         public double getPostingCacheHitRatio() {
+            return postings.hitRatio();
+         }
+         public long getPostingCacheEvictions() {
+            return postings.evictions();
+         }
+      };
+      ManagementFactory.getPlatformMBeanServer().registerMBean(new StandardMBean(stats, StatsMBean.class),
+            new ObjectName("org.myorg:type=QueryServer"));
+   }
+
+   /// Returns the k parameter of a /search request: 0 if it is not given, and -1 (answered with
+   /// 400, as a missing q) if it is not a number from 1 to max (search.k.max)
+   static int topK( String k, int max) {
+      if (k == null) {
+         return 0;
+      }
+      try {
+         int value = Integer.parseInt(k.trim());
+         return value >= 1 && value <= max ? value : -1;
+      } catch (NumberFormatException e) {
+         return -1;
+      }
+   }
+
+   /// Returns the decoded value of a parameter of a raw query string, or null
+   static String parameter( String rawQuery, String name) throws IOException {
+      if (rawQuery == null) {
+         return null;
+      }
+      for (String pair : rawQuery.split("&")) {
+         int equals = pair.indexOf('=');
+         if (equals > 0 && pair.substring(0, equals).equals(name)) {
+            return URLDecoder.decode(pair.substring(equals + 1), "UTF-8");
+         }
+      }
+      return null;
+   }
+
+   /// main() method is the starting point of the program
+   public static void main( String[] args) throws Exception {
+      Configuration conf = new Configuration();
+      args = new GenericOptionsParser(conf, args).getRemainingArgs();
+      int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+      int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+      QueryServer server = new QueryServer(new File(args[0]), conf);
+      server.serve(port, threads);
+      server.registerMBean();
+      MappedIndex index = server.index();
+      LOG.info("Serving " + index.numberOfDocuments() + " documents in " + index.numberOfShards()
+            + " shards on port " + port + " with " + threads + " threads");
+   }
+}
@@ -4,7 +4,14 @@
 
 package org.myorg;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Scanner;
 import java.util.regex.Pattern;
@@ -17,12 +24,17 @@ import org.apache.log4j.Logger;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.KeyValueTextInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.util.GenericOptionsParser;
 
@@ -32,6 +44,8 @@ import org.apache.hadoop.util.GenericOptionsParser;
 public class Search extends Configured implements Tool {
 
    private static final Logger LOG = Logger .getLogger( Search.class);
+
+   public static final String INDEX = "search.index";
    
    /// main() method is the starting point of the program
    public static void main( String[] args) throws  Exception {
@@ -44,7 +58,41 @@ public class Search extends Configured implements Tool {
    /// Output Key/Value pair which is Text/DoubleWritable respectively.
    /// Queries passed as command line arguments are extracted and passed as string to
    /// map/reduce functions, where each query is separated by a whitespace
+   ///
+   /// With -D tfidf.format=binary the input is the TermDocWeight SequenceFile written by TFIDF,
+   /// query words are matched exactly against the terms and the output is a block compressed
+   /// SequenceFile of filename/tfidf_sum
+   ///
+   /// With -D search.index=true the input path is an index written by IndexBuilder. No job is
+   /// started; only the posting lists of the query words are read (see searchIndex())
+   ///
+   /// With -D search.incremental=true the input path is the state folder of IncrementalIndex,
+   /// searched in the same way with tfidf values computed from its counts
+   ///
+   /// With -D search.segments=true the input path is a local folder of SegmentIndexer, searched
+   /// in the same way over all of its segments (see SegmentedIndex)
+   ///
+   /// With -D tfidf.bloom=true on the TFIDF job, the map tasks skip the output files which cannot
+   /// hold a query word (see BloomFilter)
+   ///
+   /// With -D search.k=K only the K best scoring files are written, best first. The reducers
+   /// keep them in a bounded heap (see TopK), and the index search skips postings which cannot
+   /// reach the top K. K above -D search.k.max (default 10000) is refused, as the heap is
+   /// allocated for all K before anything is scored.
    public int run( String[] args) throws  Exception {
+
+      if (getConf().getBoolean(INDEX, false)) {
+         return searchIndex(new InvertedIndex(getConf(), new Path(args[0])),
+               new Path(args[1] + "/search"), Arrays.copyOfRange(args, 2, args.length));
+      }
+      if (getConf().getBoolean(IncrementalState.INCREMENTAL, false)) {
+         return searchIndex(new IncrementalState(getConf(), new Path(args[0])),
+               new Path(args[1] + "/search"), Arrays.copyOfRange(args, 2, args.length));
+      }
+      if (getConf().getBoolean(SegmentedIndex.SEGMENTS, false)) {
+         return searchIndex(new SegmentedIndex(new File(args[0])),
+               new Path(args[1] + "/search"), Arrays.copyOfRange(args, 2, args.length));
+      }
 	  
       Job job  = Job .getInstance(getConf(), " search ");
       job.setJarByClass( this .getClass());
@@ -61,13 +109,128 @@ public class Search extends Configured implements Tool {
     	  queries += args[i] + " ";
       }
       job.getConfiguration().set("queries", queries);
+
+      if (TermDocWeight.isBinary(job.getConfiguration())) {
+         Path documents = DocumentInputFormat.documentsPath(job.getConfiguration(), new Path(args[0]));
+         job.getConfiguration().set(DocumentInputFormat.DOCUMENTS_PATH, documents.toString());
+         job.setInputFormatClass( SequenceFileInputFormat .class);
+         job.setMapperClass( BinaryMap .class);
+         job.setReducerClass( BinaryReduce .class);
+         job.setMapOutputKeyClass( IntWritable .class);
+         job.setMapOutputValueClass( DoubleWritable .class);
+         TermDocWeight.setBinaryOutput(job);
+      }
+
+      /// With several reducers each one writes its own top k, and a second job with a single
+      /// reducer merges them into the final top k
+      int k = TopK.k(job.getConfiguration());
+      if (k > 0 && job.getNumReduceTasks() > 1) {
+         Path partial = new Path(args[1] + "/search-partial");
+         FileOutputFormat.setOutputPath(job, partial);
+         if (!Metrics.waitForCompletion(job, "search")) {
+            return 1;
+         }
+         int res = mergeTopK(partial, new Path(args[1] + "/search"));
+         partial.getFileSystem(getConf()).delete(partial, true);
+         return res;
+      }
       
-      return job.waitForCompletion( true)  ? 0 : 1;
+      return Metrics.waitForCompletion(job, "search") ? 0 : 1;
+   }
+
+   /// Merges the per reducer top k lists of the search job. Every filename appears in only
+   /// one of them, so the Reduce class, run as the only reducer, just keeps the best k.
+   private int mergeTopK( Path partial, Path output) throws Exception {
+      Job job  = Job .getInstance(getConf(), " search topk ");
+      job.setJarByClass( this .getClass());
+      FileInputFormat.addInputPath(job, partial);
+      FileOutputFormat.setOutputPath(job, output);
+      if (TermDocWeight.isBinary(job.getConfiguration())) {
+         job.setInputFormatClass( SequenceFileInputFormat .class);
+         job.setMapperClass( Mapper .class);
+         TermDocWeight.setBinaryOutput(job);
+      } else {
+         job.setInputFormatClass( KeyValueTextInputFormat .class);
+         job.setMapperClass( ScoreMap .class);
+      }
+      job.setReducerClass( Reduce .class);
+      job.setNumReduceTasks(1);
+      job.setOutputKeyClass( Text .class);
+      job.setOutputValueClass( DoubleWritable .class);
+      return Metrics.waitForCompletion(job, "search-topk") ? 0 : 1;
+   }
+
+   /// Searches an inverted index. Each query word is lowercased and looked up in its shard,
+   /// and the tfidf values of its postings are added to the score of their documents. Words
+   /// are matched exactly, so 'data' does not match 'database' as it does in the scan. The
+   /// output has the same 'filename	tfidf_sum' lines as the job, sorted by filename, in
+   /// OUTPUT_PATH/search/part-r-00000. With search.k the k best files are found with MaxScore
+   /// and written best first.
+   private int searchIndex( IndexReader invertedIndex, Path output, String[] queries) throws IOException {
+      final List<String> documents = invertedIndex.documents();
+      int k = TopK.k(getConf());
+
+      FileSystem fs = output.getFileSystem(getConf());
+      if (fs.exists(output)) {
+         throw new IOException("Output directory " + output + " already exists");
+      }
+      long postings = 0;
+      try (final Writer out = new OutputStreamWriter(fs.create(new Path(output, "part-r-00000")),
+            StandardCharsets.UTF_8)) {
+         if (k > 0) {
+            TopK.PostingList[] lists = new TopK.PostingList[queries.length];
+            for (int i = 0; i < queries.length; i++) {
+               if (!queries[i].isEmpty()) {
+                  lists[i] = invertedIndex.postingList(queries[i].toLowerCase());
+               }
+            }
+            postings = TopK.search(lists, k, new TopK.ResultVisitor() {
+               public void result( int docId, double score, Object item) throws IOException {
+                  out.write(documents.get(docId) + "\t" + score + "\n");
+               }
+            });
+         } else {
+            final double[] scores = new double[documents.size()];
+            final boolean[] matched = new boolean[documents.size()];
+            for (String q : queries) {
+               if (q.isEmpty()) {
+                  continue;
+               }
+               postings += invertedIndex.postings(q.toLowerCase(), new InvertedIndex.PostingVisitor() {
+                  public void visit( int docId, double weight) {
+                     scores[docId] += weight;
+                     matched[docId] = true;
+                  }
+               });
+            }
+
+            /// Document ids follow the sorted document names, so this is filename order (for
+            /// IncrementalState and SegmentedIndex it is the order the documents were added in)
+            for (int docId = 0; docId < scores.length; docId++) {
+               if (matched[docId]) {
+                  out.write(documents.get(docId) + "\t" + scores[docId] + "\n");
+               }
+            }
+         }
+      } finally {
+         invertedIndex.close();
+      }
+      LOG.info("Read " + postings + " postings for " + queries.length + " query words");
+      return 0;
    }
    
    /// This is the Mapper class which hosts the map function. Here, the input is taken from the
    /// input path (Output of TFIDF calculation) specified and is processed and passed to reduce function
    public static class Map extends Mapper<LongWritable ,  Text ,  Text ,  DoubleWritable > {
+
+	  /// A split whose BloomFilter rules out every query word is skipped without reading it
+	  @Override
+	  public void run( Context context) throws IOException, InterruptedException {
+		  List<String> queries = Arrays.asList(context.getConfiguration().get("queries").split(" "));
+		  if (!BloomFilter.skip(context, context.getInputSplit(), queries)) {
+			  super.run(context);
+		  }
+	  }
 	  
 	  public void map( LongWritable offset,  Text lineText,  Context context)
 		        throws  IOException,  InterruptedException {
@@ -82,12 +245,24 @@ public class Search extends Configured implements Tool {
 				  /// After the split, we get 'word' and 'filename	tfidf_value'
 				  String[] word_value = lineText.toString().split("#####");
 				  
-				  /// 'filename	tfidf_value' are also split
-				  String[] filename_tfidf = word_value[1].toString().split("\\b(\\s*\\t+)\\b");
+				  /// 'filename	tfidf_value' are also split. A line which does not split into both
+				  /// parts or has no number as its tfidf value is counted and skipped.
+				  String[] filename_tfidf = word_value.length < 2 ? word_value
+					  : word_value[1].toString().split("\\b(\\s*\\t+)\\b");
+				  double tfidf;
+				  try {
+					  tfidf = filename_tfidf.length < 2 ? Double.NaN : Double.parseDouble(filename_tfidf[1]);
+				  } catch (NumberFormatException e) {
+					  tfidf = Double.NaN;
+				  }
+				  if (Double.isNaN(tfidf)) {
+					  context.getCounter(Metrics.Counters.PARSE_FAILURES).increment(1);
+					  continue;
+				  }
 				  
 				  /// filename is converted to Text and tfidf_value is converted to DoubleWritable
 				  /// and passed to reduce function
-				  context.write(new Text(filename_tfidf[0]), new DoubleWritable(Double.parseDouble(filename_tfidf[1])));
+				  context.write(new Text(filename_tfidf[0]), new DoubleWritable(tfidf));
 			  }
 			  
 		  }
@@ -98,6 +273,17 @@ public class Search extends Configured implements Tool {
    /// This is the Reducer class which hosts the reduce function. Here, the input is received
    /// from the map function, and the output is stored into the path specified
    public static class Reduce extends Reducer<Text ,  DoubleWritable ,  Text ,  DoubleWritable > {
+	   /// Holds the best files when search.k is set, null otherwise
+	   private TopK.Heap heap;
+	   private int order = 0;
+
+	   @Override
+	   protected void setup( Context context) throws IOException, InterruptedException {
+		   int k = TopK.k(context.getConfiguration());
+		   if (k > 0) {
+			   heap = new TopK.Heap(k);
+		   }
+	   }
 	   
 	   @Override
 	   public void reduce( Text word,  Iterable<DoubleWritable > counts,  Context context)
@@ -109,8 +295,130 @@ public class Search extends Configured implements Tool {
 			   sum += count.get();
 		   }
 		   
-		   /// The output is generated as word	tfidf_sum
+		   /// The output is generated as word	tfidf_sum. With search.k the file is only
+		   /// offered to the heap, and files are numbered in key order to break ties
+		   if (heap != null) {
+			   heap.add(sum, order++, word.toString());
+			   return;
+		   }
 		   context.write(word, new DoubleWritable(sum));
 	   }
+
+	   /// Writes the best files, best first
+	   @Override
+	   protected void cleanup( Context context) throws IOException, InterruptedException {
+		   if (heap != null) {
+			   writeTopK(heap, context);
+		   }
+	   }
+   }
+
+   /// Writes the (filename, score) entries of a heap to the reducer output, best first
+   static void writeTopK( TopK.Heap heap, final Reducer<?, ?, Text, DoubleWritable>.Context context)
+		   throws IOException {
+	   heap.drain(new TopK.ResultVisitor() {
+		   public void result( int id, double score, Object filename) throws IOException {
+			   try {
+				   context.write(new Text((String) filename), new DoubleWritable(score));
+			   } catch (InterruptedException e) {
+				   throw new IOException(e);
+			   }
+		   }
+	   });
+   }
+
+   /// This is the Mapper class of the top k merge job for text output. It turns the
+   /// 'filename	tfidf_sum' lines back into Text/DoubleWritable pairs for Reduce
+   public static class ScoreMap extends Mapper<Text ,  Text ,  Text ,  DoubleWritable > {
+	  private DoubleWritable score = new DoubleWritable();
+
+	  public void map( Text filename,  Text value,  Context context)
+		        throws  IOException,  InterruptedException {
+		  score.set(Double.parseDouble(value.toString()));
+		  context.write(filename, score);
+	  }
+   }
+
+   /// This is the Mapper class for the binary format. The query words are parsed once per task
+   /// into a set, and each record is matched by comparing its term bytes with the set, so no
+   /// line is converted to a String or parsed. The output is <docId, tfidf>
+   public static class BinaryMap extends Mapper<TermDocWeight ,  NullWritable ,  IntWritable ,  DoubleWritable > {
+	  private HashSet<Text> queries = new HashSet<Text>();
+	  private IntWritable docId = new IntWritable();
+	  private DoubleWritable tfidf = new DoubleWritable();
+
+	  @Override
+	  protected void setup( Context context) throws IOException, InterruptedException {
+		  for (String q : context.getConfiguration().get("queries").split(" ")) {
+			  if (!q.isEmpty()) {
+				  queries.add(new Text(q.toLowerCase()));
+			  }
+		  }
+	  }
+
+	  /// A split whose BloomFilter has none of the query terms is skipped without reading it
+	  @Override
+	  public void run( Context context) throws IOException, InterruptedException {
+		  List<String> terms = new ArrayList<String>();
+		  for (String q : context.getConfiguration().get("queries").split(" ")) {
+			  if (!q.isEmpty()) {
+				  terms.add(q.toLowerCase());
+			  }
+		  }
+		  if (!BloomFilter.skip(context, context.getInputSplit(), terms)) {
+			  super.run(context);
+		  }
+	  }
+
+	  public void map( TermDocWeight record,  NullWritable nothing,  Context context)
+		        throws  IOException,  InterruptedException {
+		  if (queries.contains(record.getTerm())) {
+			  docId.set(record.getDocId());
+			  tfidf.set(record.getWeight());
+			  context.write(docId, tfidf);
+		  }
+	  }
+   }
+
+   /// This is the Reducer class for the binary format. The tfidf values are summed as in Reduce
+   /// and the document id is turned back into the filename for the output
+   public static class BinaryReduce extends Reducer<IntWritable ,  DoubleWritable ,  Text ,  DoubleWritable > {
+	   private List<String> documents;
+	   private Text filename = new Text();
+	   private DoubleWritable total = new DoubleWritable();
+	   private TopK.Heap heap;
+
+	   @Override
+	   protected void setup( Context context) throws IOException, InterruptedException {
+		   documents = DocumentInputFormat.readDocuments(context.getConfiguration(),
+				   new Path(context.getConfiguration().get(DocumentInputFormat.DOCUMENTS_PATH)));
+		   int k = TopK.k(context.getConfiguration());
+		   if (k > 0) {
+			   heap = new TopK.Heap(k);
+		   }
+	   }
+
+	   @Override
+	   public void reduce( IntWritable docId,  Iterable<DoubleWritable > counts,  Context context)
+		         throws IOException,  InterruptedException {
+		   double sum = 0.0;
+		   for (DoubleWritable count : counts ) {
+			   sum += count.get();
+		   }
+		   if (heap != null) {
+			   heap.add(sum, docId.get(), documents.get(docId.get()));
+			   return;
+		   }
+		   filename.set(documents.get(docId.get()));
+		   total.set(sum);
+		   context.write(filename, total);
+	   }
+
+	   @Override
+	   protected void cleanup( Context context) throws IOException, InterruptedException {
+		   if (heap != null) {
+			   writeTopK(heap, context);
+		   }
+	   }
    }
 }
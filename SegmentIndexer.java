@@ -0,0 +1,723 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.util.GenericOptionsParser;
+import org.apache.hadoop.util.LineReader;
+import org.apache.log4j.Logger;
+
+/// SegmentIndexer indexes documents as they arrive and makes them searchable within seconds,
+/// without a job. Documents come from a folder it watches and from HTTP, are tokenized line by
+/// line with the Tokenizer of TermFrequency.Map (the same lines, words and tokenizer.* options)
+/// and their word counts are buffered in memory. Every segments.flush.seconds the buffer is
+/// written as a new immutable segment (see SegmentedIndex) and searches see it from then on.
+///
+/// $ java -cp <filename>.jar:<hadoop jars> org.myorg.SegmentIndexer [-D option=value ...] LOCAL_INDEX PORT [INPUT_PATH]
+/// $ curl --data-binary @notes.txt 'http://localhost:8080/documents?name=notes.txt'
+/// $ curl 'http://localhost:8080/search?q=computer+science&k=10'
+/// $ curl 'http://localhost:8080/stats'
+///
+/// A file of INPUT_PATH (any Hadoop file system) is added once its length and modification time
+/// stayed the same for one watch interval, so files still being copied are not read half way.
+/// Files starting with '_' or '.' are skipped, as by FileInputFormat. The name of a document is
+/// its file name, or the name given to /documents; a name already in the index is not added
+/// again (documents cannot be changed or removed).
+///
+/// Every flush adds a segment, and a query reads every segment, so a merge thread keeps their
+/// number down: segments are put in tiers by their number of documents (tier t holds
+/// segments.merge.factor^t up to segments.merge.factor^(t+1) - 1 documents), and a run of
+/// segments.merge.factor neighbouring segments of the same tier is merged into one of the next
+/// tier. Only neighbours are merged, so document ids keep their order. Should there still be
+/// more than segments.max segments, the neighbours with the fewest documents are merged. A
+/// merge writes a new segment next to the old ones and swaps it in, queries running on the old
+/// segments finish on them. The old segments are deleted by the next merge (or the next start),
+/// so a Search which read the manifest just before the swap can still open them.
+///
+/// The manifest lists the segments searches use, and is replaced in one rename, so LOCAL_INDEX
+/// can be searched by Search -D search.segments=true while the indexer runs. Documents still
+/// in the buffer when the process is killed are lost; on a normal shutdown they are flushed,
+/// and files of INPUT_PATH are picked up again on the next start.
+///
+/// -D segments.flush.seconds=S   - seconds between flushes (default 1)
+/// -D segments.flush.postings=N  - flush early when N postings are buffered (default 1000000)
+/// -D segments.watch.seconds=S   - seconds between looks at INPUT_PATH (default 1)
+/// -D segments.merge.factor=F    - segments merged at a time (default 10)
+/// -D segments.max=M             - most segments before the smallest are merged (default 30)
+/// -D search.k.max=K             - largest k of a /search request, a larger one is answered with 400 (default 10000)
+public class SegmentIndexer implements Closeable {
+
+   private static final Logger LOG = Logger .getLogger( SegmentIndexer.class);
+
+   public static final String FLUSH_SECONDS = "segments.flush.seconds";
+   public static final String FLUSH_POSTINGS = "segments.flush.postings";
+   public static final String WATCH_SECONDS = "segments.watch.seconds";
+   public static final String MERGE_FACTOR = "segments.merge.factor";
+   public static final String MAX_SEGMENTS = "segments.max";
+
+   /// Segments store the counts exactly
+   private static final int WEIGHT_BITS = 64;
+
+   /// The documents added since the last flush: their names, and for every term the pairs of
+   /// (document number in the buffer, count)
+   private static class Buffer {
+      final List<String> documents = new ArrayList<String>();
+      final TermTable terms = new TermTable();
+      int[][] postings = new int[256][];
+      int[] sizes = new int[256];
+      long postingCount = 0;
+
+      void add( String name, TermTable counts) {
+         int docId = documents.size();
+         documents.add(name);
+         for (int id = 0; id < counts.size(); id++) {
+            append(terms.intern(counts.bytes(), counts.start(id), counts.length(id)), docId, counts.count(id));
+         }
+         postingCount += counts.size();
+      }
+
+      /// Adds the documents of another buffer after the ones of this one
+      void addAll( Buffer other) {
+         int base = documents.size();
+         documents.addAll(other.documents);
+         for (int id = 0; id < other.terms.size(); id++) {
+            int term = terms.intern(other.terms.bytes(), other.terms.start(id), other.terms.length(id));
+            for (int i = 0; i < other.sizes[id]; i += 2) {
+               append(term, base + other.postings[id][i], other.postings[id][i + 1]);
+            }
+         }
+         postingCount += other.postingCount;
+      }
+
+      private void append( int term, int docId, int count) {
+         if (term == postings.length) {
+            postings = Arrays.copyOf(postings, 2 * term);
+            sizes = Arrays.copyOf(sizes, 2 * term);
+         }
+         if (postings[term] == null) {
+            postings[term] = new int[4];
+         } else if (sizes[term] == postings[term].length) {
+            postings[term] = Arrays.copyOf(postings[term], 2 * sizes[term]);
+         }
+         postings[term][sizes[term]++] = docId;
+         postings[term][sizes[term]++] = count;
+      }
+   }
+
+   private final File dir;
+   private final Configuration conf;
+   private final FileSystem local;
+   private final Path input;
+   private final long flushPostings;
+   private final int mergeFactor;
+   private final int maxSegments;
+   private final int maxK;
+   private final ThreadLocal<Tokenizer> tokenizers;
+   private final ScheduledExecutorService flusher;
+   private final ScheduledExecutorService merger;
+
+   /// Names of every document in the segments or the buffer
+   private final HashSet<String> known = new HashSet<String>();
+   private Buffer buffer = new Buffer();
+   private volatile SegmentedIndex index;
+   private int nextSegment = 0;
+   private long flushes = 0;
+   private long merges = 0;
+
+   /// Segments merged away by the last merge, deleted by the next one. Only used by the merge
+   /// thread.
+   private String[] retired = new String[0];
+
+   /// Files of INPUT_PATH seen at the last look which are not added yet, with their length and
+   /// modification time then. Only used by the flush thread.
+   private final HashMap<String, String> pending = new HashMap<String, String>();
+
+   /// Opens or creates the index in dir and starts flushing, merging and, if input is not
+   /// null, watching input
+   public SegmentIndexer( File dir, Path input, final Configuration conf) throws IOException {
+      this.dir = dir;
+      this.conf = conf;
+      this.input = input;
+      this.local = FileSystem.getLocal(conf).getRawFileSystem();
+      this.flushPostings = conf.getLong(FLUSH_POSTINGS, 1000000);
+      this.mergeFactor = Math.max(2, conf.getInt(MERGE_FACTOR, 10));
+      this.maxSegments = Math.max(mergeFactor, conf.getInt(MAX_SEGMENTS, 30));
+      this.maxK = conf.getInt(TopK.MAX_K, TopK.DEFAULT_MAX_K);
+      this.tokenizers = new ThreadLocal<Tokenizer>() {
+         @Override
+         protected Tokenizer initialValue() {
+            return new Tokenizer(conf);
+         }
+      };
+      if (!dir.isDirectory() && !dir.mkdirs()) {
+         throw new IOException("Cannot create " + dir);
+      }
+
+      /// Segments which are not in the manifest were being written or merged away when the
+      /// last process stopped
+      String[] names = SegmentedIndex.readManifest(dir);
+      HashSet<String> live = new HashSet<String>(Arrays.asList(names));
+      File[] files = dir.listFiles();
+      for (File file : files == null ? new File[0] : files) {
+         if (file.getName().startsWith("seg-")) {
+            if (!live.contains(file.getName())) {
+               FileUtil.fullyDelete(file);
+            } else {
+               nextSegment = Math.max(nextSegment, Integer.parseInt(file.getName().substring(4)) + 1);
+            }
+         }
+      }
+      index = new SegmentedIndex(dir);
+      known.addAll(index.documents());
+      LOG.info("Opened " + index.numberOfSegments() + " segments with " + index.numberOfDocuments()
+            + " documents in " + dir);
+
+      flusher = Executors.newSingleThreadScheduledExecutor(daemon("segment-flush"));
+      merger = Executors.newSingleThreadScheduledExecutor(daemon("segment-merge"));
+      long flushMillis = (long) (1000 * conf.getDouble(FLUSH_SECONDS, 1.0));
+      flusher.scheduleWithFixedDelay(new Runnable() {
+         public void run() {
+            try {
+               flush();
+            } catch (IOException e) {
+               LOG.error("Flush failed, the documents stay buffered", e);
+            }
+         }
+      }, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+      merger.scheduleWithFixedDelay(new Runnable() {
+         public void run() {
+            try {
+               while (merge()) {
+               }
+            } catch (IOException e) {
+               LOG.error("Merge failed", e);
+            }
+         }
+      }, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+      if (input != null) {
+         long watchMillis = (long) (1000 * conf.getDouble(WATCH_SECONDS, 1.0));
+         flusher.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+               try {
+                  watch();
+               } catch (IOException e) {
+                  LOG.error("Cannot read " + SegmentIndexer.this.input, e);
+               }
+            }
+         }, 0, watchMillis, TimeUnit.MILLISECONDS);
+      }
+   }
+
+   private static ThreadFactory daemon( final String name) {
+      return new ThreadFactory() {
+         public Thread newThread( Runnable runnable) {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+         }
+      };
+   }
+
+   /// The segments searches use now
+   public SegmentedIndex index() {
+      return index;
+   }
+
+   /// Tokenizes a document and buffers its counts. Returns false, without reading it, if a
+   /// document of that name is in the index already.
+   public boolean add( String name, InputStream in) throws IOException {
+      if (name.isEmpty() || name.indexOf('\n') >= 0 || name.indexOf('\r') >= 0) {
+         throw new IllegalArgumentException("Not a document name: '" + name + "'");
+      }
+      synchronized (this) {
+         if (!known.add(name)) {
+            return false;
+         }
+      }
+      TermTable counts = new TermTable();
+      try {
+         Tokenizer tokenizer = tokenizers.get();
+         LineReader lines = new LineReader(in, conf);
+         Text line = new Text();
+         while (lines.readLine(line) > 0) {
+            tokenizer.reset(line);
+            while (tokenizer.next()) {
+               counts.add(tokenizer.bytes(), tokenizer.start(), tokenizer.length());
+            }
+         }
+      } catch (IOException e) {
+         synchronized (this) {
+            known.remove(name);
+         }
+         throw e;
+      }
+      boolean full;
+      synchronized (this) {
+         buffer.add(name, counts);
+         full = buffer.postingCount >= flushPostings;
+      }
+      if (full) {
+         flusher.execute(new Runnable() {
+            public void run() {
+               try {
+                  flush();
+               } catch (IOException e) {
+                  LOG.error("Flush failed, the documents stay buffered", e);
+               }
+            }
+         });
+      }
+      return true;
+   }
+
+   /// Adds the files of INPUT_PATH which are new and did not change since the last look
+   void watch() throws IOException {
+      FileSystem fs = input.getFileSystem(conf);
+      for (FileStatus file : fs.listStatus(input)) {
+         String name = file.getPath().getName();
+         if (!file.isFile() || name.startsWith("_") || name.startsWith(".")) {
+            continue;
+         }
+         synchronized (this) {
+            if (known.contains(name)) {
+               pending.remove(name);
+               continue;
+            }
+         }
+         String stamp = file.getLen() + " " + file.getModificationTime();
+         if (!stamp.equals(pending.put(name, stamp))) {
+            continue;
+         }
+         pending.remove(name);
+         try (InputStream in = fs.open(file.getPath())) {
+            add(name, in);
+         }
+      }
+   }
+
+   /// Writes the buffered documents as a new segment and makes them searchable. After a failed
+   /// flush the documents are put back in front of the buffer for the next one.
+   public void flush() throws IOException {
+      Buffer full;
+      String name;
+      synchronized (this) {
+         if (buffer.documents.isEmpty()) {
+            return;
+         }
+         full = buffer;
+         buffer = new Buffer();
+         name = String.format("seg-%08d", nextSegment++);
+      }
+      long start = System.currentTimeMillis();
+      MappedIndex segment;
+      try {
+         segment = writeSegment(name, full);
+      } catch (IOException e) {
+         synchronized (this) {
+            full.addAll(buffer);
+            buffer = full;
+         }
+         throw e;
+      }
+      synchronized (this) {
+         int n = index.numberOfSegments();
+         String[] names = Arrays.copyOf(index.names(), n + 1);
+         MappedIndex[] segments = new MappedIndex[n + 1];
+         for (int i = 0; i < n; i++) {
+            segments[i] = index.segment(i);
+         }
+         names[n] = name;
+         segments[n] = segment;
+         publish(names, segments);
+         flushes++;
+      }
+      LOG.info("Flushed " + full.documents.size() + " documents with " + full.postingCount + " postings to "
+            + name + " in " + (System.currentTimeMillis() - start) + " ms");
+   }
+
+   private MappedIndex writeSegment( String name, final Buffer buffer) throws IOException {
+      File tmp = new File(dir, name + ".tmp");
+      final TermTable terms = buffer.terms;
+      Integer[] order = new Integer[terms.size()];
+      for (int i = 0; i < order.length; i++) {
+         order[i] = i;
+      }
+      Arrays.sort(order, new Comparator<Integer>() {
+         public int compare( Integer a, Integer b) {
+            return WritableComparator.compareBytes(terms.bytes(), terms.start(a), terms.length(a),
+                  terms.bytes(), terms.start(b), terms.length(b));
+         }
+      });
+      Text term = new Text();
+      try (InvertedIndex.ShardWriter writer = new InvertedIndex.ShardWriter(local, new Path(tmp.getPath()), 0, WEIGHT_BITS)) {
+         for (int id : order) {
+            term.set(terms.bytes(), terms.start(id), terms.length(id));
+            writer.startTerm(term);
+            int[] postings = buffer.postings[id];
+            for (int i = 0; i < buffer.sizes[id]; i += 2) {
+               writer.addPosting(postings[i], postings[i + 1]);
+            }
+            writer.endTerm();
+         }
+      }
+      return finish(tmp, name, buffer.documents);
+   }
+
+   /// Writes the documents of a segment written to tmp and renames it to its name
+   private MappedIndex finish( File tmp, String name, List<String> documents) throws IOException {
+      try (Writer out = new OutputStreamWriter(new FileOutputStream(new File(tmp, "documents")),
+            StandardCharsets.UTF_8)) {
+         for (String document : documents) {
+            out.write(document);
+            out.write('\n');
+         }
+      }
+      File segment = new File(dir, name);
+      Files.move(tmp.toPath(), segment.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      return new MappedIndex(segment);
+   }
+
+   /// Writes the manifest and switches searches to the given segments. Called holding the lock.
+   private void publish( String[] names, MappedIndex[] segments) throws IOException {
+      File tmp = new File(dir, SegmentedIndex.MANIFEST + ".tmp");
+      try (Writer out = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+         for (String name : names) {
+            out.write(name);
+            out.write('\n');
+         }
+      }
+      Files.move(tmp.toPath(), new File(dir, SegmentedIndex.MANIFEST).toPath(), StandardCopyOption.ATOMIC_MOVE);
+      index = new SegmentedIndex(names, segments);
+   }
+
+   /// Picks segments to merge from their numbers of documents: the oldest run of 'factor'
+   /// neighbours of the same tier, else, with more than 'max' segments, the 'factor' neighbours
+   /// with the fewest documents. Returns { from, to } (exclusive), or null.
+   static int[] selectMerge( int[] documents, int factor, int max) {
+      int runStart = 0;
+      for (int i = 1; i <= documents.length; i++) {
+         if (i == documents.length || tier(documents[i], factor) != tier(documents[runStart], factor)) {
+            if (i - runStart >= factor) {
+               return new int[] { runStart, runStart + factor };
+            }
+            runStart = i;
+         }
+      }
+      if (documents.length <= max) {
+         return null;
+      }
+      int best = 0;
+      long bestSum = Long.MAX_VALUE;
+      long sum = 0;
+      for (int i = 0; i < documents.length; i++) {
+         sum += documents[i];
+         if (i >= factor) {
+            sum -= documents[i - factor];
+         }
+         if (i >= factor - 1 && sum < bestSum) {
+            bestSum = sum;
+            best = i - factor + 1;
+         }
+      }
+      return new int[] { best, best + factor };
+   }
+
+   private static int tier( int documents, int factor) {
+      int tier = 0;
+      while (documents >= factor) {
+         documents /= factor;
+         tier++;
+      }
+      return tier;
+   }
+
+   /// Merges one group of segments if the policy finds one. Returns true if it did.
+   boolean merge() throws IOException {
+      SegmentedIndex current = index;
+      int[] documents = new int[current.numberOfSegments()];
+      for (int i = 0; i < documents.length; i++) {
+         documents[i] = current.segment(i).numberOfDocuments();
+      }
+      int[] range = selectMerge(documents, mergeFactor, maxSegments);
+      if (range == null) {
+         return false;
+      }
+      long start = System.currentTimeMillis();
+      int from = range[0];
+      int to = range[1];
+      String name;
+      synchronized (this) {
+         name = String.format("seg-%08d", nextSegment++);
+      }
+      File tmp = new File(dir, name + ".tmp");
+
+      int n = to - from;
+      InvertedIndex.Terms[] terms = new InvertedIndex.Terms[n];
+      boolean[] active = new boolean[n];
+      int[] bases = new int[n];
+      List<String> names = new ArrayList<String>();
+      for (int i = 0; i < n; i++) {
+         MappedIndex segment = current.segment(from + i);
+         terms[i] = segment.terms(0);
+         active[i] = terms[i].next();
+         bases[i] = names.size();
+         for (int docId = 0; docId < segment.numberOfDocuments(); docId++) {
+            names.add(segment.document(docId));
+         }
+      }
+      Text term = new Text();
+      long postings = 0;
+      try (InvertedIndex.ShardWriter writer = new InvertedIndex.ShardWriter(local, new Path(tmp.getPath()), 0, WEIGHT_BITS)) {
+         while (true) {
+            int min = -1;
+            for (int i = 0; i < n; i++) {
+               if (active[i] && (min < 0 || WritableComparator.compareBytes(terms[i].term(), 0, terms[i].length(),
+                     terms[min].term(), 0, terms[min].length()) < 0)) {
+                  min = i;
+               }
+            }
+            if (min < 0) {
+               break;
+            }
+            term.set(terms[min].term(), 0, terms[min].length());
+            writer.startTerm(term);
+            /// The older segments come first, as their document ids are smaller
+            for (int i = min; i < n; i++) {
+               if (active[i] && WritableComparator.compareBytes(terms[i].term(), 0, terms[i].length(),
+                     term.getBytes(), 0, term.getLength()) == 0) {
+                  TopK.PostingList list = terms[i].postings();
+                  for (int j = 0; j < list.size(); j++) {
+                     writer.addPosting(bases[i] + list.docId(j), list.weight(j));
+                  }
+                  postings += list.size();
+                  active[i] = terms[i].next();
+               }
+            }
+            writer.endTerm();
+         }
+      }
+      MappedIndex merged = finish(tmp, name, names);
+
+      String[] old;
+      synchronized (this) {
+         /// Flushes only add segments at the end, so the merged ones are still where they were
+         SegmentedIndex latest = index;
+         String[] latestNames = latest.names();
+         int total = latestNames.length - n + 1;
+         String[] newNames = new String[total];
+         MappedIndex[] segments = new MappedIndex[total];
+         for (int i = 0, j = 0; i < latestNames.length; i++) {
+            if (i < from || i >= to) {
+               newNames[j] = latestNames[i];
+               segments[j++] = latest.segment(i);
+            } else if (i == from) {
+               newNames[j] = name;
+               segments[j++] = merged;
+            }
+         }
+         old = Arrays.copyOfRange(latestNames, from, to);
+         publish(newNames, segments);
+         merges++;
+      }
+      /// Queries still reading the old segments keep their mappings. A Search process may have
+      /// read the manifest which lists them without opening them yet, so they are only deleted
+      /// after the next merge, and the segments of the merge before go now.
+      for (String segment : retired) {
+         FileUtil.fullyDelete(new File(dir, segment));
+      }
+      retired = old;
+      LOG.info("Merged " + Arrays.toString(old) + " (" + names.size() + " documents, " + postings + " postings) into "
+            + name + " in " + (System.currentTimeMillis() - start) + " ms");
+      return true;
+   }
+
+   /// Number of documents added but not flushed yet
+   public synchronized int buffered() {
+      return buffer.documents.size();
+   }
+
+   /// Stops watching and merging, once a merge which is running has finished, and flushes the
+   /// buffer
+   @Override
+   public void close() throws IOException {
+      flusher.shutdown();
+      merger.shutdown();
+      try {
+         flusher.awaitTermination(1, TimeUnit.MINUTES);
+         merger.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+      flush();
+   }
+
+   /// Serves POST /documents?name=NAME (the document as the request body), GET
+   /// /search?q=words[&k=K] and GET /stats on the given port
+   public HttpServer serve( int port, int threads) throws IOException {
+      HttpServer server = HttpServer.create(new InetSocketAddress(port), 1024);
+      server.createContext("/documents", new HttpHandler() {
+         public void handle( HttpExchange exchange) throws IOException {
+            String name = QueryServer.parameter(exchange.getRequestURI().getRawQuery(), "name");
+            if (!exchange.getRequestMethod().equals("POST") || name == null) {
+               send(exchange, 400, "POST a document to /documents?name=NAME\n");
+               return;
+            }
+            byte[] body = readFully(exchange.getRequestBody());
+            try {
+               if (add(name, new ByteArrayInputStream(body))) {
+                  send(exchange, 200, "added\t" + name + "\n");
+               } else {
+                  send(exchange, 409, "exists\t" + name + "\n");
+               }
+            } catch (IllegalArgumentException e) {
+               send(exchange, 400, e.getMessage() + "\n");
+            }
+         }
+      });
+      server.createContext("/search", new HttpHandler() {
+         public void handle( HttpExchange exchange) throws IOException {
+            String query = QueryServer.parameter(exchange.getRequestURI().getRawQuery(), "q");
+            int k = QueryServer.topK(QueryServer.parameter(exchange.getRequestURI().getRawQuery(), "k"), maxK);
+            if (query == null || k < 0) {
+               send(exchange, 400, "");
+               return;
+            }
+            send(exchange, 200, search(index, query, k));
+         }
+      });
+      server.createContext("/stats", new HttpHandler() {
+         public void handle( HttpExchange exchange) throws IOException {
+            SegmentedIndex current = index;
+            StringBuilder body = new StringBuilder();
+            synchronized (SegmentIndexer.this) {
+               body.append("documents\t").append(current.numberOfDocuments()).append('\n')
+                     .append("buffered\t").append(buffer.documents.size()).append('\n')
+                     .append("flushes\t").append(flushes).append('\n')
+                     .append("merges\t").append(merges).append('\n');
+            }
+            String[] names = current.names();
+            body.append("segments\t").append(names.length).append('\n');
+            for (int i = 0; i < names.length; i++) {
+               body.append(names[i]).append('\t').append(current.segment(i).numberOfDocuments())
+                     .append('\n');
+            }
+            send(exchange, 200, body.toString());
+         }
+      });
+      server.setExecutor(Executors.newFixedThreadPool(threads));
+      server.start();
+      return server;
+   }
+
+   /// The 'filename	tfidf_sum' lines of a query, in document id (arrival) order, or with k > 0
+   /// the k best, best first. Repeated words count as often as they are given, as in Search.
+   static String search( SegmentedIndex index, String query, int k) throws IOException {
+      final List<String> documents = index.documents();
+      final StringBuilder body = new StringBuilder();
+      String[] words = query.toLowerCase().split(" ");
+      if (k > 0) {
+         TopK.PostingList[] lists = new TopK.PostingList[words.length];
+         for (int i = 0; i < words.length; i++) {
+            lists[i] = words[i].isEmpty() ? null : index.postingList(words[i]);
+         }
+         TopK.search(lists, k, new TopK.ResultVisitor() {
+            public void result( int docId, double score, Object item) {
+               body.append(documents.get(docId)).append('\t').append(score).append('\n');
+            }
+         });
+         return body.toString();
+      }
+      final double[] scores = new double[index.numberOfDocuments()];
+      final boolean[] matched = new boolean[scores.length];
+      for (String word : words) {
+         if (!word.isEmpty()) {
+            index.postings(word, new InvertedIndex.PostingVisitor() {
+               public void visit( int docId, double weight) {
+                  scores[docId] += weight;
+                  matched[docId] = true;
+               }
+            });
+         }
+      }
+      for (int docId = 0; docId < scores.length; docId++) {
+         if (matched[docId]) {
+            body.append(documents.get(docId)).append('\t').append(scores[docId]).append('\n');
+         }
+      }
+      return body.toString();
+   }
+
+   private static byte[] readFully( InputStream in) throws IOException {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] chunk = new byte[8192];
+      for (int n; (n = in.read(chunk)) > 0; ) {
+         out.write(chunk, 0, n);
+      }
+      in.close();
+      return out.toByteArray();
+   }
+
+   private static void send( HttpExchange exchange, int status, String body) throws IOException {
+      byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+      exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+         out.write(bytes);
+      }
+   }
+
+   /// main() method is the starting point of the program
+   public static void main( String[] args) throws Exception {
+      Configuration conf = new Configuration();
+      args = new GenericOptionsParser(conf, args).getRemainingArgs();
+      int port = Integer.parseInt(args[1]);
+      Path input = args.length > 2 ? new Path(args[2]) : null;
+      final SegmentIndexer indexer = new SegmentIndexer(new File(args[0]), input, conf);
+      indexer.serve(port, Runtime.getRuntime().availableProcessors());
+      Runtime.getRuntime().addShutdownHook(new Thread() {
+         public void run() {
+            try {
+               indexer.close();
+            } catch (IOException e) {
+               LOG.error("Cannot flush the buffered documents", e);
+            }
+         }
+      });
+      LOG.info("Indexing into " + args[0] + (input == null ? "" : " from " + input) + ", serving on port " + port);
+   }
+}
@@ -0,0 +1,254 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/// SegmentedIndex searches the segments written by SegmentIndexer as one index. A segment is an
+/// index folder with a single shard that MappedIndex opens, holding the raw count of every word
+/// in each of its documents (64 bit weights, so the counts are exact). Document ids are numbered
+/// through the segments in the order of the manifest, so the ids of a segment follow those of
+/// the segments before it.
+///
+/// LOCAL_INDEX/segments    - names of the live segments, oldest first, one per line; written to
+///                           segments.tmp and renamed, so it always lists complete segments
+/// LOCAL_INDEX/seg-NNNNNNNN - a segment: shard-00000.dict, shard-00000.post and documents
+///
+/// Nothing global is stored: the number of documents N and the document frequency df of a word
+/// are summed over the segments when a query reads it, and the weights become tfidf values as
+/// in TermFrequency and TFIDF, WF = 1 + log10(count) and IDF = log10(1 + N / df) with the same
+/// integer division, so a query gives the same scores as the batch index of the same documents.
+///
+/// $ hadoop jar <filename>.jar org.myorg.Search -D search.segments=true LOCAL_INDEX OUTPUT_PATH <query words>
+public class SegmentedIndex implements IndexReader {
+
+   public static final String SEGMENTS = "search.segments";
+   public static final String MANIFEST = "segments";
+
+   private final String[] names;
+   private final MappedIndex[] segments;
+   /// Document id of the first document of every segment, and the number of documents
+   private final int[] bases;
+   private final int numberOfDocuments;
+
+   /// Opens the segments listed in the manifest of dir
+   public SegmentedIndex( File dir) throws IOException {
+      this(readManifest(dir), dir);
+   }
+
+   private SegmentedIndex( String[] names, File dir) throws IOException {
+      this(names, open(dir, names));
+   }
+
+   /// Segments which are open already, in document id order
+   SegmentedIndex( String[] names, MappedIndex[] segments) {
+      this.names = names;
+      this.segments = segments;
+      this.bases = new int[segments.length];
+      int documents = 0;
+      for (int i = 0; i < segments.length; i++) {
+         bases[i] = documents;
+         documents += segments[i].numberOfDocuments();
+      }
+      this.numberOfDocuments = documents;
+   }
+
+   private static MappedIndex[] open( File dir, String[] names) throws IOException {
+      MappedIndex[] segments = new MappedIndex[names.length];
+      for (int i = 0; i < names.length; i++) {
+         segments[i] = new MappedIndex(new File(dir, names[i]));
+      }
+      return segments;
+   }
+
+   /// Reads the names of the live segments, none if there is no manifest yet
+   public static String[] readManifest( File dir) throws IOException {
+      File manifest = new File(dir, MANIFEST);
+      List<String> names = new ArrayList<String>();
+      if (!manifest.exists()) {
+         return new String[0];
+      }
+      try (BufferedReader in = new BufferedReader(new InputStreamReader(
+            new FileInputStream(manifest), StandardCharsets.UTF_8))) {
+         String line;
+         while ((line = in.readLine()) != null) {
+            if (!line.isEmpty()) {
+               names.add(line);
+            }
+         }
+      }
+      return names.toArray(new String[names.size()]);
+   }
+
+   /// Names of the segments, oldest first
+   public String[] names() {
+      return names.clone();
+   }
+
+   public int numberOfSegments() {
+      return segments.length;
+   }
+
+   MappedIndex segment( int i) {
+      return segments[i];
+   }
+
+   public int numberOfDocuments() {
+      return numberOfDocuments;
+   }
+
+   /// Document names, indexed by document id, read from the segments as they are asked for
+   public List<String> documents() {
+      return new AbstractList<String>() {
+         public String get( int docId) {
+            int s = segmentOf(docId);
+            return segments[s].document(docId - bases[s]);
+         }
+         public int size() {
+            return numberOfDocuments;
+         }
+      };
+   }
+
+   private int segmentOf( int docId) {
+      int s = Arrays.binarySearch(bases, docId);
+      if (s < 0) {
+         s = -s - 2;
+      }
+      /// Segments without documents share their base with the next one
+      while (s + 1 < bases.length && bases[s + 1] == docId) {
+         s++;
+      }
+      return s;
+   }
+
+   public int postings( String term, InvertedIndex.PostingVisitor visitor) throws IOException {
+      TopK.PostingList list = postingList(term);
+      if (list == null) {
+         return 0;
+      }
+      for (int i = 0; i < list.size(); i++) {
+         visitor.visit(list.docId(i), list.weight(i));
+      }
+      return list.size();
+   }
+
+   /// The posting list of the term over all segments with tfidf weights, or null if no segment
+   /// has the term. The lists of the segments are decoded as they are read.
+   public TopK.PostingList postingList( String term) {
+      byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+      List<TopK.PostingList> lists = new ArrayList<TopK.PostingList>();
+      List<Integer> listBases = new ArrayList<Integer>();
+      for (int i = 0; i < segments.length; i++) {
+         TopK.PostingList list = segments[i].postingList(bytes);
+         if (list != null) {
+            lists.add(list);
+            listBases.add(bases[i]);
+         }
+      }
+      if (lists.isEmpty()) {
+         return null;
+      }
+      int[] listBaseArray = new int[listBases.size()];
+      for (int i = 0; i < listBaseArray.length; i++) {
+         listBaseArray[i] = listBases.get(i);
+      }
+      return new Postings(lists.toArray(new TopK.PostingList[lists.size()]), listBaseArray, numberOfDocuments);
+   }
+
+   /// The posting lists of one term in several segments read as one list. Its size is the
+   /// document frequency of the term, and a count c is read as (1 + log10(c)) * IDF.
+   static class Postings implements TopK.PostingList {
+      private final TopK.PostingList[] lists;
+      private final int[] bases;
+      /// Position of the first posting of every list in this one
+      private final int[] starts;
+      private final int size;
+      private final double idf;
+      private final double maxWeight;
+      private int current = 0;
+
+      Postings( TopK.PostingList[] lists, int[] bases, int numberOfDocuments) {
+         this.lists = lists;
+         this.bases = bases;
+         this.starts = new int[lists.length];
+         int n = 0;
+         double maxCount = 0.0;
+         for (int i = 0; i < lists.length; i++) {
+            starts[i] = n;
+            n += lists[i].size();
+            maxCount = Math.max(maxCount, lists[i].maxWeight());
+         }
+         this.size = n;
+         this.idf = Math.log10(1 + (numberOfDocuments / size));
+         this.maxWeight = wf(maxCount) * idf;
+      }
+
+      private static double wf( double count) {
+         return 1.0 + Math.log10(count);
+      }
+
+      public int size() {
+         return size;
+      }
+
+      public int docId( int i) {
+         int l = list(i);
+         return bases[l] + lists[l].docId(i - starts[l]);
+      }
+
+      public double weight( int i) {
+         int l = list(i);
+         return wf(lists[l].weight(i - starts[l])) * idf;
+      }
+
+      public double maxWeight() {
+         return maxWeight;
+      }
+
+      /// Seeks in the list holding doc, using the skip table of its segment
+      @Override
+      public int seek( int from, int doc) {
+         if (from >= size) {
+            return size;
+         }
+         for (int l = list(from); l < lists.length; l++) {
+            int local = lists[l].seek(Math.max(0, from - starts[l]), doc - bases[l]);
+            if (local < lists[l].size()) {
+               return starts[l] + local;
+            }
+         }
+         return size;
+      }
+
+      /// The list of position i. Postings are mostly read in order, so the last list is tried
+      /// first.
+      private int list( int i) {
+         int l = current;
+         if (i < starts[l] || (l + 1 < starts.length && i >= starts[l + 1])) {
+            l = Arrays.binarySearch(starts, i);
+            if (l < 0) {
+               l = -l - 2;
+            }
+            current = l;
+         }
+         return l;
+      }
+   }
+
+   /// The segments are memory mapped and unmapped by the garbage collector
+   @Override
+   public void close() {
+   }
+}
@@ -0,0 +1,837 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Partitioner;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.MultipleInputs;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+/// Similarity finds, for every document, the documents whose tfidf vectors have a cosine
+/// similarity of at least a threshold t, and keeps the best N of them.
+///
+/// $ hadoop jar <filename>.jar org.myorg.Similarity OUTPUT_PATH
+/// reads OUTPUT_PATH/tfidf and OUTPUT_PATH/documents and writes OUTPUT_PATH/similarity, lines
+/// 'filename	neighbor	similarity' with the neighbors of each document best first. Options:
+/// -D similarity.threshold=T (default 0.5), -D similarity.top=N (default 10), -D
+/// tfidf.format=binary for the binary TFIDF output and -D similarity.mode=simhash for the
+/// approximate mode below.
+///
+/// The exact mode does not compare every pair of documents. The vectors are L2 normalized, and
+/// the terms of a document are ordered by weight; the lightest terms whose squared weights sum
+/// to less than t form its prefix P. For two documents the dot product over the terms both
+/// have in their prefixes is at most |P(x)| |P(y)| < t, so a pair reaching t shares a term
+/// outside the prefix of at least one of them (prefix filtering). The jobs are:
+///
+/// vectors    - the normalized vector of every document, with the length of its prefix
+/// partials   - one reducer call per term: the products x_j y_j of the pairs in its posting
+///              list where at least one of the two has the term outside its prefix. A common
+///              word is mostly in prefixes, so its long list produces few products.
+/// candidates - the products of a pair are summed in the reducer of the smaller document x,
+///              which also receives P(x). Pairs which cannot reach t even if the prefixes
+///              overlapped completely are dropped, the others are sent with P(x) to y.
+/// verify     - the reducer of y adds the dot product of P(x) and P(y), which gives the exact
+///              cosine, and keeps the pairs reaching t
+/// similarity - the best N neighbors of each document
+///
+/// The intermediate folders are OUTPUT_PATH/similarity-* and are deleted at the end.
+///
+/// The simhash mode replaces partials, candidates and verify by one job. Each vector gets a 64
+/// bit SimHash, in which two vectors agree on a bit with probability 1 - angle / pi. The
+/// signature is cut into -D similarity.simhash.bands=B bands (default 8, so 8 bits each) and
+/// documents agreeing on a whole band meet in the same reducer, where the cosine is estimated
+/// as cos(pi * differing bits / 64). Buckets keep at most -D similarity.bucket.max=M documents
+/// (default 1000) so that no reducer goes quadratic. More bands find more of the similar
+/// pairs, but make larger buckets.
+public class Similarity extends Configured implements Tool {
+
+   private static final Logger LOG = Logger .getLogger( Similarity.class);
+
+   public static final String THRESHOLD = "similarity.threshold";
+   public static final String TOP = "similarity.top";
+   public static final String MODE = "similarity.mode";
+   public static final String BANDS = "similarity.simhash.bands";
+   public static final String BUCKET_MAX = "similarity.bucket.max";
+
+   /// PRUNED_TERMS, INDEXED_TERMS - terms of the vectors in and outside their prefixes
+   /// PARTIAL_PRODUCTS - products written by the term reducers
+   /// CANDIDATES - pairs verified, or compared in a bucket with simhash
+   /// FILTERED_CANDIDATES - pairs dropped by the bound before the verification
+   /// PAIRS - pairs reaching the threshold
+   /// BUCKET_OVERFLOWS - documents left out of full simhash buckets
+   public static enum Counters { VECTORS, PRUNED_TERMS, INDEXED_TERMS, PARTIAL_PRODUCTS,
+         CANDIDATES, FILTERED_CANDIDATES, PAIRS, BUCKET_OVERFLOWS }
+
+   /// main() method is the starting point of the program
+   public static void main( String[] args) throws  Exception {
+      int res  = ToolRunner .run( new Similarity(), args);
+      System .exit(res);
+   }
+
+   /// run() method runs the jobs of the mode one after the other
+   public int run( String[] args) throws  Exception {
+      Configuration conf = getConf();
+      Path tfidf = new Path(args[0] + "/tfidf");
+      Path vectors = new Path(args[0] + "/similarity-vectors");
+      Path partials = new Path(args[0] + "/similarity-partials");
+      Path candidates = new Path(args[0] + "/similarity-candidates");
+      Path neighbors = new Path(args[0] + "/similarity-neighbors");
+      Path documents = DocumentInputFormat.documentsPath(conf, tfidf);
+      conf.set(DocumentInputFormat.DOCUMENTS_PATH, documents.toString());
+
+      boolean simhash = "simhash".equals(conf.get(MODE, "exact"));
+      if (simhash) {
+         int bands = conf.getInt(BANDS, 8);
+         if (bands < 2 || 64 % bands != 0) {
+            throw new IllegalArgumentException(BANDS + " has to be 2, 4, 8, 16, 32 or 64, not " + bands);
+         }
+      }
+
+      boolean success = vectors(tfidf, vectors);
+      if (success && simhash) {
+         success = buckets(vectors, neighbors);
+      } else if (success) {
+         success = partials(vectors, partials)
+               && candidates(vectors, partials, candidates)
+               && verify(vectors, candidates, neighbors);
+      }
+      success = success && neighbors(neighbors, new Path(args[0] + "/similarity"));
+
+      FileSystem fs = vectors.getFileSystem(conf);
+      for (Path dir : new Path[] { vectors, partials, candidates, neighbors }) {
+         fs.delete(dir, true);
+      }
+      return success ? 0 : 1;
+   }
+
+   private Job job( String name, Path output) throws IOException {
+      Job job  = Job .getInstance(getConf(), " similarity " + name + " ");
+      job.setJarByClass( this .getClass());
+      FileOutputFormat.setOutputPath(job, output);
+      job.setOutputFormatClass( SequenceFileOutputFormat .class);
+      return job;
+   }
+
+   private boolean vectors( Path tfidf, Path output) throws Exception {
+      Job job = job("vectors", output);
+      FileInputFormat.addInputPath(job, tfidf);
+      if (TermDocWeight.isBinary(job.getConfiguration())) {
+         job.setInputFormatClass( SequenceFileInputFormat .class);
+         job.setMapperClass( BinaryMap .class);
+      } else {
+         job.setMapperClass( Map .class);
+      }
+      job.setMapOutputKeyClass( IntWritable .class);
+      job.setMapOutputValueClass( TermDocWeight .class);
+      job.setReducerClass( VectorReduce .class);
+      job.setOutputKeyClass( IntWritable .class);
+      job.setOutputValueClass( Vector .class);
+      return Metrics.waitForCompletion(job, "similarity-vectors");
+   }
+
+   private boolean partials( Path vectors, Path output) throws Exception {
+      Job job = job("partials", output);
+      FileInputFormat.addInputPath(job, vectors);
+      job.setInputFormatClass( SequenceFileInputFormat .class);
+      job.setMapperClass( PostingMap .class);
+      job.setMapOutputKeyClass( Text .class);
+      job.setMapOutputValueClass( Posting .class);
+      job.setReducerClass( PartialReduce .class);
+      job.setOutputKeyClass( LongWritable .class);
+      job.setOutputValueClass( Vector .class);
+      return Metrics.waitForCompletion(job, "similarity-partials");
+   }
+
+   /// The jobs joining pairs with prefixes partition and group by the document id in the high
+   /// half of the key, and the prefix, with 0 in the low half, comes first in each group
+   private void joinByDocument( Job job, Path vectors, Path pairs) {
+      MultipleInputs.addInputPath(job, vectors, SequenceFileInputFormat .class, PrefixMap .class);
+      MultipleInputs.addInputPath(job, pairs, SequenceFileInputFormat .class, Mapper .class);
+      job.setMapOutputKeyClass( LongWritable .class);
+      job.setMapOutputValueClass( Vector .class);
+      job.setPartitionerClass( DocumentPartitioner .class);
+      job.setGroupingComparatorClass( DocumentGroupingComparator .class);
+   }
+
+   private boolean candidates( Path vectors, Path partials, Path output) throws Exception {
+      Job job = job("candidates", output);
+      joinByDocument(job, vectors, partials);
+      job.setCombinerClass( PartialCombine .class);
+      job.setReducerClass( CandidateReduce .class);
+      job.setOutputKeyClass( LongWritable .class);
+      job.setOutputValueClass( Vector .class);
+      return Metrics.waitForCompletion(job, "similarity-candidates");
+   }
+
+   private boolean verify( Path vectors, Path candidates, Path output) throws Exception {
+      Job job = job("verify", output);
+      joinByDocument(job, vectors, candidates);
+      job.setReducerClass( VerifyReduce .class);
+      job.setOutputKeyClass( IntWritable .class);
+      job.setOutputValueClass( Vector .class);
+      return Metrics.waitForCompletion(job, "similarity-verify");
+   }
+
+   private boolean buckets( Path vectors, Path output) throws Exception {
+      Job job = job("buckets", output);
+      FileInputFormat.addInputPath(job, vectors);
+      job.setInputFormatClass( SequenceFileInputFormat .class);
+      job.setMapperClass( SignatureMap .class);
+      job.setMapOutputKeyClass( LongWritable .class);
+      job.setMapOutputValueClass( Signature .class);
+      job.setReducerClass( BucketReduce .class);
+      job.setOutputKeyClass( IntWritable .class);
+      job.setOutputValueClass( Vector .class);
+      return Metrics.waitForCompletion(job, "similarity-buckets");
+   }
+
+   private boolean neighbors( Path neighbors, Path output) throws Exception {
+      Job job  = Job .getInstance(getConf(), " similarity ");
+      job.setJarByClass( this .getClass());
+      FileInputFormat.addInputPath(job, neighbors);
+      FileOutputFormat.setOutputPath(job, output);
+      job.setInputFormatClass( SequenceFileInputFormat .class);
+      job.setMapOutputKeyClass( IntWritable .class);
+      job.setMapOutputValueClass( Vector .class);
+      job.setReducerClass( NeighborReduce .class);
+      job.setOutputKeyClass( Text .class);
+      job.setOutputValueClass( Text .class);
+      return Metrics.waitForCompletion(job, "similarity");
+   }
+
+   /// A sparse document vector, a list of (term, weight) of which the first 'prefix' terms are
+   /// the prefix. It also carries a partial dot product (value), a candidate pair (docId, the
+   /// sum of its products and P(docId)) and a neighbor (docId, cosine).
+   public static class Vector implements Writable {
+      private int docId;
+      private double value;
+      private int prefix;
+      private String[] terms = new String[0];
+      private double[] weights = new double[0];
+
+      public Vector() {
+      }
+
+      public void set( int docId, double value) {
+         set(docId, value, 0, 0, null, null);
+      }
+
+      public void set( int docId, double value, int prefix, int length, String[] terms, double[] weights) {
+         this.docId = docId;
+         this.value = value;
+         this.prefix = prefix;
+         if (this.terms.length != length) {
+            this.terms = new String[length];
+            this.weights = new double[length];
+         }
+         if (length > 0) {
+            System.arraycopy(terms, 0, this.terms, 0, length);
+            System.arraycopy(weights, 0, this.weights, 0, length);
+         }
+      }
+
+      public int getDocId() {
+         return docId;
+      }
+
+      public double getValue() {
+         return value;
+      }
+
+      public void setValue( double value) {
+         this.value = value;
+      }
+
+      public int getPrefix() {
+         return prefix;
+      }
+
+      public int size() {
+         return terms.length;
+      }
+
+      public String getTerm( int i) {
+         return terms[i];
+      }
+
+      public double getWeight( int i) {
+         return weights[i];
+      }
+
+      @Override
+      public void write( DataOutput out) throws IOException {
+         out.writeInt(docId);
+         out.writeDouble(value);
+         WritableUtils.writeVInt(out, prefix);
+         WritableUtils.writeVInt(out, terms.length);
+         for (int i = 0; i < terms.length; i++) {
+            Text.writeString(out, terms[i]);
+            out.writeDouble(weights[i]);
+         }
+      }
+
+      @Override
+      public void readFields( DataInput in) throws IOException {
+         docId = in.readInt();
+         value = in.readDouble();
+         prefix = WritableUtils.readVInt(in);
+         int length = WritableUtils.readVInt(in);
+         if (terms.length != length) {
+            terms = new String[length];
+            weights = new double[length];
+         }
+         for (int i = 0; i < length; i++) {
+            terms[i] = Text.readString(in);
+            weights[i] = in.readDouble();
+         }
+      }
+   }
+
+   /// One entry of the posting list of a term: the document, its normalized weight and whether
+   /// the term is outside the prefix of the document
+   public static class Posting implements Writable {
+      private int docId;
+      private double weight;
+      private boolean indexed;
+
+      public Posting() {
+      }
+
+      public Posting( int docId, double weight, boolean indexed) {
+         this.docId = docId;
+         this.weight = weight;
+         this.indexed = indexed;
+      }
+
+      @Override
+      public void write( DataOutput out) throws IOException {
+         out.writeInt(docId);
+         out.writeDouble(weight);
+         out.writeBoolean(indexed);
+      }
+
+      @Override
+      public void readFields( DataInput in) throws IOException {
+         docId = in.readInt();
+         weight = in.readDouble();
+         indexed = in.readBoolean();
+      }
+   }
+
+   /// The SimHash of a document
+   public static class Signature implements Writable {
+      private int docId;
+      private long bits;
+
+      public Signature() {
+      }
+
+      public Signature( int docId, long bits) {
+         this.docId = docId;
+         this.bits = bits;
+      }
+
+      @Override
+      public void write( DataOutput out) throws IOException {
+         out.writeInt(docId);
+         out.writeLong(bits);
+      }
+
+      @Override
+      public void readFields( DataInput in) throws IOException {
+         docId = in.readInt();
+         bits = in.readLong();
+      }
+   }
+
+   /// Key of a pair (x, y), x < y, or of the prefix of x (y = -1), in the reducer of x
+   static long pairKey( int x, int y) {
+      return ((long) x << 32) | (y + 1L);
+   }
+
+   /// Partitions the keys by the document id in their high half
+   public static class DocumentPartitioner<V> extends Partitioner<LongWritable, V> {
+      @Override
+      public int getPartition( LongWritable key, V value, int numPartitions) {
+         return (int) (key.get() >>> 32) % numPartitions;
+      }
+   }
+
+   /// Groups the keys by the document id in their high half
+   public static class DocumentGroupingComparator implements RawComparator<LongWritable> {
+      @Override
+      public int compare( byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+         return Integer.compare(WritableComparator.readInt(b1, s1), WritableComparator.readInt(b2, s2));
+      }
+
+      @Override
+      public int compare( LongWritable a, LongWritable b) {
+         return Long.compare(a.get() >>> 32, b.get() >>> 32);
+      }
+   }
+
+   /// This is the Mapper class for the text TFIDF output, parsed as in IndexBuilder.Map. It
+   /// writes every tfidf value under the id of its document.
+   public static class Map extends Mapper<LongWritable ,  Text ,  IntWritable ,  TermDocWeight > {
+      private IntWritable document = new IntWritable();
+      private TermDocWeight record = new TermDocWeight();
+      private HashMap<String, Integer> documentIds;
+
+      @Override
+      protected void setup( Context context) throws IOException, InterruptedException {
+         documentIds = DocumentInputFormat.readDocumentIds(context.getConfiguration(),
+               new Path(context.getConfiguration().get(DocumentInputFormat.DOCUMENTS_PATH)));
+      }
+
+      public void map( LongWritable offset,  Text lineText,  Context context)
+        throws  IOException,  InterruptedException {
+         String line = lineText.toString();
+         int tab = line.lastIndexOf('\t');
+         int delimiter = line.lastIndexOf("#####", tab);
+         if (tab < 0 || delimiter < 0) {
+            context.getCounter(Metrics.Counters.PARSE_FAILURES).increment(1);
+            return;
+         }
+         Integer docId = documentIds.get(line.substring(delimiter + 5, tab));
+         if (docId == null) {
+            throw new IOException("Unknown document in line: " + line);
+         }
+         record.set(line.substring(0, delimiter), docId, Double.parseDouble(line.substring(tab + 1)));
+         document.set(docId);
+         context.write(document, record);
+      }
+   }
+
+   /// This is the Mapper class for the binary TFIDF output
+   public static class BinaryMap extends Mapper<TermDocWeight ,  NullWritable ,  IntWritable ,  TermDocWeight > {
+      private IntWritable document = new IntWritable();
+
+      public void map( TermDocWeight key,  NullWritable value,  Context context)
+        throws  IOException,  InterruptedException {
+         document.set(key.getDocId());
+         context.write(document, key);
+      }
+   }
+
+   /// This is the Reducer class building the normalized vector of a document, terms ordered by
+   /// increasing weight, with the longest prefix whose squared weights sum to less than t
+   public static class VectorReduce extends Reducer<IntWritable ,  TermDocWeight ,  IntWritable ,  Vector > {
+      private double threshold;
+      private Vector vector = new Vector();
+
+      @Override
+      protected void setup( Context context) throws IOException, InterruptedException {
+         threshold = context.getConfiguration().getDouble(THRESHOLD, 0.5);
+      }
+
+      @Override
+      public void reduce( IntWritable docId,  Iterable<TermDocWeight > values,  Context context)
+         throws IOException,  InterruptedException {
+         final List<String> terms = new ArrayList<String>();
+         final List<Double> weights = new ArrayList<Double>();
+         double norm = 0.0;
+         for (TermDocWeight value : values) {
+            terms.add(value.getTerm().toString());
+            weights.add(value.getWeight());
+            norm += value.getWeight() * value.getWeight();
+         }
+         norm = Math.sqrt(norm);
+
+         Integer[] order = new Integer[terms.size()];
+         for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+         }
+         Arrays.sort(order, new Comparator<Integer>() {
+            public int compare( Integer a, Integer b) {
+               int c = Double.compare(weights.get(a), weights.get(b));
+               return c != 0 ? c : terms.get(a).compareTo(terms.get(b));
+            }
+         });
+         String[] sortedTerms = new String[order.length];
+         double[] sortedWeights = new double[order.length];
+         int prefix = 0;
+         double prefixSquares = 0.0;
+         for (int i = 0; i < order.length; i++) {
+            sortedTerms[i] = terms.get(order[i]);
+            sortedWeights[i] = norm > 0.0 ? weights.get(order[i]) / norm : 0.0;
+            prefixSquares += sortedWeights[i] * sortedWeights[i];
+            if (prefix == i && prefixSquares < threshold) {
+               prefix = i + 1;
+            }
+         }
+         vector.set(docId.get(), 0.0, prefix, order.length, sortedTerms, sortedWeights);
+         context.write(docId, vector);
+         context.getCounter(Counters.VECTORS).increment(1);
+         context.getCounter(Counters.PRUNED_TERMS).increment(prefix);
+         context.getCounter(Counters.INDEXED_TERMS).increment(order.length - prefix);
+      }
+   }
+
+   /// This is the Mapper class writing every term of a vector under the term
+   public static class PostingMap extends Mapper<IntWritable ,  Vector ,  Text ,  Posting > {
+      private Text term = new Text();
+
+      public void map( IntWritable docId,  Vector vector,  Context context)
+        throws  IOException,  InterruptedException {
+         for (int i = 0; i < vector.size(); i++) {
+            term.set(vector.getTerm(i));
+            context.write(term, new Posting(docId.get(), vector.getWeight(i), i >= vector.getPrefix()));
+         }
+      }
+   }
+
+   /// This is the Reducer class of a term. Each pair of its posting list with the term outside
+   /// the prefix of at least one document gets one product, under the key of the pair.
+   public static class PartialReduce extends Reducer<Text ,  Posting ,  LongWritable ,  Vector > {
+      private LongWritable pair = new LongWritable();
+      private Vector partial = new Vector();
+
+      @Override
+      public void reduce( Text term,  Iterable<Posting > values,  Context context)
+         throws IOException,  InterruptedException {
+         List<Posting> postings = new ArrayList<Posting>();
+         List<Posting> indexed = new ArrayList<Posting>();
+         for (Posting value : values) {
+            Posting posting = new Posting(value.docId, value.weight, value.indexed);
+            postings.add(posting);
+            if (posting.indexed) {
+               indexed.add(posting);
+            }
+         }
+         long products = 0;
+         for (Posting a : indexed) {
+            for (Posting b : postings) {
+               /// A pair of two indexed postings is written once, from the smaller document
+               if (b.docId == a.docId || (b.indexed && b.docId < a.docId)) {
+                  continue;
+               }
+               pair.set(pairKey(Math.min(a.docId, b.docId), Math.max(a.docId, b.docId)));
+               partial.set(Math.max(a.docId, b.docId), a.weight * b.weight);
+               context.write(pair, partial);
+               products++;
+            }
+         }
+         context.getCounter(Counters.PARTIAL_PRODUCTS).increment(products);
+      }
+   }
+
+   /// This is the Mapper class writing the prefix of a vector first in the group of its document
+   public static class PrefixMap extends Mapper<IntWritable ,  Vector ,  LongWritable ,  Vector > {
+      private LongWritable key = new LongWritable();
+      private Vector prefix = new Vector();
+
+      public void map( IntWritable docId,  Vector vector,  Context context)
+        throws  IOException,  InterruptedException {
+         key.set(pairKey(docId.get(), -1));
+         prefix.set(docId.get(), 0.0, vector.getPrefix(), vector.getPrefix(), vector.terms, vector.weights);
+         context.write(key, prefix);
+      }
+   }
+
+   /// This is the Combiner class adding up the products of a pair. Prefixes pass unchanged.
+   public static class PartialCombine extends Reducer<LongWritable ,  Vector ,  LongWritable ,  Vector > {
+      private Vector partial = new Vector();
+
+      @Override
+      public void reduce( LongWritable key,  Iterable<Vector > values,  Context context)
+         throws IOException,  InterruptedException {
+         if ((int) key.get() == 0) {
+            for (Vector value : values) {
+               context.write(key, value);
+            }
+            return;
+         }
+         double sum = 0.0;
+         for (Vector value : values) {
+            sum += value.getValue();
+         }
+         partial.set((int) key.get() - 1, sum);
+         context.write(key, partial);
+      }
+   }
+
+   /// This is the Reducer class of the smaller document x of the pairs. The products arrive
+   /// sorted by the other document y and are summed; the rest of the cosine is at most
+   /// |P(x)| |P(y)| < |P(x)| sqrt(t), and pairs reaching t with it go to y with P(x).
+   public static class CandidateReduce extends Reducer<LongWritable ,  Vector ,  LongWritable ,  Vector > {
+      private double threshold;
+      private LongWritable pair = new LongWritable();
+      private Vector candidate = new Vector();
+      private String[] terms = new String[0];
+      private double[] weights = new double[0];
+
+      @Override
+      protected void setup( Context context) throws IOException, InterruptedException {
+         threshold = context.getConfiguration().getDouble(THRESHOLD, 0.5);
+      }
+
+      @Override
+      public void reduce( LongWritable key,  Iterable<Vector > values,  Context context)
+         throws IOException,  InterruptedException {
+         int x = (int) (key.get() >>> 32);
+         int length = 0;
+         double bound = 0.0;
+         int y = -1;
+         double sum = 0.0;
+         for (Vector value : values) {
+            int other = (int) key.get() - 1;
+            if (other < 0) {
+               length = value.size();
+               terms = Arrays.copyOf(value.terms, length);
+               weights = Arrays.copyOf(value.weights, length);
+               for (int i = 0; i < length; i++) {
+                  bound += weights[i] * weights[i];
+               }
+               bound = Math.sqrt(bound) * Math.sqrt(threshold);
+               continue;
+            }
+            if (other != y) {
+               candidate(x, y, sum, bound, length, context);
+               y = other;
+               sum = 0.0;
+            }
+            sum += value.getValue();
+         }
+         candidate(x, y, sum, bound, length, context);
+      }
+
+      private void candidate( int x, int y, double sum, double bound, int length, Context context)
+            throws IOException, InterruptedException {
+         if (y < 0) {
+            return;
+         }
+         if (sum + bound < threshold) {
+            context.getCounter(Counters.FILTERED_CANDIDATES).increment(1);
+            return;
+         }
+         pair.set(pairKey(y, x));
+         candidate.set(x, sum, length, length, terms, weights);
+         context.write(pair, candidate);
+      }
+   }
+
+   /// This is the Reducer class of the larger document y of the pairs, which completes the
+   /// cosine of each candidate with the dot product of the two prefixes. Pairs reaching t are
+   /// written for both documents.
+   public static class VerifyReduce extends Reducer<LongWritable ,  Vector ,  IntWritable ,  Vector > {
+      private double threshold;
+      private IntWritable document = new IntWritable();
+      private Vector neighbor = new Vector();
+
+      @Override
+      protected void setup( Context context) throws IOException, InterruptedException {
+         threshold = context.getConfiguration().getDouble(THRESHOLD, 0.5);
+      }
+
+      @Override
+      public void reduce( LongWritable key,  Iterable<Vector > values,  Context context)
+         throws IOException,  InterruptedException {
+         int y = (int) (key.get() >>> 32);
+         HashMap<String, Double> prefix = new HashMap<String, Double>();
+         for (Vector value : values) {
+            if ((int) key.get() == 0) {
+               for (int i = 0; i < value.size(); i++) {
+                  prefix.put(value.getTerm(i), value.getWeight(i));
+               }
+               continue;
+            }
+            double cosine = value.getValue();
+            for (int i = 0; i < value.size(); i++) {
+               Double weight = prefix.get(value.getTerm(i));
+               if (weight != null) {
+                  cosine += weight * value.getWeight(i);
+               }
+            }
+            context.getCounter(Counters.CANDIDATES).increment(1);
+            if (cosine >= threshold) {
+               int x = value.getDocId();
+               document.set(x);
+               neighbor.set(y, cosine);
+               context.write(document, neighbor);
+               document.set(y);
+               neighbor.set(x, cosine);
+               context.write(document, neighbor);
+               context.getCounter(Counters.PAIRS).increment(1);
+            }
+         }
+      }
+   }
+
+   /// 64 bit hash of a term, FNV-1a over its characters followed by the finalizer of SplitMix64
+   static long hash( String term) {
+      long h = 0xcbf29ce484222325L;
+      for (int i = 0; i < term.length(); i++) {
+         h = (h ^ term.charAt(i)) * 0x100000001b3L;
+      }
+      h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+      h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+      return h ^ (h >>> 31);
+   }
+
+   /// SimHash of a vector: bit k is set when the weights of the terms whose hash has bit k set
+   /// outweigh those of the terms whose hash has not
+   static long simhash( Vector vector) {
+      double[] sums = new double[64];
+      for (int i = 0; i < vector.size(); i++) {
+         long h = hash(vector.getTerm(i));
+         double weight = vector.getWeight(i);
+         for (int k = 0; k < 64; k++) {
+            sums[k] += ((h >>> k) & 1) != 0 ? weight : -weight;
+         }
+      }
+      long bits = 0;
+      for (int k = 0; k < 64; k++) {
+         if (sums[k] > 0.0) {
+            bits |= 1L << k;
+         }
+      }
+      return bits;
+   }
+
+   /// Band b of a signature cut into bands of the given width
+   static long band( long bits, int b, int width) {
+      return (bits >>> (b * width)) & ((1L << width) - 1);
+   }
+
+   /// This is the Mapper class writing the signature of a vector to the bucket of each band
+   public static class SignatureMap extends Mapper<IntWritable ,  Vector ,  LongWritable ,  Signature > {
+      private LongWritable bucket = new LongWritable();
+      private int bands;
+
+      @Override
+      protected void setup( Context context) throws IOException, InterruptedException {
+         bands = context.getConfiguration().getInt(BANDS, 8);
+      }
+
+      public void map( IntWritable docId,  Vector vector,  Context context)
+        throws  IOException,  InterruptedException {
+         Signature signature = new Signature(docId.get(), simhash(vector));
+         int width = 64 / bands;
+         for (int b = 0; b < bands; b++) {
+            bucket.set(((long) b << 32) | band(signature.bits, b, width));
+            context.write(bucket, signature);
+         }
+      }
+   }
+
+   /// This is the Reducer class of a bucket. A pair is estimated only in the first band its
+   /// signatures share, so that it is written once.
+   public static class BucketReduce extends Reducer<LongWritable ,  Signature ,  IntWritable ,  Vector > {
+      private double threshold;
+      private int bands;
+      private int max;
+      private IntWritable document = new IntWritable();
+      private Vector neighbor = new Vector();
+
+      @Override
+      protected void setup( Context context) throws IOException, InterruptedException {
+         threshold = context.getConfiguration().getDouble(THRESHOLD, 0.5);
+         bands = context.getConfiguration().getInt(BANDS, 8);
+         max = context.getConfiguration().getInt(BUCKET_MAX, 1000);
+      }
+
+      @Override
+      public void reduce( LongWritable key,  Iterable<Signature > values,  Context context)
+         throws IOException,  InterruptedException {
+         int band = (int) (key.get() >>> 32);
+         int width = 64 / bands;
+         List<Signature> bucket = new ArrayList<Signature>();
+         for (Signature value : values) {
+            if (bucket.size() < max) {
+               bucket.add(new Signature(value.docId, value.bits));
+            } else {
+               context.getCounter(Counters.BUCKET_OVERFLOWS).increment(1);
+            }
+         }
+         for (int i = 0; i < bucket.size(); i++) {
+            Signature a = bucket.get(i);
+            for (int j = i + 1; j < bucket.size(); j++) {
+               Signature b = bucket.get(j);
+               int first = 0;
+               while (band(a.bits, first, width) != band(b.bits, first, width)) {
+                  first++;
+               }
+               if (first != band) {
+                  continue;
+               }
+               context.getCounter(Counters.CANDIDATES).increment(1);
+               double cosine = Math.cos(Math.PI * Long.bitCount(a.bits ^ b.bits) / 64);
+               if (cosine >= threshold) {
+                  document.set(a.docId);
+                  neighbor.set(b.docId, cosine);
+                  context.write(document, neighbor);
+                  document.set(b.docId);
+                  neighbor.set(a.docId, cosine);
+                  context.write(document, neighbor);
+                  context.getCounter(Counters.PAIRS).increment(1);
+               }
+            }
+         }
+      }
+   }
+
+   /// This is the Reducer class keeping the best N neighbors of a document, by cosine and then
+   /// by document id, and writing them with the filenames
+   public static class NeighborReduce extends Reducer<IntWritable ,  Vector ,  Text ,  Text > {
+      private TopK.Heap heap;
+      private List<String> documents;
+      private Text document = new Text();
+      private Text neighbor = new Text();
+
+      @Override
+      protected void setup( Context context) throws IOException, InterruptedException {
+         Configuration conf = context.getConfiguration();
+         heap = new TopK.Heap(conf.getInt(TOP, 10));
+         documents = DocumentInputFormat.readDocuments(conf, new Path(conf.get(DocumentInputFormat.DOCUMENTS_PATH)));
+      }
+
+      @Override
+      public void reduce( IntWritable docId,  Iterable<Vector > values,  final Context context)
+         throws IOException,  InterruptedException {
+         for (Vector value : values) {
+            heap.add(value.getValue(), value.getDocId(), null);
+         }
+         document.set(documents.get(docId.get()));
+         heap.drain(new TopK.ResultVisitor() {
+            public void result( int id, double cosine, Object item) throws IOException {
+               neighbor.set(documents.get(id) + "\t" + cosine);
+               try {
+                  context.write(document, neighbor);
+               } catch (InterruptedException e) {
+                  throw new IOException(e);
+               }
+            }
+         });
+      }
+   }
+}
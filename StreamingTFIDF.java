@@ -0,0 +1,408 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Partitioner;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.util.LineReader;
+import org.apache.log4j.Logger;
+
+/// StreamingTFIDF is the reduce side of TFIDF for terms with very many documents. TFIDF.Reduce
+/// keeps every document of a term in a HashMap until it has counted them, as the IDF is only
+/// known at the end; here the count arrives before the documents, so each one is weighted and
+/// written as it is read and a reducer holds nothing per term.
+///
+/// The map output key is a TermDocWeight. Besides the postings, every map task counts the
+/// postings it saw per term (in an InMapperCombiner, so the counts are bounded too) and writes
+/// them as count records with a negative document id. Records are sorted by term and document
+/// id and grouped by term (TermDocWeight.TermGroupingComparator), so the count records of a
+/// term come first in its reduce call and their sum is its document frequency.
+///
+/// A term in most documents still sends all of them to one reducer. Before the job a sample of
+/// the input is read (see sample()), and a term with more than its share of the postings is
+/// split over several reducers by SkewPartitioner. Each map task then writes its count record
+/// of such a term once to every one of those reducers.
+///
+/// Switched on with -D tfidf.streaming=true, for the text and the binary format. The output is
+/// the same as without it.
+/// tfidf.skew.samples  - postings sampled to find the hot terms (default 10000, 0 switches it off)
+/// tfidf.skew.fraction - share of the postings above which a term is split, in
+///                       1/fraction parts (default 1 / number of reducers)
+public class StreamingTFIDF {
+
+   private static final Logger LOG = Logger .getLogger( StreamingTFIDF.class);
+
+   public static final String STREAMING = "tfidf.streaming";
+   public static final String SAMPLES = "tfidf.skew.samples";
+   public static final String FRACTION = "tfidf.skew.fraction";
+
+   /// The SequenceFile of <term, number of reducers> written by sample()
+   public static final String HOT_TERMS = "tfidf.skew.hot.terms";
+
+   public static boolean isEnabled( Configuration conf) {
+      return conf.getBoolean(STREAMING, false);
+   }
+
+   /// Sets up the TFIDF job for streaming, after TFIDF.run() has set its input, output and
+   /// number of files. The hot terms are written to OUTPUT_PATH/hot-terms.
+   public static void configure( Job job, Path input, Path output) throws IOException {
+      Configuration conf = job.getConfiguration();
+      boolean binary = TermDocWeight.isBinary(conf);
+      Path hotTerms = new Path(output, "hot-terms");
+      sample(conf, input, binary, job.getNumReduceTasks(), hotTerms);
+      conf.set(HOT_TERMS, hotTerms.toString());
+
+      job.setMapperClass(binary ? BinaryMap .class : Map .class);
+      job.setReducerClass(binary ? BinaryReduce .class : Reduce .class);
+      job.setPartitionerClass( SkewPartitioner .class);
+      job.setGroupingComparatorClass( TermDocWeight.TermGroupingComparator .class);
+      job.setMapOutputKeyClass( TermDocWeight .class);
+      job.setMapOutputValueClass(binary ? NullWritable .class : Text .class);
+   }
+
+   /// Reads postings from random places of the TermFrequency output and writes the terms which
+   /// have more than their share of them, with the number of reducers to split each one over.
+   /// A term with a fraction f of the sampled postings gets ceil(f / tfidf.skew.fraction) of
+   /// the reducers, so that none of its parts is larger than that share.
+   static void sample( Configuration conf, Path input, boolean binary, int reducers, Path hotTerms)
+         throws IOException {
+      FileSystem fs = input.getFileSystem(conf);
+      HashMap<Text, int[]> counts = new HashMap<Text, int[]>();
+      int samples = conf.getInt(SAMPLES, 10000);
+      int sampled = 0;
+
+      List<FileStatus> files = new ArrayList<FileStatus>();
+      for (FileStatus file : fs.listStatus(input)) {
+         if (file.isFile() && file.getLen() > 0 && !file.getPath().getName().startsWith("_")
+               && !file.getPath().getName().startsWith(".")) {
+            files.add(file);
+         }
+      }
+      /// With one reducer there is nothing to split
+      int perFile = reducers > 1 && !files.isEmpty() ? (samples + files.size() - 1) / files.size() : 0;
+      Random random = new Random(0);
+      Text term = new Text();
+      for (FileStatus file : files) {
+         if (binary) {
+            try (SequenceFile.Reader reader = new SequenceFile.Reader(conf,
+                  SequenceFile.Reader.file(file.getPath()))) {
+               TermDocWeight key = new TermDocWeight();
+               for (int i = 0; i < perFile; i++) {
+                  reader.sync((long) (random.nextDouble() * file.getLen()));
+                  if (reader.next(key)) {
+                     add(counts, key.getTerm());
+                     sampled++;
+                  }
+               }
+            }
+         } else {
+            try (FSDataInputStream in = fs.open(file.getPath())) {
+               for (int i = 0; i < perFile; i++) {
+                  long position = (long) (random.nextDouble() * file.getLen());
+                  in.seek(position);
+
+                  /// The first line read is the rest of the line the position fell into,
+                  /// unless the position is at the start of the file
+                  LineReader lines = new LineReader(in, conf);
+                  Text line = new Text();
+                  if (position > 0) {
+                     lines.readLine(line);
+                  }
+                  if (lines.readLine(line) > 0) {
+                     String l = line.toString();
+                     int delimiter = l.indexOf("#####");
+                     if (delimiter >= 0) {
+                        term.set(l.substring(0, delimiter));
+                        add(counts, term);
+                        sampled++;
+                     }
+                  }
+               }
+            }
+         }
+      }
+
+      float fraction = conf.getFloat(FRACTION, 1.0f / reducers);
+      try (SequenceFile.Writer writer = SequenceFile.createWriter(conf,
+            SequenceFile.Writer.file(hotTerms), SequenceFile.Writer.keyClass(Text.class),
+            SequenceFile.Writer.valueClass(IntWritable.class))) {
+         for (Entry<Text, int[]> entry : counts.entrySet()) {
+            double share = (double) entry.getValue()[0] / sampled;
+            int splits = (int) Math.min(reducers, Math.ceil(share / fraction));
+            if (splits > 1) {
+               writer.append(entry.getKey(), new IntWritable(splits));
+               LOG.info(String.format("Term '%s' has %.2f%% of the sampled postings, split over %d reducers",
+                     entry.getKey(), 100 * share, splits));
+            }
+         }
+      }
+   }
+
+   private static void add( HashMap<Text, int[]> counts, Text term) {
+      int[] count = counts.get(term);
+      if (count == null) {
+         counts.put(new Text(term), new int[] { 1 });
+      } else {
+         count[0]++;
+      }
+   }
+
+   /// Reads the hot terms written by sample()
+   static HashMap<Text, Integer> readHotTerms( Configuration conf) throws IOException {
+      HashMap<Text, Integer> hot = new HashMap<Text, Integer>();
+      String path = conf.get(HOT_TERMS);
+      if (path == null) {
+         return hot;
+      }
+      try (SequenceFile.Reader reader = new SequenceFile.Reader(conf,
+            SequenceFile.Reader.file(new Path(path)))) {
+         Text term = new Text();
+         IntWritable splits = new IntWritable();
+         while (reader.next(term, splits)) {
+            hot.put(new Text(term), splits.get());
+         }
+      }
+      return hot;
+   }
+
+   /// Part of a term's postings a record belongs to. Count record -1 - j goes to part j; a
+   /// posting goes to the part given by its document id.
+   static int part( int docId, int splits) {
+      return docId < 0 ? -1 - docId : docId % splits;
+   }
+
+   /// Sends the records of a term to the reducer of its hash, like TermDocWeight.TermPartitioner,
+   /// except for hot terms whose parts go to that reducer and the ones after it
+   public static class SkewPartitioner<V> extends Partitioner<TermDocWeight, V> implements Configurable {
+      private Configuration conf;
+      private HashMap<Text, Integer> hot;
+
+      @Override
+      public void setConf( Configuration conf) {
+         this.conf = conf;
+         try {
+            hot = readHotTerms(conf);
+         } catch (IOException e) {
+            throw new IllegalStateException("Cannot read the hot terms of " + conf.get(HOT_TERMS), e);
+         }
+      }
+
+      @Override
+      public Configuration getConf() {
+         return conf;
+      }
+
+      @Override
+      public int getPartition( TermDocWeight key, V value, int numPartitions) {
+         int partition = (key.getTerm().hashCode() & Integer.MAX_VALUE) % numPartitions;
+         Integer splits = hot.isEmpty() ? null : hot.get(key.getTerm());
+         if (splits == null) {
+            return partition;
+         }
+         return (partition + part(key.getDocId(), splits)) % numPartitions;
+      }
+   }
+
+   /// Counts the postings of each term in a map task and writes the count records, one per part
+   /// of the term (see SkewPartitioner), when the buffer is full and at the end of the task
+   static class PostingCounter {
+      private final InMapperCombiner counts;
+      private final HashMap<Text, Integer> hot;
+      private final TermDocWeight record = new TermDocWeight();
+
+      PostingCounter( Configuration conf) throws IOException {
+         counts = new InMapperCombiner(conf);
+         hot = readHotTerms(conf);
+      }
+
+      /// Returns true when the counts should be written
+      boolean add( Text term) {
+         return counts.add(term);
+      }
+
+      <V> void flush( Mapper<?, ?, TermDocWeight, V>.Context context, V value)
+            throws IOException, InterruptedException {
+         for (Entry<Text, int[]> entry : counts.entries()) {
+            Integer splits = hot.get(entry.getKey());
+            for (int part = 0; part < (splits == null ? 1 : splits); part++) {
+               record.set(entry.getKey(), -1 - part, entry.getValue()[0]);
+               context.write(record, value);
+            }
+         }
+         counts.clear();
+      }
+   }
+
+   /// This is the Mapper class for the text format. The line is split as in TFIDF.Map, and
+   /// written as <TermDocWeight(word, hash of the filename, 0), filename=tf>. The hash only
+   /// spreads the postings of a hot term over its parts. A line which does not split into
+   /// both parts is counted and skipped, as in TFIDF.Map.
+   public static class Map extends Mapper<LongWritable ,  Text ,  TermDocWeight ,  Text > {
+      private TermDocWeight key = new TermDocWeight();
+      private Text value_filename_tf = new Text();
+      private Text empty = new Text();
+      private PostingCounter counter;
+
+      @Override
+      protected void setup( Context context) throws IOException, InterruptedException {
+         counter = new PostingCounter(context.getConfiguration());
+      }
+
+      public void map( LongWritable offset,  Text lineText,  Context context)
+        throws  IOException,  InterruptedException {
+         String[] line = lineText.toString().split("\\b(\\s*\\t+)\\b");
+         String[] key_word_filename = line[0].toString().split("#####");
+         if (line.length < 2 || key_word_filename.length < 2) {
+            context.getCounter(Metrics.Counters.PARSE_FAILURES).increment(1);
+            return;
+         }
+         key.set(key_word_filename[0], key_word_filename[1].hashCode() & Integer.MAX_VALUE, 0.0);
+         value_filename_tf.set(key_word_filename[1] + "=" + line[1]);
+         context.write(key, value_filename_tf);
+         if (counter.add(key.getTerm())) {
+            counter.flush(context, empty);
+         }
+      }
+
+      @Override
+      protected void cleanup( Context context) throws IOException, InterruptedException {
+         counter.flush(context, empty);
+      }
+   }
+
+   /// This is the Mapper class for the binary format. The TermFrequency records are written
+   /// unchanged, together with the count records.
+   public static class BinaryMap extends Mapper<TermDocWeight ,  NullWritable ,  TermDocWeight ,  NullWritable > {
+      private PostingCounter counter;
+
+      @Override
+      protected void setup( Context context) throws IOException, InterruptedException {
+         counter = new PostingCounter(context.getConfiguration());
+      }
+
+      public void map( TermDocWeight key,  NullWritable value,  Context context)
+        throws  IOException,  InterruptedException {
+         context.write(key, value);
+         if (counter.add(key.getTerm())) {
+            counter.flush(context, value);
+         }
+      }
+
+      @Override
+      protected void cleanup( Context context) throws IOException, InterruptedException {
+         counter.flush(context, NullWritable.get());
+      }
+   }
+
+   /// This is the Reducer class for the text format. The count records are added up into the
+   /// document frequency, then every 'filename=tf' value is written with its tfidf as soon as
+   /// it is read. TFIDF.Reduce keeps one value per filename in its HashMap, so a filename seen
+   /// twice for a word (which the '#####' split can produce) is written once, with its last
+   /// value; the records of a filename are next to each other as their keys are equal.
+   public static class Reduce extends Reducer<TermDocWeight ,  Text ,  Text ,  DoubleWritable > {
+      private Text key = new Text();
+      private DoubleWritable tfidf = new DoubleWritable();
+      private int numberOfFiles;
+
+      @Override
+      protected void setup( Context context) throws IOException, InterruptedException {
+         numberOfFiles = context.getConfiguration().getInt("numberOfFiles", 0);
+      }
+
+      @Override
+      public void reduce( TermDocWeight term,  Iterable<Text > postings,  Context context)
+         throws IOException,  InterruptedException {
+         String word = term.getTerm().toString();
+         int numberOfDocumentsWithWord = 0;
+         double idf = 0.0;
+         String filename = null;
+         double tf = 0.0;
+
+         /// The key is refilled with the record of each value, the count records come first
+         int part = -1;
+         for (Text posting : postings) {
+            if (term.getDocId() < 0) {
+               part = part < 0 ? -1 - term.getDocId() : part;
+               numberOfDocumentsWithWord += (int) term.getWeight();
+               idf = Math.log10(1 + (numberOfFiles / numberOfDocumentsWithWord));
+               continue;
+            }
+            String[] filename_tf = posting.toString().split("=");
+            if (filename != null && !filename.equals(filename_tf[0])) {
+               write(word, filename, tf * idf, context);
+            }
+            filename = filename_tf[0];
+            tf = Double.valueOf(filename_tf[1]);
+         }
+         if (filename != null) {
+            write(word, filename, tf * idf, context);
+         }
+         /// A split term is counted once, by the reducer of its first part
+         if (part == 0) {
+            Metrics.postingList(context, numberOfDocumentsWithWord);
+         }
+      }
+
+      private void write( String word, String filename, double value, Context context)
+            throws IOException, InterruptedException {
+         key.set(word + "#####" + filename);
+         tfidf.set(value);
+         context.write(key, tfidf);
+      }
+   }
+
+   /// This is the Reducer class for the binary format, the same as the text one without the
+   /// parsing
+   public static class BinaryReduce extends Reducer<TermDocWeight ,  NullWritable ,  TermDocWeight ,  NullWritable > {
+      private TermDocWeight out = new TermDocWeight();
+      private int numberOfFiles;
+
+      @Override
+      protected void setup( Context context) throws IOException, InterruptedException {
+         numberOfFiles = context.getConfiguration().getInt("numberOfFiles", 0);
+      }
+
+      @Override
+      public void reduce( TermDocWeight key,  Iterable<NullWritable > values,  Context context)
+         throws IOException,  InterruptedException {
+         int numberOfDocumentsWithWord = 0;
+         double idf = 0.0;
+         int part = -1;
+         for (NullWritable value : values) {
+            if (key.getDocId() < 0) {
+               part = part < 0 ? -1 - key.getDocId() : part;
+               numberOfDocumentsWithWord += (int) key.getWeight();
+               idf = Math.log10(1 + (numberOfFiles / numberOfDocumentsWithWord));
+               continue;
+            }
+            out.set(key.getTerm(), key.getDocId(), key.getWeight() * idf);
+            context.write(out, value);
+         }
+         if (part == 0) {
+            Metrics.postingList(context, numberOfDocumentsWithWord);
+         }
+      }
+   }
+}
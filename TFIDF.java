@@ -6,7 +6,9 @@ package org.myorg;
 
 import java.io.IOException;
 import java.util.regex.Pattern;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.TreeSet;
 import java.lang.*;
 import org.myorg.*;
 import org.apache.hadoop.conf.Configuration;
@@ -22,9 +24,11 @@ import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.io.DoubleWritable;
 import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
 
 /// TFIDF is calculated after the term frequency is calculated. The output of the term frequency
@@ -50,27 +54,73 @@ public class TFIDF extends Configured implements Tool {
    /// classes, and the datatypes for Output Key/Value pair which is Text/DoubleWritable respectively.
    /// The functions also calculates the number of files in the input path and passes it to
    /// map/reduce function. The value is a part of TFIDF calculation
+   ///
+   /// With -D tfidf.format=binary the input and output are TermDocWeight SequenceFiles, and the
+   /// number of files is read from OUTPUT_PATH/documents written by TermFrequency
+   ///
+   /// With -D tfidf.streaming=true the job is set up by StreamingTFIDF
    public int run( String[] args) throws  Exception {
       
-	  /// Number of files in the input is calculated
-	  int numberOfFiles = FileSystem.get(getConf()).listStatus(new Path(args[0])).length;
-
       Job job = Job .getInstance(getConf(), " tfidf ");
       job.setJarByClass( this .getClass());
+
+      FileInputFormat.addInputPath(job, new Path(args[1] + "/tf"));
+      FileOutputFormat.setOutputPath(job, new Path(args[1] + "/tfidf"));
+
+      if (TermDocWeight.isBinary(job.getConfiguration())) {
+         Path documents = DocumentInputFormat.documentsPath(job.getConfiguration(), new Path(args[1] + "/tf"));
+         job.getConfiguration().setInt("numberOfFiles",
+               DocumentInputFormat.readDocuments(job.getConfiguration(), documents).size());
+
+         /// The records are sorted by term and document, partitioned and grouped by term only
+         job.setInputFormatClass(SequenceFileInputFormat .class);
+         job.setMapperClass(Mapper .class);
+         job.setPartitionerClass(TermDocWeight.TermPartitioner .class);
+         job.setGroupingComparatorClass(TermDocWeight.TermGroupingComparator .class);
+         job.setReducerClass(BinaryReduce .class);
+         job.setOutputKeyClass(TermDocWeight .class);
+         job.setOutputValueClass(NullWritable .class);
+         TermDocWeight.setBinaryOutput(job);
+         if (StreamingTFIDF.isEnabled(job.getConfiguration())) {
+            StreamingTFIDF.configure(job, new Path(args[1] + "/tf"), new Path(args[1]));
+         }
+         if (BloomFilter.isEnabled(job.getConfiguration())) {
+            BloomFilter.setOutput(job);
+         }
+         return Metrics.waitForCompletion(job, "tfidf") ? 0 : 1;
+      }
+      
+	  /// Number of files in the input is calculated. Their names are also written to
+	  /// OUTPUT_PATH/documents, which IndexBuilder uses to number the documents
+	  FileStatus[] files = FileSystem.get(getConf()).listStatus(new Path(args[0]));
+	  int numberOfFiles = files.length;
+	  TreeSet<String> names = new TreeSet<String>();
+	  for (FileStatus file : files) {
+		  names.add(file.getPath().getName());
+	  }
+	  DocumentInputFormat.writeDocuments(getConf(), new Path(args[1] + "/documents"), names);
       
       /// Number of files in the input passed to the map/reduce functions
       job.getConfiguration().setInt("numberOfFiles", numberOfFiles);
             
-      FileInputFormat.addInputPath(job, new Path(args[1] + "/tf"));
-      FileOutputFormat.setOutputPath(job, new Path(args[1] + "/tfidf"));
       job.setMapperClass(Map .class);
       job.setReducerClass(Reduce .class);
       job.setMapOutputKeyClass(Text .class);
       job.setMapOutputValueClass(Text .class);
       job.setOutputKeyClass(Text .class);
       job.setOutputValueClass(DoubleWritable .class);
+
+      /// With -D tfidf.streaming=true the reducers do not buffer the documents of a word
+      if (StreamingTFIDF.isEnabled(job.getConfiguration())) {
+         StreamingTFIDF.configure(job, new Path(args[1] + "/tf"), new Path(args[1]));
+      }
+
+      /// With -D tfidf.bloom=true a filter of each output file lets Search skip it (see BloomFilter)
+      if (BloomFilter.isEnabled(job.getConfiguration())) {
+         BloomFilter.setOutput(job);
+      }
       
-      return job.waitForCompletion(true) ? 0 : 1;
+      return Metrics.waitForCompletion(job, "tfidf") ? 0 : 1;
    }
    
    /// This is the Mapper class which hosts the map function. Here, the input is the output of 
@@ -91,8 +141,14 @@ public class TFIDF extends Configured implements Tool {
 		  String[] line = lineText.toString().split("\\b(\\s*\\t+)\\b");
 		  
 		  /// The Part 1 is again split on the delimiter '#####' and we get word and filename
-		  /// separated
+		  /// separated. A line which does not split into both parts (a filename ending in a
+		  /// character which is not a word character has no word boundary before the tab) is
+		  /// counted and skipped.
 		  String[] key_word_filename = line[0].toString().split("#####");
+		  if (line.length < 2 || key_word_filename.length < 2) {
+			  context.getCounter(Metrics.Counters.PARSE_FAILURES).increment(1);
+			  return;
+		  }
 		  
 		  /// We now have the word from the line
 		  key_word.set(key_word_filename[0]);
@@ -156,6 +212,7 @@ public class TFIDF extends Configured implements Tool {
 		   
 		   /// IDF calculation
 		   double idf = Math.log10(1 + (numberOfFiles / numberOfDocumentsWithWord));
+		   Metrics.postingList(context, numberOfDocumentsWithWord);
 		   
 		   /// TFIDF is calculated for each word inside the hashmap
 		   for (String v : values.keySet()) {
@@ -170,4 +227,38 @@ public class TFIDF extends Configured implements Tool {
 		   }
 	   }
    }
+
+   /// This is the Reducer class for the binary format. The input is read unchanged from the
+   /// TermFrequency SequenceFile, and all the records of a term arrive in one reduce call. The
+   /// key object is refilled with the next record on every step of the iteration, so the
+   /// document ids and term frequencies are copied into reusable arrays before the IDF is known.
+   public static class BinaryReduce extends Reducer<TermDocWeight ,  NullWritable ,  TermDocWeight ,  NullWritable > {
+	   private int[] docIds = new int[16];
+	   private double[] tfs = new double[16];
+	   private TermDocWeight out = new TermDocWeight();
+
+	   @Override
+	   public void reduce( TermDocWeight key,  Iterable<NullWritable > values,  Context context)
+		         throws IOException,  InterruptedException {
+		   int numberOfDocumentsWithWord = 0;
+		   for (NullWritable value : values) {
+			   if (numberOfDocumentsWithWord == docIds.length) {
+				   docIds = Arrays.copyOf(docIds, docIds.length * 2);
+				   tfs = Arrays.copyOf(tfs, tfs.length * 2);
+			   }
+			   docIds[numberOfDocumentsWithWord] = key.getDocId();
+			   tfs[numberOfDocumentsWithWord] = key.getWeight();
+			   numberOfDocumentsWithWord++;
+		   }
+
+		   int numberOfFiles = context.getConfiguration().getInt("numberOfFiles", 0);
+		   double idf = Math.log10(1 + (numberOfFiles / numberOfDocumentsWithWord));
+		   Metrics.postingList(context, numberOfDocumentsWithWord);
+
+		   for (int i = 0; i < numberOfDocumentsWithWord; i++) {
+			   out.set(key.getTerm(), docIds[i], tfs[i] * idf);
+			   context.write(out, NullWritable.get());
+		   }
+	   }
+   }
 }
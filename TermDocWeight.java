@@ -0,0 +1,195 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Partitioner;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+
+/// TermDocWeight is the binary form of a 'word#####filename	value' line. The filename is
+/// replaced by its document id, which is the line number of the file in OUTPUT_PATH/documents
+/// (see DocumentInputFormat), and the value is kept as a double instead of text.
+///
+/// It is serialized as the term (Text), the document id (vint) and the weight (8 bytes) and
+/// sorts by term, then document id, then weight. The Comparator below compares the serialized
+/// bytes directly, so sorting in the shuffle does not deserialize any records.
+///
+/// The binary format is used by TermFrequency, TFIDF and Search with -D tfidf.format=binary,
+/// and TextExport converts it back to text.
+public class TermDocWeight implements WritableComparable<TermDocWeight> {
+
+   public static final String FORMAT = "tfidf.format";
+
+   private final Text term = new Text();
+   private int docId;
+   private double weight;
+
+   public TermDocWeight() {
+   }
+
+   public TermDocWeight( String term, int docId, double weight) {
+      set(term, docId, weight);
+   }
+
+   /// Returns true if the job should read and write TermDocWeight SequenceFiles
+   public static boolean isBinary( Configuration conf) {
+      return "binary".equals(conf.get(FORMAT, "text"));
+   }
+
+   /// Makes the job write block compressed SequenceFiles
+   public static void setBinaryOutput( Job job) {
+      job.setOutputFormatClass(SequenceFileOutputFormat.class);
+      SequenceFileOutputFormat.setCompressOutput(job, true);
+      SequenceFileOutputFormat.setOutputCompressionType(job, SequenceFile.CompressionType.BLOCK);
+   }
+
+   public void set( String term, int docId, double weight) {
+      this.term.set(term);
+      this.docId = docId;
+      this.weight = weight;
+   }
+
+   public void set( Text term, int docId, double weight) {
+      this.term.set(term);
+      this.docId = docId;
+      this.weight = weight;
+   }
+
+   public Text getTerm() {
+      return term;
+   }
+
+   public int getDocId() {
+      return docId;
+   }
+
+   public double getWeight() {
+      return weight;
+   }
+
+   public void setWeight( double weight) {
+      this.weight = weight;
+   }
+
+   @Override
+   public void write( DataOutput out) throws IOException {
+      term.write(out);
+      WritableUtils.writeVInt(out, docId);
+      out.writeDouble(weight);
+   }
+
+   @Override
+   public void readFields( DataInput in) throws IOException {
+      term.readFields(in);
+      docId = WritableUtils.readVInt(in);
+      weight = in.readDouble();
+   }
+
+   @Override
+   public int compareTo( TermDocWeight other) {
+      int cmp = term.compareTo(other.term);
+      if (cmp != 0) {
+         return cmp;
+      }
+      if (docId != other.docId) {
+         return docId < other.docId ? -1 : 1;
+      }
+      return Double.compare(weight, other.weight);
+   }
+
+   @Override
+   public boolean equals( Object o) {
+      if (!(o instanceof TermDocWeight)) {
+         return false;
+      }
+      return compareTo((TermDocWeight) o) == 0;
+   }
+
+   @Override
+   public int hashCode() {
+      return term.hashCode() * 31 + docId;
+   }
+
+   @Override
+   public String toString() {
+      return term + "#####" + docId + "\t" + weight;
+   }
+
+   /// Compares the serialized records without deserializing them. The term is a vint length
+   /// followed by the UTF-8 bytes, which compare the same way as Text.compareTo().
+   public static class Comparator extends WritableComparator {
+
+      public Comparator() {
+         super(TermDocWeight.class);
+      }
+
+      @Override
+      public int compare( byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+         try {
+            int termLength1 = readVInt(b1, s1);
+            int termLength2 = readVInt(b2, s2);
+            int start1 = s1 + WritableUtils.decodeVIntSize(b1[s1]);
+            int start2 = s2 + WritableUtils.decodeVIntSize(b2[s2]);
+            int cmp = compareBytes(b1, start1, termLength1, b2, start2, termLength2);
+            if (cmp != 0) {
+               return cmp;
+            }
+            int doc1 = start1 + termLength1;
+            int doc2 = start2 + termLength2;
+            int docId1 = readVInt(b1, doc1);
+            int docId2 = readVInt(b2, doc2);
+            if (docId1 != docId2) {
+               return docId1 < docId2 ? -1 : 1;
+            }
+            double weight1 = readDouble(b1, doc1 + WritableUtils.decodeVIntSize(b1[doc1]));
+            double weight2 = readDouble(b2, doc2 + WritableUtils.decodeVIntSize(b2[doc2]));
+            return Double.compare(weight1, weight2);
+         } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+         }
+      }
+   }
+
+   /// Groups records by term only, so that one reduce call sees every document of a term
+   public static class TermGroupingComparator extends WritableComparator {
+
+      public TermGroupingComparator() {
+         super(TermDocWeight.class);
+      }
+
+      @Override
+      public int compare( byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+         try {
+            int termLength1 = readVInt(b1, s1);
+            int termLength2 = readVInt(b2, s2);
+            return compareBytes(b1, s1 + WritableUtils.decodeVIntSize(b1[s1]), termLength1,
+                  b2, s2 + WritableUtils.decodeVIntSize(b2[s2]), termLength2);
+         } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+         }
+      }
+   }
+
+   /// Sends every record of a term to the same reducer, whatever its document id
+   public static class TermPartitioner<V> extends Partitioner<TermDocWeight, V> {
+      @Override
+      public int getPartition( TermDocWeight key, V value, int numPartitions) {
+         return (key.getTerm().hashCode() & Integer.MAX_VALUE) % numPartitions;
+      }
+   }
+
+   static {
+      WritableComparator.define(TermDocWeight.class, new Comparator());
+   }
+}
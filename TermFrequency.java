@@ -5,21 +5,23 @@
 package org.myorg;
 
 import java.io.IOException;
-import java.util.regex.Pattern;
+import java.util.Map.Entry;
 import java.lang.*;
 import org.apache.hadoop.conf.Configured;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.log4j.Logger;
+import org.apache.hadoop.mapreduce.Counter;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
-import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
 
 /// TermFrequency is a modification of the DocWordCount program, where this program outputs the 
@@ -47,18 +49,60 @@ public class TermFrequency extends Configured implements Tool {
    /// The output path here is internally handled and is the input for the map function for
    /// TFIDF. If OUTPUT_PATH is what the user passes in, then the output after calculating
    /// term frequency will be present at OUTPUT_PATH/tf
+   ///
+   /// The Reduce class applies 1 + log10 to the summed count, so it cannot be used as a combiner.
+   /// The Combine class only sums the raw counts and leaves the logarithm to the reducer. With
+   /// -D inmapper.combine=true the mapper additionally aggregates counts itself (see
+   /// InMapperCombiner) and the savings in map output records and shuffle bytes are logged.
+   ///
+   /// With -D tfidf.format=binary the output is a block compressed SequenceFile of TermDocWeight
+   /// records instead of text, and the document names are written to OUTPUT_PATH/documents
+   ///
+   /// With -D sketch.min.df=N or -D sketch.min.tf=N the sketch job of CountMinSketch runs first
+   /// and the mappers drop the words below the threshold
+   ///
+   /// With -D input.combine=true many small files are read per map task (see
+   /// CombinedDocumentInputFormat)
    public int run( String[] args) throws  Exception {
+      if (CountMinSketch.isEnabled(getConf())
+            && !CountMinSketch.build(getConf(), args[0], new Path(args[1] + "/sketch"))) {
+         return 1;
+      }
       Job job  = Job .getInstance(getConf(), " termfrequency ");
       job.setJarByClass( this .getClass());
 
       FileInputFormat.addInputPaths(job,  args[0]);
       FileOutputFormat.setOutputPath(job,  new Path(args[ 1] + "/tf"));
+
+      if (TermDocWeight.isBinary(job.getConfiguration())) {
+         job.setInputFormatClass( DocumentInputFormat .class);
+         if (job.getConfiguration().get(DocumentInputFormat.DOCUMENTS_PATH) == null) {
+            job.getConfiguration().set(DocumentInputFormat.DOCUMENTS_PATH, args[1] + "/documents");
+         }
+         CombinedDocumentInputFormat.configure(job, new Path(args[1] + "/documents"));
+         job.setMapperClass( BinaryMap .class);
+         job.setCombinerClass( BinaryCombine .class);
+         job.setReducerClass( BinaryReduce .class);
+         job.setMapOutputKeyClass( TermDocWeight .class);
+         job.setMapOutputValueClass( IntWritable .class);
+         job.setOutputKeyClass( TermDocWeight .class);
+         job.setOutputValueClass( NullWritable .class);
+         TermDocWeight.setBinaryOutput(job);
+         return Metrics.waitForCompletion(job, "tf") ? 0 : 1;
+      }
+
+      CombinedDocumentInputFormat.configure(job, new Path(args[1] + "/documents"));
       job.setMapperClass( Map .class);
+      job.setCombinerClass( Combine .class);
       job.setReducerClass( Reduce .class);
       job.setOutputKeyClass( Text .class);
       job.setOutputValueClass( DoubleWritable .class);
 
-      return job.waitForCompletion( true)  ? 0 : 1;
+      boolean success = Metrics.waitForCompletion(job, "tf");
+      if (success) {
+         InMapperCombiner.report(job, LOG);
+      }
+      return success ? 0 : 1;
    }
    
    /// This is the Mapper class which hosts the map function. Here, the input is taken from the
@@ -67,32 +111,109 @@ public class TermFrequency extends Configured implements Tool {
    public static class Map extends Mapper<LongWritable ,  Text ,  Text ,  DoubleWritable > {
       private final static DoubleWritable one  = new DoubleWritable( 1.0);
       private Text word  = new Text();
+      private DoubleWritable count  = new DoubleWritable();
+
+      private Tokenizer tokenizer;
+
+      /// '#####fileName' as UTF-8, the same for every line of a document
+      private byte[] suffix;
+      private CombinedDocumentInputFormat.CurrentDocument document;
 
-      private static final Pattern WORD_BOUNDARY = Pattern .compile("\\s*\\b\\s*");
+      /// Holds partial counts when in-mapper combining is enabled, null otherwise
+      private InMapperCombiner buffer;
+      private Counter tokens;
+      private Counter tokenBytes;
+      private Counter outputRecords;
+      private Counter outputBytes;
+
+      @Override
+      protected void setup( Context context) throws IOException, InterruptedException {
+         if (InMapperCombiner.isEnabled(context.getConfiguration())) {
+            buffer = new InMapperCombiner(context.getConfiguration());
+         }
+         tokenizer = new Tokenizer(context.getConfiguration());
+         tokenizer.setSketch(CountMinSketch.read(context.getConfiguration()));
+
+         /// The document of the input lines, from the FileSplit or from the key of every line
+         /// with CombinedDocumentInputFormat
+         document = new CombinedDocumentInputFormat.CurrentDocument(context, context.getInputSplit());
+         context.getCounter(Metrics.Counters.DOCUMENTS).increment(
+               CombinedDocumentInputFormat.CurrentDocument.documents(context.getInputSplit()));
+         tokens = context.getCounter(InMapperCombiner.CombineCounters.TOKENS);
+         tokenBytes = context.getCounter(InMapperCombiner.CombineCounters.TOKEN_BYTES);
+         outputRecords = context.getCounter(InMapperCombiner.CombineCounters.MAP_OUTPUT_RECORDS);
+         outputBytes = context.getCounter(InMapperCombiner.CombineCounters.MAP_OUTPUT_BYTES);
+      }
 
       public void map( LongWritable offset,  Text lineText,  Context context)
         throws  IOException,  InterruptedException {
+         if (document.next(offset)) {
+            suffix = document.suffix();
+         }
 
-    	  	 /// All the input is converted to lowercase here. 
-         String line  = lineText.toString().toLowerCase();
-         Text currentWord  = new Text();
-         
-         /// Inbuilt FileSplit object is used to get the filename of the input line.
-         FileSplit file = (FileSplit) context.getInputSplit();
-         String fileName = file.getPath().getName();
-         
-         /// The line is split into words and a new string is created which looks like
+         /// The line is split into words by the Tokenizer, which also lowercases them, and
+         /// each word is followed by the filename in the reused key, which looks like
          /// 'word#####fileName'. This is the Key here. The Value is a constant
-         /// IntWritable object with value 1. These are added as Key/Value pairs and
-         /// passed onto the reduce function.
-         for ( String word  : WORD_BOUNDARY .split(line)) {
-            if (word.isEmpty()) {
-               continue;
+         /// DoubleWritable object with value 1. These are added as Key/Value pairs and
+         /// passed onto the reduce function. With in-mapper combining the key is only
+         /// counted here and written out later by flush().
+         tokenizer.reset(lineText);
+         while (tokenizer.next()) {
+            word.set(tokenizer.bytes(), tokenizer.start(), tokenizer.length());
+            word.append(suffix, 0, suffix.length);
+            tokens.increment(1);
+            tokenBytes.increment(InMapperCombiner.recordBytes(word.getLength(), 8));
+            if (buffer == null) {
+               write(word, one, context);
+            } else if (buffer.add(word)) {
+               flush(context);
             }
-            currentWord  = new Text(word + "#####" + fileName);
-            context.write(currentWord,one);
          }
       }
+
+      @Override
+      protected void cleanup( Context context) throws IOException, InterruptedException {
+         if (buffer != null) {
+            flush(context);
+         }
+         CountMinSketch.report(context, tokenizer);
+      }
+
+      /// Writes every buffered 'word#####fileName' with its partial count and empties the buffer
+      private void flush( Context context) throws IOException, InterruptedException {
+         for (Entry<Text, int[]> entry : buffer.entries()) {
+            word.set(entry.getKey());
+            count.set(entry.getValue()[0]);
+            write(word, count, context);
+         }
+         buffer.clear();
+         context.getCounter(InMapperCombiner.CombineCounters.FLUSHES).increment(1);
+      }
+
+      private void write( Text key, DoubleWritable value, Context context)
+        throws IOException, InterruptedException {
+         context.write(key, value);
+         outputRecords.increment(1);
+         outputBytes.increment(InMapperCombiner.recordBytes(key.getLength(), 8));
+      }
+   }
+
+   /// This is the Combiner class. It runs on the map side and adds up the raw counts of a
+   /// 'word#####filename' key. The output is still a raw count, as the reducer expects, so
+   /// the 1 + log10 step is done only once, in the reduce function.
+   public static class Combine extends Reducer<Text ,  DoubleWritable ,  Text ,  DoubleWritable > {
+      private DoubleWritable total  = new DoubleWritable();
+
+      @Override 
+      public void reduce( Text word,  Iterable<DoubleWritable > counts,  Context context)
+         throws IOException,  InterruptedException {
+         double sum  = 0.0;
+         for ( DoubleWritable count  : counts) {
+            sum  += count.get();
+         }
+         total.set(sum);
+         context.write(word, total);
+      }
    }
 
    /// This is the Reducer class which hosts the reduce function. Here, the input is received
@@ -118,4 +239,94 @@ public class TermFrequency extends Configured implements Tool {
          context.write(word, tf);
       }
    }
+
+   /// This is the Mapper class for the binary format. Words are found the same way as in the
+   /// Map class, but every distinct word of a document is counted here and kept as a single
+   /// Text until the buffer is flushed, and the filename is replaced by its document id,
+   /// looked up once per split (or read from the key with CombinedDocumentInputFormat, in
+   /// which case the buffer is flushed at the end of every document).
+   /// The output is <TermDocWeight(word, docId, 0), count>
+   public static class BinaryMap extends Mapper<LongWritable ,  Text ,  TermDocWeight ,  IntWritable > {
+      private TermDocWeight key  = new TermDocWeight();
+      private IntWritable count  = new IntWritable();
+
+      private Tokenizer tokenizer;
+      private Text word  = new Text();
+      private InMapperCombiner buffer;
+      private CombinedDocumentInputFormat.CurrentDocument document;
+      private int docId;
+
+      @Override
+      protected void setup( Context context) throws IOException, InterruptedException {
+         buffer = new InMapperCombiner(context.getConfiguration());
+         tokenizer = new Tokenizer(context.getConfiguration());
+         tokenizer.setSketch(CountMinSketch.read(context.getConfiguration()));
+
+         /// A FileSplit never spans two files, so its document id is looked up only once
+         document = new CombinedDocumentInputFormat.CurrentDocument(context, context.getInputSplit());
+         context.getCounter(Metrics.Counters.DOCUMENTS).increment(
+               CombinedDocumentInputFormat.CurrentDocument.documents(context.getInputSplit()));
+      }
+
+      public void map( LongWritable offset,  Text lineText,  Context context)
+        throws  IOException,  InterruptedException {
+         if (document.next(offset)) {
+            flush(context);
+            docId = document.id();
+         }
+         tokenizer.reset(lineText);
+         while (tokenizer.next()) {
+            word.set(tokenizer.bytes(), tokenizer.start(), tokenizer.length());
+            if (buffer.add(word)) {
+               flush(context);
+            }
+         }
+      }
+
+      @Override
+      protected void cleanup( Context context) throws IOException, InterruptedException {
+         flush(context);
+         CountMinSketch.report(context, tokenizer);
+      }
+
+      private void flush( Context context) throws IOException, InterruptedException {
+         for (Entry<Text, int[]> entry : buffer.entries()) {
+            key.set(entry.getKey(), docId, 0.0);
+            count.set(entry.getValue()[0]);
+            context.write(key, count);
+         }
+         buffer.clear();
+      }
+   }
+
+   /// This is the Combiner class for the binary format. Like Combine, it only adds up counts.
+   public static class BinaryCombine extends Reducer<TermDocWeight ,  IntWritable ,  TermDocWeight ,  IntWritable > {
+      private IntWritable total  = new IntWritable();
+
+      @Override
+      public void reduce( TermDocWeight key,  Iterable<IntWritable > counts,  Context context)
+         throws IOException,  InterruptedException {
+         int sum  = 0;
+         for ( IntWritable count  : counts) {
+            sum  += count.get();
+         }
+         total.set(sum);
+         context.write(key, total);
+      }
+   }
+
+   /// This is the Reducer class for the binary format. The term frequency is calculated as in
+   /// Reduce and stored as the weight of the TermDocWeight record.
+   public static class BinaryReduce extends Reducer<TermDocWeight ,  IntWritable ,  TermDocWeight ,  NullWritable > {
+      @Override
+      public void reduce( TermDocWeight key,  Iterable<IntWritable > counts,  Context context)
+         throws IOException,  InterruptedException {
+         double sum  = 0.0;
+         for ( IntWritable count  : counts) {
+            sum  += count.get();
+         }
+         key.setWeight(1.0 + Math.log10(sum));
+         context.write(key, NullWritable.get());
+      }
+   }
 }
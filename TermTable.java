@@ -0,0 +1,149 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import java.util.Arrays;
+
+/// TermTable numbers distinct terms and counts them, for LocalEngine. It is an open addressing
+/// hash table over the UTF-8 bytes of the terms: the bytes are appended to one array and a term
+/// is known by its id, the order in which it was first added, so there is no object per term
+/// and a lookup does not allocate. Not thread safe; LocalEngine gives every task its own table.
+public class TermTable {
+
+   private static final int[] EMPTY = new int[0];
+
+   /// Term bytes, term i is bytes[offsets[i] .. offsets[i + 1])
+   private byte[] bytes = new byte[1 << 12];
+   private int[] offsets = new int[257];
+   private int[] hashes = new int[256];
+   private int[] counts = new int[256];
+   private int size = 0;
+
+   /// Slots hold term id + 1, 0 is a free slot
+   private int[] slots = new int[512];
+
+   /// Adds one occurrence of the term and returns its id
+   public int add( byte[] term, int start, int length) {
+      return add(term, start, length, 1);
+   }
+
+   /// Adds count occurrences of the term and returns its id
+   public int add( byte[] term, int start, int length, int count) {
+      int id = intern(term, start, length);
+      counts[id] += count;
+      return id;
+   }
+
+   /// Returns the id of the term, adding it with a count of 0 if it is new
+   public int intern( byte[] term, int start, int length) {
+      int hash = hash(term, start, length);
+      int mask = slots.length - 1;
+      for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+         int id = slots[slot] - 1;
+         if (id < 0) {
+            id = append(term, start, length, hash);
+            slots[slot] = id + 1;
+            if (2 * size > slots.length) {
+               rehash();
+            }
+            return id;
+         }
+         if (hashes[id] == hash && equals(id, term, start, length)) {
+            return id;
+         }
+      }
+   }
+
+   /// Returns the id of the term, or -1 if it was never added
+   public int find( byte[] term, int start, int length) {
+      int hash = hash(term, start, length);
+      int mask = slots.length - 1;
+      for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+         int id = slots[slot] - 1;
+         if (id < 0) {
+            return -1;
+         }
+         if (hashes[id] == hash && equals(id, term, start, length)) {
+            return id;
+         }
+      }
+   }
+
+   public int size() {
+      return size;
+   }
+
+   public int count( int id) {
+      return counts[id];
+   }
+
+   /// The bytes of all terms; term id starts at start(id) and is length(id) bytes long
+   public byte[] bytes() {
+      return bytes;
+   }
+
+   public int start( int id) {
+      return offsets[id];
+   }
+
+   public int length( int id) {
+      return offsets[id + 1] - offsets[id];
+   }
+
+   /// Counts of all terms, indexed by id
+   public int[] counts() {
+      return size == 0 ? EMPTY : Arrays.copyOf(counts, size);
+   }
+
+   private int append( byte[] term, int start, int length, int hash) {
+      if (size + 1 == hashes.length) {
+         hashes = Arrays.copyOf(hashes, 2 * hashes.length);
+         counts = Arrays.copyOf(counts, 2 * counts.length);
+         offsets = Arrays.copyOf(offsets, hashes.length + 1);
+      }
+      int end = offsets[size];
+      if (end + length > bytes.length) {
+         bytes = Arrays.copyOf(bytes, Math.max(end + length, 2 * bytes.length));
+      }
+      System.arraycopy(term, start, bytes, end, length);
+      hashes[size] = hash;
+      offsets[size + 1] = end + length;
+      return size++;
+   }
+
+   private void rehash() {
+      slots = new int[2 * slots.length];
+      int mask = slots.length - 1;
+      for (int id = 0; id < size; id++) {
+         int slot = hashes[id] & mask;
+         while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+         }
+         slots[slot] = id + 1;
+      }
+   }
+
+   private boolean equals( int id, byte[] term, int start, int length) {
+      int offset = offsets[id];
+      if (offsets[id + 1] - offset != length) {
+         return false;
+      }
+      for (int i = 0; i < length; i++) {
+         if (bytes[offset + i] != term[start + i]) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /// FNV-1a, with the high bits folded in as the table only uses the low ones
+   private static int hash( byte[] term, int start, int length) {
+      int hash = 0x811c9dc5;
+      for (int i = start; i < start + length; i++) {
+         hash = (hash ^ term[i]) * 0x01000193;
+      }
+      return hash ^ (hash >>> 16);
+   }
+}
@@ -0,0 +1,89 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+
+/// TextExport is a debugging aid for the binary format (-D tfidf.format=binary). It reads the
+/// SequenceFiles of one stage, for example OUTPUT_PATH/tfidf, and writes them as the text the
+/// same stage writes without the binary format, 'word#####filename	value' for TermDocWeight
+/// records and 'key	value' for anything else.
+///
+/// $ hadoop jar <filename>.jar org.myorg.TextExport OUTPUT_PATH/tfidf EXPORT_FILE
+/// Document ids are resolved with OUTPUT_PATH/documents, or the file given by -D documents.path
+public class TextExport extends Configured implements Tool {
+
+   private static final Logger LOG = Logger .getLogger( TextExport.class);
+
+   /// main() method is the starting point of the program
+   public static void main( String[] args) throws  Exception {
+      int res  = ToolRunner .run( new TextExport(), args);
+      System .exit(res);
+   }
+
+   public int run( String[] args) throws  Exception {
+      Configuration conf = getConf();
+      Path input = new Path(args[0]);
+      Path output = new Path(args[1]);
+      FileSystem fs = input.getFileSystem(conf);
+
+      List<String> documents = null;
+      Path documentsPath = DocumentInputFormat.documentsPath(conf, input);
+      if (fs.exists(documentsPath)) {
+         documents = DocumentInputFormat.readDocuments(conf, documentsPath);
+      }
+
+      long records = 0;
+      try (Writer out = new OutputStreamWriter(output.getFileSystem(conf).create(output, true),
+            StandardCharsets.UTF_8)) {
+         for (FileStatus part : fs.listStatus(input)) {
+            String name = part.getPath().getName();
+            if (name.startsWith("_") || name.startsWith(".")) {
+               continue;
+            }
+            records += export(conf, part.getPath(), documents, out);
+         }
+      }
+      LOG.info("Exported " + records + " records from " + input + " to " + output);
+      return 0;
+   }
+
+   /// Writes every record of one SequenceFile as a text line and returns the number of records
+   private static long export( Configuration conf, Path part, List<String> documents, Writer out)
+         throws IOException {
+      long records = 0;
+      try (SequenceFile.Reader reader = new SequenceFile.Reader(conf, SequenceFile.Reader.file(part))) {
+         Writable key = (Writable) ReflectionUtils.newInstance(reader.getKeyClass(), conf);
+         Writable value = (Writable) ReflectionUtils.newInstance(reader.getValueClass(), conf);
+         while (reader.next(key, value)) {
+            if (key instanceof TermDocWeight) {
+               TermDocWeight record = (TermDocWeight) key;
+               String document = documents != null
+                     ? documents.get(record.getDocId()) : String.valueOf(record.getDocId());
+               out.write(record.getTerm() + "#####" + document + "\t" + record.getWeight() + "\n");
+            } else {
+               out.write(key + "\t" + value + "\n");
+            }
+            records++;
+         }
+      }
+      return records;
+   }
+}
@@ -0,0 +1,212 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import java.util.HashSet;
+import java.util.regex.Pattern;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+
+/// Tokenizer finds the words of a line for DocWordCount, TermFrequency and FusedTFIDF. It gives
+/// the same tokens as lowercasing the line and splitting it with the "\s*\b\s*" regular
+/// expression, but works on the UTF-8 bytes of the Text directly and reuses its buffers, so
+/// nothing is allocated per line or per token.
+///
+/// The split cuts the line at every word boundary, where word characters are [a-z0-9_]. This
+/// gives runs of word characters, and the text between them with the whitespace next to the
+/// words removed, which is kept as a token as well (for example ',' or '--'). Lines which are
+/// not plain ASCII are lowercased and split by the regular expression itself, as its notion of
+/// a word character and String.toLowerCase() go beyond ASCII.
+///
+/// Usage:
+///    tokenizer.reset(line);
+///    while (tokenizer.next()) {
+///       key.set(tokenizer.bytes(), tokenizer.start(), tokenizer.length());
+///    }
+///
+/// The tokens can be filtered, none are by default:
+/// tokenizer.punctuation - false drops the tokens between words (default true)
+/// tokenizer.min.length  - tokens shorter than this many characters are dropped (default 1)
+/// tokenizer.stopwords   - comma separated lowercase words which are dropped
+/// With a sketch (see CountMinSketch) the words below sketch.min.df or sketch.min.tf are
+/// dropped as well, and counted in prunedTokens() and prunedBytes().
+public class Tokenizer {
+
+   public static final String PUNCTUATION = "tokenizer.punctuation";
+   public static final String MIN_LENGTH = "tokenizer.min.length";
+   public static final String STOPWORDS = "tokenizer.stopwords";
+
+   private static final Pattern WORD_BOUNDARY = Pattern .compile("\\s*\\b\\s*");
+
+   private final boolean punctuation;
+   private final int minLength;
+   private final HashSet<Text> stopwords = new HashSet<Text>();
+   private CountMinSketch sketch;
+   private final int minDf;
+   private final int minTf;
+   private long prunedTokens = 0;
+   private long prunedBytes = 0;
+
+   /// The lowercased line and the scan position in it
+   private byte[] line = new byte[256];
+   private int length;
+   private int position;
+   private boolean leading;
+
+   /// Tokens of a line which is not plain ASCII, from the regular expression
+   private String[] fallback;
+   private int fallbackIndex;
+   private final Text fallbackToken = new Text();
+
+   /// The current token, and a Text to look it up among the stopwords
+   private byte[] tokenBytes;
+   private int tokenStart;
+   private int tokenLength;
+   private final Text probe = new Text();
+
+   public Tokenizer( Configuration conf) {
+      this.punctuation = conf.getBoolean(PUNCTUATION, true);
+      this.minLength = conf.getInt(MIN_LENGTH, 1);
+      for (String stopword : conf.getTrimmedStrings(STOPWORDS)) {
+         stopwords.add(new Text(stopword));
+      }
+      this.minDf = conf.getInt(CountMinSketch.MIN_DF, 0);
+      this.minTf = conf.getInt(CountMinSketch.MIN_TF, 0);
+   }
+
+   /// Drops the words of the sketch below the thresholds, none if the sketch is null
+   public void setSketch( CountMinSketch sketch) {
+      this.sketch = sketch;
+   }
+
+   public long prunedTokens() {
+      return prunedTokens;
+   }
+
+   public long prunedBytes() {
+      return prunedBytes;
+   }
+
+   /// Starts on a new line
+   public void reset( Text text) {
+      byte[] bytes = text.getBytes();
+      length = text.getLength();
+      position = 0;
+      leading = true;
+      fallback = null;
+      if (line.length < length) {
+         line = new byte[Math.max(length, 2 * line.length)];
+      }
+      for (int i = 0; i < length; i++) {
+         byte b = bytes[i];
+         if (b < 0) {
+            fallback = WORD_BOUNDARY .split(text.toString().toLowerCase());
+            fallbackIndex = 0;
+            return;
+         }
+         line[i] = b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+      }
+   }
+
+   /// Moves to the next token of the line. Returns false when there are no more.
+   public boolean next() {
+      if (fallback != null) {
+         return nextFallback();
+      }
+      while (position < length) {
+         int start = position;
+         if (isWord(line[position])) {
+            while (position < length && isWord(line[position])) {
+               position++;
+            }
+            leading = false;
+            if (accept(line, start, position - start, true)) {
+               return true;
+            }
+            continue;
+         }
+
+         while (position < length && !isWord(line[position])) {
+            position++;
+         }
+         /// The whitespace next to a word is part of the separator, but at the start or the
+         /// end of the line there is no word boundary to take it
+         int end = position;
+         if (!leading) {
+            while (start < end && isSpace(line[start])) {
+               start++;
+            }
+         }
+         if (position < length) {
+            while (end > start && isSpace(line[end - 1])) {
+               end--;
+            }
+         }
+         if (end > start && accept(line, start, end - start, false)) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   private boolean nextFallback() {
+      while (fallbackIndex < fallback.length) {
+         String token = fallback[fallbackIndex++];
+         if (token.isEmpty() || token.length() < minLength) {
+            continue;
+         }
+         char first = token.charAt(0);
+         fallbackToken.set(token);
+         if (accept(fallbackToken.getBytes(), 0, fallbackToken.getLength(),
+               Character.isLetterOrDigit(first) || first == '_')) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   private boolean accept( byte[] bytes, int start, int length, boolean word) {
+      if ((!word && !punctuation) || length < minLength) {
+         return false;
+      }
+      if (!stopwords.isEmpty()) {
+         probe.set(bytes, start, length);
+         if (stopwords.contains(probe)) {
+            return false;
+         }
+      }
+      if (sketch != null && !sketch.keep(bytes, start, length, minDf, minTf)) {
+         prunedTokens++;
+         prunedBytes += length;
+         return false;
+      }
+      tokenBytes = bytes;
+      tokenStart = start;
+      tokenLength = length;
+      return true;
+   }
+
+   /// The bytes of the current token, valid until the next call to next() or reset()
+   public byte[] bytes() {
+      return tokenBytes;
+   }
+
+   public int start() {
+      return tokenStart;
+   }
+
+   public int length() {
+      return tokenLength;
+   }
+
+   private static boolean isWord( byte b) {
+      return (b >= 'a' && b <= 'z') || (b >= '0' && b <= '9') || b == '_';
+   }
+
+   /// The characters of \s
+   private static boolean isSpace( byte b) {
+      return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+   }
+}
@@ -0,0 +1,299 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import org.apache.hadoop.conf.Configuration;
+
+/// TopK keeps the k best scoring documents of a search, and evaluates queries over posting
+/// lists with the MaxScore algorithm, which skips documents that cannot reach the top k.
+///
+/// MaxScore uses the largest tfidf value of each posting list, stored in the index dictionary.
+/// The lists are ordered by that maximum. When the sum of the maxima of the first few lists is
+/// not larger than the current k-th best score, a document found only in those lists cannot
+/// enter the top k, so documents are only taken from the remaining (essential) lists, and the
+/// others are only probed, with a binary search or the skip table of the list (PostingList.seek),
+/// for documents which can still make it.
+public class TopK {
+
+   public static final String K = "search.k";
+   public static final String MAX_K = "search.k.max";
+   public static final int DEFAULT_MAX_K = 10000;
+
+   /// Returns search.k, 0 if it is not set. The heap of the k best is allocated before anything
+   /// is scored, so a k above search.k.max (default 10000) is refused instead of running the
+   /// tasks out of memory.
+   public static int k( Configuration conf) {
+      int k = conf.getInt(K, 0);
+      int max = conf.getInt(MAX_K, DEFAULT_MAX_K);
+      if (k > max) {
+         throw new IllegalArgumentException(K + " is " + k + ", above " + MAX_K + " = " + max);
+      }
+      return k;
+   }
+
+   /// The most results a search of the lists can return: k, or fewer if the lists hold fewer
+   /// postings (every document takes at least one)
+   static int capacity( PostingList[] lists, int k) {
+      long postings = 0;
+      for (PostingList list : lists) {
+         if (list != null) {
+            postings += list.size();
+         }
+      }
+      return (int) Math.max(1, Math.min(k, postings));
+   }
+
+   /// A posting list sorted by document id, with random access
+   public interface PostingList {
+      int size();
+      int docId( int i);
+      double weight( int i);
+      double maxWeight();
+
+      /// Returns the first position at or after 'from' whose document id is not smaller than
+      /// doc. Lists with skip pointers (see InvertedIndex) use them instead of a search.
+      default int seek( int from, int doc) {
+         return TopK.seek(this, from, doc);
+      }
+   }
+
+   /// Receives the documents of a result
+   public interface ResultVisitor {
+      void result( int docId, double score, Object item) throws IOException;
+   }
+
+   /// A bounded min-heap of (score, id, item). The root is the worst entry kept, which is
+   /// replaced when a better one arrives. On equal scores the smaller id is the better one.
+   public static class Heap {
+      private final int k;
+      private final double[] scores;
+      private final int[] ids;
+      private final Object[] items;
+      private int size = 0;
+
+      public Heap( int k) {
+         if (k < 1) {
+            throw new IllegalArgumentException("k has to be at least 1, was " + k);
+         }
+         this.k = k;
+         this.scores = new double[k];
+         this.ids = new int[k];
+         this.items = new Object[k];
+      }
+
+      public int size() {
+         return size;
+      }
+
+      public boolean isFull() {
+         return size == k;
+      }
+
+      /// The score a new entry has to beat once the heap is full
+      public double threshold() {
+         return isFull() ? scores[0] : Double.NEGATIVE_INFINITY;
+      }
+
+      public void clear() {
+         Arrays.fill(items, 0, size, null);
+         size = 0;
+      }
+
+      private boolean worse( int a, int b) {
+         return scores[a] < scores[b] || (scores[a] == scores[b] && ids[a] > ids[b]);
+      }
+
+      public boolean add( double score, int id, Object item) {
+         if (size < k) {
+            scores[size] = score;
+            ids[size] = id;
+            items[size] = item;
+            siftUp(size++);
+            return true;
+         }
+         if (score < scores[0] || (score == scores[0] && id > ids[0])) {
+            return false;
+         }
+         scores[0] = score;
+         ids[0] = id;
+         items[0] = item;
+         siftDown(0);
+         return true;
+      }
+
+      private void siftUp( int i) {
+         while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!worse(i, parent)) {
+               break;
+            }
+            swap(i, parent);
+            i = parent;
+         }
+      }
+
+      private void siftDown( int i) {
+         while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+               break;
+            }
+            if (child + 1 < size && worse(child + 1, child)) {
+               child++;
+            }
+            if (!worse(child, i)) {
+               break;
+            }
+            swap(i, child);
+            i = child;
+         }
+      }
+
+      private void swap( int a, int b) {
+         double score = scores[a];
+         scores[a] = scores[b];
+         scores[b] = score;
+         int id = ids[a];
+         ids[a] = ids[b];
+         ids[b] = id;
+         Object item = items[a];
+         items[a] = items[b];
+         items[b] = item;
+      }
+
+      /// Empties the heap and passes the entries to the visitor, best first
+      public void drain( ResultVisitor visitor) throws IOException {
+         int n = size;
+         double[] sortedScores = new double[n];
+         int[] sortedIds = new int[n];
+         Object[] sortedItems = new Object[n];
+         for (int i = n - 1; i >= 0; i--) {
+            sortedScores[i] = scores[0];
+            sortedIds[i] = ids[0];
+            sortedItems[i] = items[0];
+            size--;
+            if (size > 0) {
+               scores[0] = scores[size];
+               ids[0] = ids[size];
+               items[0] = items[size];
+               siftDown(0);
+            }
+            items[size] = null;
+         }
+         for (int i = 0; i < n; i++) {
+            visitor.result(sortedIds[i], sortedScores[i], sortedItems[i]);
+         }
+      }
+   }
+
+   /// Evaluates the sum of the posting lists with MaxScore and passes the k best documents to
+   /// the visitor, best first. Lists may be null for words which are not in the index. Returns
+   /// the number of postings that were scored.
+   public static long search( PostingList[] query, int k, ResultVisitor visitor) throws IOException {
+      int n = 0;
+      PostingList[] lists = new PostingList[query.length];
+      for (PostingList list : query) {
+         if (list != null && list.size() > 0) {
+            lists[n++] = list;
+         }
+      }
+
+      /// Lists ordered by their maximum, and the sum of the maxima up to each list
+      Integer[] order = new Integer[n];
+      for (int i = 0; i < n; i++) {
+         order[i] = i;
+      }
+      final PostingList[] unsorted = lists;
+      Arrays.sort(order, new Comparator<Integer>() {
+         public int compare( Integer a, Integer b) {
+            return Double.compare(unsorted[a].maxWeight(), unsorted[b].maxWeight());
+         }
+      });
+      PostingList[] sorted = new PostingList[n];
+      double[] bound = new double[n];
+      for (int i = 0; i < n; i++) {
+         sorted[i] = unsorted[order[i]];
+         bound[i] = sorted[i].maxWeight() + (i > 0 ? bound[i - 1] : 0.0);
+      }
+
+      /// A heap which cannot fill before the lists run out never prunes, so sizing it by the
+      /// postings instead of k only saves the memory of a k larger than the result
+      int[] position = new int[n];
+      Heap heap = new Heap(capacity(lists, k));
+      int firstEssential = 0;
+      long scored = 0;
+
+      while (firstEssential < n) {
+         /// The next candidate is the smallest document id among the essential lists
+         int doc = Integer.MAX_VALUE;
+         for (int i = firstEssential; i < n; i++) {
+            if (position[i] < sorted[i].size()) {
+               doc = Math.min(doc, sorted[i].docId(position[i]));
+            }
+         }
+         if (doc == Integer.MAX_VALUE) {
+            break;
+         }
+
+         double score = 0.0;
+         for (int i = firstEssential; i < n; i++) {
+            if (position[i] < sorted[i].size() && sorted[i].docId(position[i]) == doc) {
+               score += sorted[i].weight(position[i]);
+               position[i]++;
+               scored++;
+            }
+         }
+
+         /// The non-essential lists are probed from the largest maximum down, and only while
+         /// the document can still beat the threshold
+         for (int i = firstEssential - 1; i >= 0; i--) {
+            if (score + bound[i] <= heap.threshold()) {
+               break;
+            }
+            position[i] = sorted[i].seek(position[i], doc);
+            if (position[i] < sorted[i].size() && sorted[i].docId(position[i]) == doc) {
+               score += sorted[i].weight(position[i]);
+               position[i]++;
+               scored++;
+            }
+         }
+
+         if (heap.add(score, doc, null)) {
+            while (firstEssential < n && bound[firstEssential] <= heap.threshold()) {
+               firstEssential++;
+            }
+         }
+      }
+      heap.drain(visitor);
+      return scored;
+   }
+
+   /// Returns the first position at or after 'from' whose document id is not smaller than
+   /// doc, by galloping and then binary search
+   static int seek( PostingList list, int from, int doc) {
+      int size = list.size();
+      int step = 1;
+      int low = from;
+      int high = from;
+      while (high < size && list.docId(high) < doc) {
+         low = high + 1;
+         high = from + step;
+         step <<= 1;
+      }
+      high = Math.min(high, size);
+      while (low < high) {
+         int mid = (low + high) >>> 1;
+         if (list.docId(mid) < doc) {
+            low = mid + 1;
+         } else {
+            high = mid;
+         }
+      }
+      return low;
+   }
+}
@@ -0,0 +1,28 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/// Benchmarks runs the JMH benchmarks of this module with the GC profiler always on, so every
+/// result comes with its allocation rate (gc.alloc.rate, gc.alloc.rate.norm per operation) and
+/// the number and time of collections next to the score. Any JMH option can be given, for
+/// example a benchmark name pattern:
+///
+/// $ java -jar target/benchmarks.jar Tokenize
+/// $ java -Dcorpus.dir=/path/to/canterbury -jar target/benchmarks.jar Pipeline -p corpus=synthetic-64
+public class Benchmarks {
+
+   /// main() method is the starting point of the program
+   public static void main( String[] args) throws Exception {
+      new Runner(new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .addProfiler(GCProfiler.class)
+            .build()).run();
+   }
+}
@@ -0,0 +1,154 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import org.apache.hadoop.io.Text;
+
+/// CorpusGenerator writes synthetic text documents for benchmarks larger than the Canterbury
+/// corpus. Words are drawn from a fixed vocabulary with a Zipf distribution, as in natural
+/// text, so a few words are in every document and most are rare. Lines have some capitals and
+/// punctuation so the tokenizer sees the same kinds of tokens as in real text.
+///
+/// $ java -cp benchmarks.jar org.myorg.CorpusGenerator OUTPUT_DIR MEGABYTES [FILES] [SEED]
+public class CorpusGenerator {
+
+   /// Where the benchmarks find the Canterbury corpus, -Dcorpus.dir=... (default ../canterbury,
+   /// from the benchmarks folder)
+   public static final String CORPUS_DIR = "corpus.dir";
+
+   private static final int VOCABULARY = 50000;
+   private static final String[] PUNCTUATION = { ",", ".", ";", "--", "?", "!", "'s" };
+
+   private final Random random;
+   private final String[] words = new String[VOCABULARY];
+   private final double[] cumulative = new double[VOCABULARY];
+
+   public CorpusGenerator( long seed) {
+      random = new Random(seed);
+      double total = 0.0;
+      for (int i = 0; i < VOCABULARY; i++) {
+         words[i] = word(i);
+         total += 1.0 / (i + 1);
+         cumulative[i] = total;
+      }
+      for (int i = 0; i < VOCABULARY; i++) {
+         cumulative[i] /= total;
+      }
+   }
+
+   /// A pronounceable word for every rank, short for the frequent ranks
+   private static String word( int rank) {
+      String consonants = "bcdfghklmnprstvwz";
+      String vowels = "aeiou";
+      StringBuilder word = new StringBuilder();
+      int n = rank + 1;
+      while (n > 0) {
+         word.append(consonants.charAt(n % consonants.length()));
+         n /= consonants.length();
+         word.append(vowels.charAt(n % vowels.length()));
+         n /= vowels.length();
+      }
+      return word.toString();
+   }
+
+   private String nextWord() {
+      int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+      return words[rank < 0 ? Math.min(-rank - 1, VOCABULARY - 1) : rank];
+   }
+
+   /// Writes about 'bytes' bytes of text, spread over the given number of files
+   public void generate( File dir, long bytes, int files) throws IOException {
+      dir.mkdirs();
+      long perFile = bytes / files;
+      for (int f = 0; f < files; f++) {
+         File file = new File(dir, String.format("synthetic-%04d.txt", f));
+         try (Writer out = new BufferedWriter(new OutputStreamWriter(
+               new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            long written = 0;
+            while (written < perFile) {
+               StringBuilder line = new StringBuilder();
+               int length = 4 + random.nextInt(12);
+               for (int i = 0; i < length; i++) {
+                  String word = nextWord();
+                  if (i == 0 || random.nextInt(20) == 0) {
+                     word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+                  }
+                  line.append(i == 0 ? "" : " ").append(word);
+                  if (random.nextInt(8) == 0) {
+                     line.append(PUNCTUATION[random.nextInt(PUNCTUATION.length)]);
+                  }
+               }
+               line.append('\n');
+               out.write(line.toString());
+               written += line.length();
+            }
+         }
+      }
+   }
+
+   /// Reads every file of a folder as lines, by file name
+   public static TreeMap<String, List<Text>> read( File dir) throws IOException {
+      TreeMap<String, List<Text>> files = new TreeMap<String, List<Text>>();
+      File[] list = dir.listFiles();
+      if (list == null) {
+         throw new IOException("No corpus in " + dir.getAbsolutePath() + ", set -D" + CORPUS_DIR);
+      }
+      for (File file : list) {
+         if (file.isFile()) {
+            files.put(file.getName(), lines(Files.readAllBytes(file.toPath())));
+         }
+      }
+      return files;
+   }
+
+   /// Splits the bytes into lines the way LineRecordReader does, at '\n', '\r' or "\r\n", and
+   /// keeps the bytes as they are
+   static List<Text> lines( byte[] bytes) {
+      List<Text> lines = new ArrayList<Text>();
+      int start = 0;
+      for (int i = 0; i < bytes.length; i++) {
+         if (bytes[i] == '\n' || bytes[i] == '\r') {
+            Text line = new Text();
+            line.set(bytes, start, i - start);
+            lines.add(line);
+            if (bytes[i] == '\r' && i + 1 < bytes.length && bytes[i + 1] == '\n') {
+               i++;
+            }
+            start = i + 1;
+         }
+      }
+      if (start < bytes.length) {
+         Text line = new Text();
+         line.set(bytes, start, bytes.length - start);
+         lines.add(line);
+      }
+      return lines;
+   }
+
+   /// The Canterbury corpus of the repository
+   public static File canterbury() {
+      return new File(System.getProperty(CORPUS_DIR, "../canterbury"));
+   }
+
+   /// main() method is the starting point of the program
+   public static void main( String[] args) throws Exception {
+      int files = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+      long seed = args.length > 3 ? Long.parseLong(args[3]) : 42;
+      new CorpusGenerator(seed).generate(new File(args[0]), Long.parseLong(args[1]) << 20, files);
+   }
+}
@@ -0,0 +1,214 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.mapred.RawKeyValueIterator;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.map.WrappedMapper;
+import org.apache.hadoop.mapreduce.lib.reduce.WrappedReducer;
+import org.apache.hadoop.mapreduce.task.MapContextImpl;
+import org.apache.hadoop.mapreduce.task.ReduceContextImpl;
+import org.apache.hadoop.util.Progress;
+
+/// InMemoryContexts runs the mappers and reducers of the jobs on data held in memory, without
+/// a job, a file system or a shuffle. The contexts are Hadoop's own MapContextImpl and
+/// ReduceContextImpl, so a reducer reads its input through the same deserialization and value
+/// iterator as in a real task, and its output goes to a Sink which only counts the records.
+public class InMemoryContexts {
+
+   /// A RecordWriter which counts the records and keeps a hash of them, so the JIT cannot
+   /// remove the work that produced them
+   public static class Sink<K, V> extends RecordWriter<K, V> {
+      public long records;
+      public long hash;
+
+      @Override
+      public void write( K key, V value) {
+         records++;
+         hash = 31 * hash + key.hashCode() + value.hashCode();
+      }
+
+      @Override
+      public void close( TaskAttemptContext context) {
+      }
+   }
+
+   /// Counters and status for the contexts, nothing is reported anywhere
+   static class Reporter extends StatusReporter {
+      private final Counters counters = new Counters();
+
+      public Counter getCounter( Enum<?> name) {
+         return counters.findCounter(name);
+      }
+
+      public Counter getCounter( String group, String name) {
+         return counters.findCounter(group, name);
+      }
+
+      public void progress() {
+      }
+
+      public float getProgress() {
+         return 0;
+      }
+
+      public void setStatus( String status) {
+      }
+   }
+
+   /// The lines of one input file, served like LineRecordReader with the line number as key
+   static class LineReader extends RecordReader<LongWritable, Text> {
+      private final List<Text> lines;
+      private final LongWritable key = new LongWritable();
+      private int next = 0;
+
+      LineReader( List<Text> lines) {
+         this.lines = lines;
+      }
+
+      public void initialize( InputSplit split, TaskAttemptContext context) {
+      }
+
+      public boolean nextKeyValue() {
+         key.set(next);
+         return next++ < lines.size();
+      }
+
+      public LongWritable getCurrentKey() {
+         return key;
+      }
+
+      public Text getCurrentValue() {
+         return lines.get(next - 1);
+      }
+
+      public float getProgress() {
+         return lines.isEmpty() ? 1.0f : (float) next / lines.size();
+      }
+
+      public void close() {
+      }
+   }
+
+   /// Runs a mapper over the lines of a file with the given name, as one map task over one
+   /// FileSplit. Returns the number of records written.
+   public static <KO, VO> long map( Configuration conf, Mapper<LongWritable, Text, KO, VO> mapper,
+         String fileName, List<Text> lines, Sink<KO, VO> sink) throws IOException, InterruptedException {
+      FileSplit split = new FileSplit(new Path("/input/" + fileName), 0, 0, new String[0]);
+      MapContextImpl<LongWritable, Text, KO, VO> context = new MapContextImpl<LongWritable, Text, KO, VO>(
+            conf, new TaskAttemptID(), new LineReader(lines), sink, null, new Reporter(), split);
+      long before = sink.records;
+      mapper.run(new WrappedMapper<LongWritable, Text, KO, VO>().getMapContext(context));
+      return sink.records - before;
+   }
+
+   /// Reduce input after the shuffle: the keys serialized in sorted order, each followed by
+   /// its values. Built once and replayed for every run of a reducer.
+   public static class Shuffled<K extends WritableComparable<?>, V extends Writable> {
+      private final Class<K> keyClass;
+      private final Class<V> valueClass;
+      private final List<byte[]> keys = new ArrayList<byte[]>();
+      private final List<byte[]> values = new ArrayList<byte[]>();
+
+      /// The map gives the values of every key, and is sorted by the key's comparator
+      public Shuffled( Class<K> keyClass, Class<V> valueClass, TreeMap<K, List<V>> input) throws IOException {
+         this.keyClass = keyClass;
+         this.valueClass = valueClass;
+         DataOutputBuffer buffer = new DataOutputBuffer();
+         for (Map.Entry<K, List<V>> entry : input.entrySet()) {
+            buffer.reset();
+            entry.getKey().write(buffer);
+            byte[] key = Arrays.copyOf(buffer.getData(), buffer.getLength());
+            for (V value : entry.getValue()) {
+               buffer.reset();
+               value.write(buffer);
+               keys.add(key);
+               values.add(Arrays.copyOf(buffer.getData(), buffer.getLength()));
+            }
+         }
+      }
+
+      public int size() {
+         return keys.size();
+      }
+
+      RawKeyValueIterator iterator() {
+         return new RawKeyValueIterator() {
+            private final DataInputBuffer key = new DataInputBuffer();
+            private final DataInputBuffer value = new DataInputBuffer();
+            private final Progress progress = new Progress();
+            private int next = 0;
+
+            public DataInputBuffer getKey() {
+               return key;
+            }
+
+            public DataInputBuffer getValue() {
+               return value;
+            }
+
+            public boolean next() {
+               if (next == keys.size()) {
+                  return false;
+               }
+               key.reset(keys.get(next), keys.get(next).length);
+               value.reset(values.get(next), values.get(next).length);
+               next++;
+               return true;
+            }
+
+            public void close() {
+            }
+
+            public Progress getProgress() {
+               return progress;
+            }
+         };
+      }
+
+      /// Runs a reducer over the whole input, as one reduce task. Returns the number of
+      /// records written.
+      @SuppressWarnings("unchecked")
+      public <KO, VO> long reduce( Configuration conf, Reducer<K, V, KO, VO> reducer, Sink<KO, VO> sink)
+            throws IOException, InterruptedException {
+         Reporter reporter = new Reporter();
+         RawComparator<K> comparator = (RawComparator<K>) WritableComparator.get(
+               (Class<? extends WritableComparable>) keyClass, conf);
+         ReduceContextImpl<K, V, KO, VO> context = new ReduceContextImpl<K, V, KO, VO>(conf,
+               new TaskAttemptID(), iterator(), reporter.getCounter("reduce", "keys"),
+               reporter.getCounter("reduce", "values"), sink, null, reporter, comparator,
+               keyClass, valueClass);
+         long before = sink.records;
+         reducer.run(new WrappedReducer<K, V, KO, VO>().getReducerContext(context));
+         return sink.records - before;
+      }
+   }
+}
@@ -0,0 +1,111 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.util.ToolRunner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/// The whole TFIDF computation with Hadoop's local job runner, from the input text to
+/// OUTPUT_PATH/tfidf on the local file system. One operation is one run of the pipeline.
+/// Unlike the other benchmarks this one includes job setup and the local file system writes.
+///
+/// corpus is 'canterbury' or 'synthetic-N' for N megabytes from CorpusGenerator, generated once
+/// per trial. pipeline is 'TFIDF' (TermFrequency and then TFIDF, two jobs), 'FusedTFIDF' (one
+/// job), 'TFIDF-binary' (the two jobs with -D tfidf.format=binary) or 'LocalEngine' (no jobs,
+/// which also writes OUTPUT_PATH/docwordcount).
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class PipelineBenchmark {
+
+   @Param({ "canterbury", "synthetic-16" })
+   public String corpus;
+
+   @Param({ "TFIDF", "FusedTFIDF", "TFIDF-binary", "LocalEngine" })
+   public String pipeline;
+
+   private File input;
+   private File generated;
+   private File output;
+
+   @Setup(Level.Trial)
+   public void setup() throws IOException {
+      if (corpus.startsWith("synthetic-")) {
+         generated = Files.createTempDirectory("tfidf-corpus").toFile();
+         long megabytes = Long.parseLong(corpus.substring("synthetic-".length()));
+         new CorpusGenerator(42).generate(generated, megabytes << 20, 16);
+         input = generated;
+      } else {
+         input = CorpusGenerator.canterbury();
+      }
+   }
+
+   @Setup(Level.Invocation)
+   public void createOutput() throws IOException {
+      output = Files.createTempDirectory("tfidf-output").toFile();
+   }
+
+   @TearDown(Level.Invocation)
+   public void deleteOutput() {
+      FileUtil.fullyDelete(output);
+   }
+
+   @TearDown(Level.Trial)
+   public void tearDown() {
+      if (generated != null) {
+         FileUtil.fullyDelete(generated);
+      }
+   }
+
+   @Benchmark
+   public int run() throws Exception {
+      Configuration conf = new Configuration();
+      conf.set("mapreduce.framework.name", "local");
+      conf.set("fs.defaultFS", "file:///");
+      if (pipeline.equals("TFIDF-binary")) {
+         conf.set(TermDocWeight.FORMAT, "binary");
+      }
+
+      /// The jobs write into OUTPUT_PATH, which has to be new. TFIDF is chained after
+      /// TermFrequency as in TFIDF.main()
+      String[] args = { input.getAbsolutePath(), new File(output, "out").getAbsolutePath() };
+      int res;
+      if (pipeline.equals("FusedTFIDF")) {
+         res = ToolRunner.run(conf, new FusedTFIDF(), args);
+      } else if (pipeline.equals("LocalEngine")) {
+         res = ToolRunner.run(conf, new LocalEngine(), args);
+      } else {
+         res = ToolRunner.run(new Configuration(conf), new TermFrequency(), args);
+         if (res == 0) {
+            res = ToolRunner.run(new Configuration(conf), new TFIDF(), args);
+         }
+      }
+      if (res != 0) {
+         throw new IllegalStateException(pipeline + " failed on " + corpus);
+      }
+      return res;
+   }
+}
@@ -0,0 +1,144 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/// Decoding the compressed posting lists of InvertedIndex from a memory mapped index, with the
+/// tfidf values stored with 8, 16 and 64 bits. The index is written by setup: TERMS random
+/// posting lists of POSTINGS documents each, out of 100 times as many documents, so the gaps
+/// take one or two bytes. The size of the .post file is printed by setup.
+///
+/// decode reads every posting of every list in order, one operation being one posting.
+/// seek moves through every list with SEEKS increasing document ids, as TopK probes the
+/// non-essential lists, one operation being one seek. topK runs a 4 word query for the 10 best
+/// documents with MaxScore.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PostingsBenchmark {
+
+   private static final int TERMS = 16;
+   private static final int POSTINGS = 100000;
+   private static final int SEEKS = 1000;
+
+   @Param({ "8", "16", "64" })
+   public int bits;
+
+   private File dir;
+   private MappedIndex index;
+   private byte[][] terms;
+   private int[] targets;
+
+   @Setup
+   public void setup() throws IOException {
+      dir = Files.createTempDirectory("postings").toFile();
+      Configuration conf = new Configuration(false);
+      FileSystem fs = FileSystem.getLocal(conf);
+      Random random = new Random(42);
+      terms = new byte[TERMS][];
+      try (InvertedIndex.ShardWriter writer = new InvertedIndex.ShardWriter(fs, new Path(dir.getPath()), 0, bits)) {
+         for (int t = 0; t < TERMS; t++) {
+            String term = String.format("term%02d", t);
+            terms[t] = term.getBytes(StandardCharsets.UTF_8);
+            writer.startTerm(new Text(term));
+            int doc = 0;
+            for (int i = 0; i < POSTINGS; i++) {
+               doc += 1 + random.nextInt(200);
+               writer.addPosting(doc, 1.0 + Math.log10(1 + random.nextInt(50)) * random.nextDouble());
+            }
+            writer.endTerm();
+         }
+      }
+      try (PrintWriter documents = new PrintWriter(new File(dir, "documents"), "UTF-8")) {
+         documents.println("document");
+      }
+      index = new MappedIndex(dir);
+      System.out.println("\n" + bits + " bit weights: " + new File(dir, InvertedIndex.shardName(0) + ".post").length()
+            + " bytes of postings for " + TERMS * POSTINGS + " postings");
+
+      targets = new int[SEEKS];
+      for (int i = 0; i < SEEKS; i++) {
+         targets[i] = random.nextInt(100 * POSTINGS);
+      }
+      Arrays.sort(targets);
+   }
+
+   @TearDown
+   public void tearDown() {
+      FileUtil.fullyDelete(dir);
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(TERMS * POSTINGS)
+   public double decode() {
+      double sum = 0.0;
+      for (byte[] term : terms) {
+         TopK.PostingList list = index.postingList(term);
+         for (int i = 0; i < list.size(); i++) {
+            sum += list.docId(i) + list.weight(i);
+         }
+      }
+      return sum;
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(TERMS * SEEKS)
+   public long seek() {
+      long sum = 0;
+      for (byte[] term : terms) {
+         TopK.PostingList list = index.postingList(term);
+         int position = 0;
+         for (int target : targets) {
+            position = list.seek(position, target);
+            sum += position;
+         }
+      }
+      return sum;
+   }
+
+   @Benchmark
+   public long topK() throws IOException {
+      TopK.PostingList[] query = new TopK.PostingList[4];
+      for (int i = 0; i < query.length; i++) {
+         query[i] = index.postingList(terms[i]);
+      }
+      final long[] sum = new long[1];
+      TopK.search(query, 10, new TopK.ResultVisitor() {
+         public void result( int docId, double score, Object item) {
+            sum[0] += docId;
+         }
+      });
+      return sum[0];
+   }
+}
@@ -0,0 +1,149 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/// The reduce functions of TermFrequency, TFIDF and Search, each run as one reduce task over
+/// the whole shuffled input they get for the Canterbury corpus (see InMemoryContexts). One
+/// operation is one such task.
+///
+/// termFrequencyReduce gets <word#####filename, count> with the counts already combined,
+/// tfidfReduce gets <word, filename=tf> and searchReduce gets <filename, tfidf> for a query of
+/// every word of the corpus, with search.k off (0) and at 10.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReduceBenchmark {
+
+   private Configuration conf;
+   private InMemoryContexts.Shuffled<Text, DoubleWritable> termFrequencyInput;
+   private InMemoryContexts.Shuffled<Text, Text> tfidfInput;
+   private InMemoryContexts.Shuffled<Text, DoubleWritable> searchInput;
+
+   /// The search.k of searchReduce
+   @State(Scope.Benchmark)
+   public static class Query {
+      @Param({ "0", "10" })
+      public int k;
+
+      Configuration conf;
+
+      @Setup
+      public void setup() {
+         conf = new Configuration(false);
+         conf.setInt(TopK.K, k);
+      }
+   }
+
+   @Setup
+   public void setup() throws IOException {
+      TreeMap<String, List<Text>> corpus = CorpusGenerator.read(CorpusGenerator.canterbury());
+      conf = new Configuration(false);
+      conf.setInt(DocumentInputFormat.NUMBER_OF_FILES, corpus.size());
+
+      /// Word counts of every file, as TermFrequency's combiner leaves them
+      Tokenizer tokenizer = new Tokenizer(conf);
+      TreeMap<Text, List<DoubleWritable>> counts = new TreeMap<Text, List<DoubleWritable>>();
+      TreeMap<Text, List<Text>> tfs = new TreeMap<Text, List<Text>>();
+      HashMap<String, Integer> documentFrequency = new HashMap<String, Integer>();
+      for (Map.Entry<String, List<Text>> file : corpus.entrySet()) {
+         HashMap<String, int[]> words = new HashMap<String, int[]>();
+         for (Text line : file.getValue()) {
+            tokenizer.reset(line);
+            while (tokenizer.next()) {
+               String word = Text.decode(tokenizer.bytes(), tokenizer.start(), tokenizer.length());
+               int[] count = words.get(word);
+               if (count == null) {
+                  words.put(word, new int[] { 1 });
+               } else {
+                  count[0]++;
+               }
+            }
+         }
+         for (Map.Entry<String, int[]> word : words.entrySet()) {
+            counts.put(new Text(word.getKey() + "#####" + file.getKey()),
+                  single(new DoubleWritable(word.getValue()[0])));
+            add(tfs, new Text(word.getKey()),
+                  new Text(file.getKey() + "=" + (1.0 + Math.log10(word.getValue()[0]))));
+            Integer df = documentFrequency.get(word.getKey());
+            documentFrequency.put(word.getKey(), df == null ? 1 : df + 1);
+         }
+      }
+
+      /// Every word of the corpus as the query, so every file gets one tfidf per word it holds
+      TreeMap<Text, List<DoubleWritable>> scores = new TreeMap<Text, List<DoubleWritable>>();
+      for (Map.Entry<Text, List<Text>> word : tfs.entrySet()) {
+         double idf = Math.log10(1 + (corpus.size() / documentFrequency.get(word.getKey().toString())));
+         for (Text value : word.getValue()) {
+            String[] filename_tf = value.toString().split("=");
+            add(scores, new Text(filename_tf[0]), new DoubleWritable(Double.parseDouble(filename_tf[1]) * idf));
+         }
+      }
+
+      termFrequencyInput = new InMemoryContexts.Shuffled<Text, DoubleWritable>(Text.class, DoubleWritable.class, counts);
+      tfidfInput = new InMemoryContexts.Shuffled<Text, Text>(Text.class, Text.class, tfs);
+      searchInput = new InMemoryContexts.Shuffled<Text, DoubleWritable>(Text.class, DoubleWritable.class, scores);
+   }
+
+   private static <V> List<V> single( V value) {
+      List<V> list = new ArrayList<V>(1);
+      list.add(value);
+      return list;
+   }
+
+   private static <V> void add( TreeMap<Text, List<V>> map, Text key, V value) {
+      List<V> list = map.get(key);
+      if (list == null) {
+         list = new ArrayList<V>();
+         map.put(key, list);
+      }
+      list.add(value);
+   }
+
+   @Benchmark
+   public long termFrequencyReduce() throws IOException, InterruptedException {
+      InMemoryContexts.Sink<Text, DoubleWritable> sink = new InMemoryContexts.Sink<Text, DoubleWritable>();
+      termFrequencyInput.reduce(conf, new TermFrequency.Reduce(), sink);
+      return sink.hash;
+   }
+
+   @Benchmark
+   public long tfidfReduce() throws IOException, InterruptedException {
+      InMemoryContexts.Sink<Text, DoubleWritable> sink = new InMemoryContexts.Sink<Text, DoubleWritable>();
+      tfidfInput.reduce(conf, new TFIDF.Reduce(), sink);
+      return sink.hash;
+   }
+
+   @Benchmark
+   public long searchReduce( Query query) throws IOException, InterruptedException {
+      InMemoryContexts.Sink<Text, DoubleWritable> sink = new InMemoryContexts.Sink<Text, DoubleWritable>();
+      searchInput.reduce(query.conf, new Search.Reduce(), sink);
+      return sink.hash;
+   }
+}
@@ -0,0 +1,112 @@
+/// Author: Ashwin Venkatesh Prabhu
+/// UNCC ID: 800960400
+/// Email: avenka11@uncc.edu
+
+package org.myorg;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/// Tokenizing the Canterbury corpus, one operation being one pass over all of its lines.
+///
+/// regexSplit is the way the mappers used to find words (lowercase the line as a String, split
+/// it with WORD_BOUNDARY and build a new key String per word), tokenizer is the Tokenizer that
+/// replaced it, with the same keys, and docWordCountMap runs the whole DocWordCount.Map over
+/// the corpus, with and without in-mapper combining.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenizeBenchmark {
+
+   private static final Pattern WORD_BOUNDARY = Pattern .compile("\\s*\\b\\s*");
+
+   private TreeMap<String, List<Text>> corpus;
+   private Tokenizer tokenizer;
+
+   /// The job configuration of docWordCountMap
+   @State(Scope.Benchmark)
+   public static class Job {
+      @Param({ "false", "true" })
+      public boolean combine;
+
+      Configuration conf;
+
+      @Setup
+      public void setup() {
+         conf = new Configuration(false);
+         conf.setBoolean(InMapperCombiner.ENABLED, combine);
+      }
+   }
+
+   @Setup
+   public void setup() throws IOException {
+      corpus = CorpusGenerator.read(CorpusGenerator.canterbury());
+      tokenizer = new Tokenizer(new Configuration(false));
+   }
+
+   @Benchmark
+   public void regexSplit( Blackhole blackhole) {
+      Text word = new Text();
+      for (Map.Entry<String, List<Text>> file : corpus.entrySet()) {
+         String fileName = file.getKey();
+         for (Text lineText : file.getValue()) {
+            String line = lineText.toString().toLowerCase();
+            for (String w : WORD_BOUNDARY .split(line)) {
+               if (w.isEmpty()) {
+                  continue;
+               }
+               word.set(w + "#####" + fileName);
+               blackhole.consume(word);
+            }
+         }
+      }
+   }
+
+   @Benchmark
+   public void tokenizer( Blackhole blackhole) {
+      Text word = new Text();
+      for (Map.Entry<String, List<Text>> file : corpus.entrySet()) {
+         byte[] suffix = ("#####" + file.getKey()).getBytes(StandardCharsets.UTF_8);
+         for (Text lineText : file.getValue()) {
+            tokenizer.reset(lineText);
+            while (tokenizer.next()) {
+               word.set(tokenizer.bytes(), tokenizer.start(), tokenizer.length());
+               word.append(suffix, 0, suffix.length);
+               blackhole.consume(word);
+            }
+         }
+      }
+   }
+
+   @Benchmark
+   public long docWordCountMap( Job job) throws IOException, InterruptedException {
+      InMemoryContexts.Sink<Text, IntWritable> sink = new InMemoryContexts.Sink<Text, IntWritable>();
+      for (Map.Entry<String, List<Text>> file : corpus.entrySet()) {
+         InMemoryContexts.map(job.conf, new DocWordCount.Map(), file.getKey(), file.getValue(), sink);
+      }
+      return sink.hash;
+   }
+}